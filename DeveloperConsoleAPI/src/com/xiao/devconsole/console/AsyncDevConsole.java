@@ -0,0 +1,28 @@
+package com.xiao.devconsole.console;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+import com.xiao.devconsole.model.AppInfo;
+import com.xiao.devconsole.model.Comment;
+
+/**
+ * Non-blocking counterpart of {@link DevConsole}. Each method returns
+ * immediately, the result is available from the returned {@link Future} and
+ * is also passed to the (optional, may be <code>null</code>) callback.
+ * Failures surface as a {@link DevConsoleException}, either as the cause of
+ * the {@link java.util.concurrent.ExecutionException} thrown by
+ * {@link Future#get()} or via {@link DevConsoleCallback#onFailure}.
+ */
+public interface AsyncDevConsole {
+
+	Future<List<AppInfo>> getAppInfoAsync(DevConsoleCallback<List<AppInfo>> callback);
+
+	Future<List<Comment>> getCommentsAsync(String packageName, String developerId,
+			int startIndex, int count, String displayLocale,
+			DevConsoleCallback<List<Comment>> callback);
+
+	Future<Comment> replyToCommentAsync(String packageName, String developerId,
+			String commentUniqueId, String reply, DevConsoleCallback<Comment> callback);
+
+}
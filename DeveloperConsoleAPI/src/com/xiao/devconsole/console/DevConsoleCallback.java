@@ -0,0 +1,16 @@
+package com.xiao.devconsole.console;
+
+/**
+ * Receives the outcome of a call made through {@link AsyncDevConsole}. Methods
+ * are invoked on the worker thread that completed the call.
+ * 
+ * @param <T>
+ *            result type of the call
+ */
+public interface DevConsoleCallback<T> {
+
+	void onSuccess(T result);
+
+	void onFailure(DevConsoleException e);
+
+}
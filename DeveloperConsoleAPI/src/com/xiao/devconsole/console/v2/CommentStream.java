@@ -0,0 +1,153 @@
+package com.xiao.devconsole.console.v2;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.xiao.devconsole.console.DevConsole;
+import com.xiao.devconsole.console.DevConsoleException;
+import com.xiao.devconsole.console.NetworkException;
+import com.xiao.devconsole.model.Comment;
+
+/**
+ * Iterates over all comments of an app, fetching them page by page.
+ * 
+ * While the caller consumes one page, the following pages (up to
+ * prefetchPages of them) are already being fetched in the background. At most
+ * prefetchPages + 1 pages are held in memory, regardless of the total number
+ * of comments.
+ * 
+ * Errors fetching a page are thrown from {@link #hasNext()} or
+ * {@link #next()}. Call {@link #close()} when stopping before the end, so
+ * pages fetched ahead are cancelled.
+ * 
+ * Instances are not thread safe.
+ */
+public class CommentStream implements Iterator<Comment> {
+
+	public static final int DEFAULT_PAGE_SIZE = 50;
+	public static final int DEFAULT_PREFETCH_PAGES = 1;
+
+	private final DevConsole console;
+	private final ExecutorService executor;
+	private final String packageName;
+	private final String developerId;
+	private final int pageSize;
+	private final int prefetchPages;
+	private final String displayLocale;
+
+	// pages requested but not yet consumed, in order
+	private final LinkedList<Future<List<Comment>>> pendingPages = new LinkedList<Future<List<Comment>>>();
+	// start index of the next page to request
+	private int nextPageStart;
+	private Iterator<Comment> currentPage = Collections.<Comment> emptyList().iterator();
+	// set once a short page has been seen, there is nothing after it
+	private boolean lastPageSeen;
+	private boolean closed;
+
+	CommentStream(DevConsole console, ExecutorService executor, String packageName,
+			String developerId, int pageSize, int prefetchPages, String displayLocale) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be at least 1");
+		}
+		if (prefetchPages < 0) {
+			throw new IllegalArgumentException("prefetchPages must not be negative");
+		}
+
+		this.console = console;
+		this.executor = executor;
+		this.packageName = packageName;
+		this.developerId = developerId;
+		this.pageSize = pageSize;
+		this.prefetchPages = prefetchPages;
+		this.displayLocale = displayLocale;
+	}
+
+	public boolean hasNext() {
+		while (!currentPage.hasNext()) {
+			if (lastPageSeen || closed) {
+				return false;
+			}
+
+			List<Comment> page = takePage();
+			if (page.size() < pageSize) {
+				lastPageSeen = true;
+				cancelPendingPages();
+			}
+			currentPage = page.iterator();
+		}
+
+		return true;
+	}
+
+	public Comment next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		return currentPage.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("Comments can't be removed");
+	}
+
+	/**
+	 * Stops the stream and cancels any pages being fetched ahead
+	 */
+	public void close() {
+		closed = true;
+		currentPage = Collections.<Comment> emptyList().iterator();
+		cancelPendingPages();
+	}
+
+	/**
+	 * Waits for the next page, after making sure the pages after it are
+	 * being fetched
+	 */
+	private List<Comment> takePage() {
+		while (pendingPages.size() < prefetchPages + 1) {
+			pendingPages.add(requestPage(nextPageStart));
+			nextPageStart += pageSize;
+		}
+
+		Future<List<Comment>> page = pendingPages.removeFirst();
+		try {
+			return page.get();
+		} catch (ExecutionException e) {
+			close();
+			Throwable cause = e.getCause();
+			if (cause instanceof DevConsoleException) {
+				throw (DevConsoleException) cause;
+			}
+			throw new DevConsoleException(cause);
+		} catch (InterruptedException e) {
+			close();
+			Thread.currentThread().interrupt();
+			throw new NetworkException(e);
+		}
+	}
+
+	private Future<List<Comment>> requestPage(final int start) {
+		return executor.submit(new Callable<List<Comment>>() {
+			public List<Comment> call() {
+				return console.getComments(packageName, developerId, start, pageSize,
+						displayLocale);
+			}
+		});
+	}
+
+	private void cancelPendingPages() {
+		for (Future<List<Comment>> page : pendingPages) {
+			page.cancel(true);
+		}
+		pendingPages.clear();
+	}
+
+}
@@ -0,0 +1,159 @@
+package com.xiao.devconsole.console.v2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+
+/**
+ * Manages consoles for many Google accounts over a single connection pool.
+ * 
+ * Creating consoles one by one with
+ * {@link DevConsoleV2#createForAccountAndPassword(String, String)} gives each
+ * account its own connection manager, sockets and TLS sessions. Consoles
+ * created by a pool share one {@link ThreadSafeClientConnManager} (and worker
+ * threads), only the cookie store, i.e. the login, is kept per account.
+ * 
+ * The number of requests a single account has on the wire is capped, so one
+ * busy account can't take over the whole connection pool.
+ */
+public class DevConsolePool {
+
+	private static final String TAG = DevConsolePool.class.getSimpleName();
+
+	private final ThreadSafeClientConnManager connManager;
+	private final ExecutorService requestExecutor;
+	private final ExecutorService asyncExecutor;
+	// false if the executor was supplied by the caller
+	private final boolean ownsExecutors;
+	private final int maxInFlightRequestsPerAccount;
+
+	private final ConcurrentMap<String, DevConsoleV2> consoles = new ConcurrentHashMap<String, DevConsoleV2>();
+
+	/**
+	 * @param maxConnections
+	 *            total connections to the console, shared by all accounts
+	 * @param maxInFlightRequestsPerAccount
+	 */
+	public DevConsolePool(int maxConnections, int maxInFlightRequestsPerAccount) {
+		checkLimits(maxConnections, maxInFlightRequestsPerAccount);
+
+		this.connManager = HttpClientFactory.createConnectionManager(maxConnections);
+		this.requestExecutor = Executors.newFixedThreadPool(maxConnections,
+				new WorkerThreadFactory(TAG + "-request-"));
+		this.asyncExecutor = Executors.newFixedThreadPool(maxConnections,
+				new WorkerThreadFactory(TAG + "-async-"));
+		this.ownsExecutors = true;
+		this.maxInFlightRequestsPerAccount = maxInFlightRequestsPerAccount;
+	}
+
+	/**
+	 * Runs all requests, parallel and asynchronous, on the given executor, see
+	 * {@link DevConsoleV2#createForAccountAndPassword(String, String, ExecutorService, int)}
+	 * . The executor is not shut down by {@link #shutdown()}.
+	 * 
+	 * @param executor
+	 * @param maxConnections
+	 *            total connections to the console, shared by all accounts
+	 * @param maxInFlightRequestsPerAccount
+	 */
+	public DevConsolePool(ExecutorService executor, int maxConnections,
+			int maxInFlightRequestsPerAccount) {
+		checkLimits(maxConnections, maxInFlightRequestsPerAccount);
+
+		this.connManager = HttpClientFactory.createConnectionManager(maxConnections);
+		this.requestExecutor = executor;
+		this.asyncExecutor = executor;
+		this.ownsExecutors = false;
+		this.maxInFlightRequestsPerAccount = maxInFlightRequestsPerAccount;
+	}
+
+	private static void checkLimits(int maxConnections, int maxInFlightRequestsPerAccount) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("maxConnections must be at least 1");
+		}
+		if (maxInFlightRequestsPerAccount < 1) {
+			throw new IllegalArgumentException("maxInFlightRequestsPerAccount must be at least 1");
+		}
+	}
+
+	/**
+	 * Returns the console for the given account, creating it if necessary.
+	 * Logging in happens lazily, on the first request made with the console.
+	 * 
+	 * @param accountName
+	 * @param password
+	 * @return
+	 */
+	public DevConsoleV2 addAccount(String accountName, String password) {
+		DevConsoleV2 console = consoles.get(accountName);
+		if (console != null) {
+			return console;
+		}
+
+		DefaultHttpClient httpClient = HttpClientFactory.createDevConsoleHttpClient(connManager,
+				DevConsoleV2.TIMEOUT);
+		console = DevConsoleV2.createForAccountAndPassword(accountName, password, httpClient,
+				requestExecutor, asyncExecutor, maxInFlightRequestsPerAccount);
+		DevConsoleV2 existing = consoles.putIfAbsent(accountName, console);
+
+		return existing == null ? console : existing;
+	}
+
+	/**
+	 * @param accountName
+	 * @return the console for the given account, or <code>null</code> if it
+	 *         hasn't been added
+	 */
+	public DevConsoleV2 getConsole(String accountName) {
+		return consoles.get(accountName);
+	}
+
+	/**
+	 * Forgets the given account. Its connections stay in the shared pool.
+	 * 
+	 * @param accountName
+	 * @return the removed console, or <code>null</code>
+	 */
+	public DevConsoleV2 removeAccount(String accountName) {
+		return consoles.remove(accountName);
+	}
+
+	public List<String> getAccountNames() {
+		return new ArrayList<String>(consoles.keySet());
+	}
+
+	public int size() {
+		return consoles.size();
+	}
+
+	/**
+	 * Closes pooled connections that have not been used for the given time
+	 * 
+	 * @param idleMillis
+	 */
+	public void closeIdleConnections(long idleMillis) {
+		connManager.closeIdleConnections(idleMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Closes all connections and releases the worker threads (unless they
+	 * were supplied by the caller). None of the consoles can be used after
+	 * this has been called.
+	 */
+	public void shutdown() {
+		consoles.clear();
+		if (ownsExecutors) {
+			asyncExecutor.shutdownNow();
+			requestExecutor.shutdownNow();
+		}
+		connManager.shutdown();
+	}
+
+}
@@ -2,7 +2,20 @@ package com.xiao.devconsole.console.v2;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 
 import org.apache.http.Header;
 import org.apache.http.HttpStatus;
@@ -11,18 +24,22 @@ import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.cookie.Cookie;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 
 
+import com.xiao.devconsole.console.AsyncDevConsole;
 import com.xiao.devconsole.console.AuthenticationException;
 import com.xiao.devconsole.console.DevConsole;
+import com.xiao.devconsole.console.DevConsoleCallback;
 import com.xiao.devconsole.console.DevConsoleException;
 import com.xiao.devconsole.console.NetworkException;
 import com.xiao.devconsole.model.AppInfo;
 import com.xiao.devconsole.model.AppStats;
 import com.xiao.devconsole.model.Comment;
+import com.xiao.devconsole.model.CommentSyncResult;
+import com.xiao.devconsole.model.CommentWatermark;
 import com.xiao.devconsole.model.DeveloperConsoleAccount;
+import com.xiao.devconsole.model.StatisticsBreakdown;
 import com.xiao.devconsole.util.Logging;
 import com.xiao.devconsole.util.Utils;
 
@@ -41,8 +58,11 @@ import com.xiao.devconsole.util.Utils;
  * 
  * This class fetches the data, which is then passed using {@link JsonParser}
  * 
+ * Instances are thread safe. Data requests run concurrently, only logging in
+ * (again) is serialized, see {@link #authenticate(boolean, SessionCredentials)}
+ * 
  */
-public class DevConsoleV2 implements DevConsole {
+public class DevConsoleV2 implements DevConsole, AsyncDevConsole {
 
 	// 30 seconds -- for both socket and connection
 	public static final int TIMEOUT = 30 * 1000;
@@ -51,30 +71,140 @@ public class DevConsoleV2 implements DevConsole {
 
 	private static final boolean DEBUG = false;
 
+	// upper bound on the single-comment requests made to find the exact
+	// number of comments, see fetchCommentsCount()
+	private static final int MAX_COMMENTS_COUNT_PROBES = 24;
+
+	// number of console requests issued in parallel when fetching per-app data
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
 	private DefaultHttpClient httpClient;
 	private DevConsoleAuthenticator authenticator;
 	private String accountName;
 	private DevConsoleV2Protocol protocol;
+	// guards (re-)authentication, so only one login is in flight at a time
+	private final Object authLock = new Object();
 
 	private ResponseHandler<String> responseHandler = HttpClientFactory.createResponseHandler();
 
+	// runs the independent per-app requests, see fetchAppInfosAndStatistics()
+	private ExecutorService requestExecutor;
+	// runs the calls made through AsyncDevConsole, comment streams and reply
+	// queues. May be requestExecutor: the per-app requests an async call
+	// waits for are run by the waiting thread if no worker picks them up,
+	// see join()
+	private ExecutorService asyncExecutor;
+	// false if supplied by the caller or a DevConsolePool
+	private boolean ownsExecutors;
+	// caps the number of requests this account has on the wire at any time
+	private Semaphore inFlightRequests;
+
 	public static DevConsoleV2 createForAccountAndPassword(String accountName, String password
 			) {
-		DefaultHttpClient httpClient = HttpClientFactory
-			.createDevConsoleHttpClient(DevConsoleV2.TIMEOUT);
-	
+		return createForAccountAndPassword(accountName, password,
+				DEFAULT_MAX_CONCURRENT_REQUESTS);
+	}
+
+	/**
+	 * Creates a console that issues up to maxConcurrentRequests requests in
+	 * parallel when fetching ratings and comment counts for many apps
+	 * 
+	 * @param accountName
+	 * @param password
+	 * @param maxConcurrentRequests
+	 * @return
+	 */
+	public static DevConsoleV2 createForAccountAndPassword(String accountName, String password,
+			int maxConcurrentRequests) {
+		if (maxConcurrentRequests < 1) {
+			throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+		}
+
+		DefaultHttpClient httpClient = HttpClientFactory.createDevConsoleHttpClient(
+				DevConsoleV2.TIMEOUT, maxConcurrentRequests);
+
 		DevConsoleAuthenticator authenticator = new PasswordAuthenticator(accountName, password,
 				httpClient);
 
-		return new DevConsoleV2(httpClient, authenticator, new DevConsoleV2Protocol());
+		ExecutorService requestExecutor = Executors.newFixedThreadPool(maxConcurrentRequests,
+				new WorkerThreadFactory(TAG + "-request-"));
+		ExecutorService asyncExecutor = Executors.newFixedThreadPool(maxConcurrentRequests,
+				new WorkerThreadFactory(TAG + "-async-"));
+
+		return new DevConsoleV2(httpClient, authenticator, new DevConsoleV2Protocol(),
+				requestExecutor, asyncExecutor, maxConcurrentRequests, true);
+	}
+
+	/**
+	 * Creates a console that runs every parallel and asynchronous request on
+	 * the given executor, e.g. a virtual thread per task executor on JVMs that
+	 * provide one. This allows fanning out to a large number of requests
+	 * without sizing a thread pool: the number of requests this account has
+	 * on the wire is capped by maxInFlightRequests instead (the connection
+	 * pool is sized to match, so waiting requests block on the cap, not on a
+	 * connection).
+	 * 
+	 * A bounded executor merely limits concurrency: a call waiting for the
+	 * per-app requests it submitted runs those no worker has started yet
+	 * itself, so waiting tasks can't starve the ones they wait for. The
+	 * executor is not shut down by {@link #shutdown()}.
+	 * 
+	 * @param accountName
+	 * @param password
+	 * @param executor
+	 * @param maxInFlightRequests
+	 * @return
+	 */
+	public static DevConsoleV2 createForAccountAndPassword(String accountName, String password,
+			ExecutorService executor, int maxInFlightRequests) {
+		if (maxInFlightRequests < 1) {
+			throw new IllegalArgumentException("maxInFlightRequests must be at least 1");
+		}
+
+		DefaultHttpClient httpClient = HttpClientFactory.createDevConsoleHttpClient(
+				DevConsoleV2.TIMEOUT, maxInFlightRequests);
+
+		return createForAccountAndPassword(accountName, password, httpClient, executor, executor,
+				maxInFlightRequests);
+	}
+
+	/**
+	 * Creates a console using an existing client and executors, none of
+	 * which are released by {@link #shutdown()}. Used by {@link DevConsolePool}
+	 */
+	static DevConsoleV2 createForAccountAndPassword(String accountName, String password,
+			DefaultHttpClient httpClient, ExecutorService requestExecutor,
+			ExecutorService asyncExecutor, int maxInFlightRequests) {
+		DevConsoleAuthenticator authenticator = new PasswordAuthenticator(accountName, password,
+				httpClient);
+
+		return new DevConsoleV2(httpClient, authenticator, new DevConsoleV2Protocol(),
+				requestExecutor, asyncExecutor, maxInFlightRequests, false);
 	}
 
 	private DevConsoleV2(DefaultHttpClient httpClient, DevConsoleAuthenticator authenticator,
-			DevConsoleV2Protocol protocol) {
+			DevConsoleV2Protocol protocol, ExecutorService requestExecutor,
+			ExecutorService asyncExecutor, int maxInFlightRequests, boolean ownsExecutors) {
 		this.httpClient = httpClient;
 		this.authenticator = authenticator;
 		this.accountName = authenticator.getAccountName();
 		this.protocol = protocol;
+		this.requestExecutor = requestExecutor;
+		this.asyncExecutor = asyncExecutor;
+		this.ownsExecutors = ownsExecutors;
+		this.inFlightRequests = new Semaphore(maxInFlightRequests, true);
+	}
+
+	/**
+	 * Releases the worker threads used for parallel and asynchronous
+	 * requests, unless they were supplied by the caller. The console should
+	 * not be used after this has been called.
+	 */
+	public void shutdown() {
+		if (ownsExecutors) {
+			asyncExecutor.shutdownNow();
+			requestExecutor.shutdownNow();
+		}
 	}
 
 	/**
@@ -84,16 +214,18 @@ public class DevConsoleV2 implements DevConsole {
 	 * @return
 	 * @throws DevConsoleException
 	 */
-	public synchronized List<AppInfo> getAppInfo() throws DevConsoleException {
+	public List<AppInfo> getAppInfo() throws DevConsoleException {
+		SessionCredentials credentials = null;
 		try {
 			// the authenticator launched a sub-activity, bail out for now
-			if (!authenticateWithCachedCredentialas()) {
+			credentials = authenticateWithCachedCredentialas();
+			if (credentials == null) {
 				return new ArrayList<AppInfo>();
 			}
 
 			return fetchAppInfosAndStatistics();
 		} catch (AuthenticationException ex) {
-			if (!authenticateFromScratch()) {
+			if (authenticateFromScratch(ex, credentials) == null) {
 				return new ArrayList<AppInfo>();
 			}
 
@@ -105,18 +237,237 @@ public class DevConsoleV2 implements DevConsole {
 		// Fetch a list of available apps
 		List<AppInfo> apps = fetchAppInfos();
 
-		for (AppInfo app : apps) {
-			// Fetch remaining app statistics
-			// Latest stats object, and active/total installs is fetched
-			// in fetchAppInfos
-			AppStats stats = app.getLatestStats();
-			fetchRatings(app, stats);
-			stats.setNumberOfComments(fetchCommentsCount(app, Utils.getDisplayLocale()));
+		// Fetch remaining app statistics
+		// Latest stats object, and active/total installs is fetched
+		// in fetchAppInfos
+		// Ratings and comment counts are independent of each other and of
+		// other apps, so fan them out and join the results into each AppStats
+		final String displayLocale = Utils.getDisplayLocale();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		List<String> descriptions = new ArrayList<String>();
+		for (final List<AppInfo> batch : createRatingsBatches(apps)) {
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					fetchRatings(batch);
+					return null;
+				}
+			});
+			descriptions.add(String.format("ratings for %d apps of %s", batch.size(), batch
+					.get(0).getDeveloperId()));
+		}
+		for (final AppInfo app : apps) {
+			final AppStats stats = app.getLatestStats();
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					stats.setNumberOfComments(fetchCommentsCount(app, displayLocale));
+					return null;
+				}
+			});
+			descriptions.add("comments count for " + app.getPackageName());
 		}
+		invokeAllIsolated(tasks, descriptions);
 
 		return apps;
 	}
 
+	/**
+	 * Runs the given tasks on the request executor and waits for all of them
+	 * to finish. The first failure is rethrown once the remaining tasks have
+	 * been cancelled.
+	 * 
+	 * @param tasks
+	 * @return results in the same order as the tasks
+	 * @throws DevConsoleException
+	 */
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) throws DevConsoleException {
+		List<FutureTask<T>> futures = submitAll(tasks);
+
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for (FutureTask<T> future : futures) {
+				results.add(join(future));
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof DevConsoleException) {
+				throw (DevConsoleException) cause;
+			}
+			throw new DevConsoleException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NetworkException(e);
+		} finally {
+			// no-op if everything completed
+			for (FutureTask<T> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Runs the given tasks on the request executor and waits for all of them
+	 * to finish. A failing task is logged and its result is left as
+	 * <code>null</code>, so one broken app doesn't abort the whole sweep.
+	 * Authentication failures are rethrown, so the caller can
+	 * re-authenticate and try again.
+	 * 
+	 * @param tasks
+	 * @param descriptions
+	 *            used for logging, one per task
+	 * @return results in the same order as the tasks
+	 * @throws AuthenticationException
+	 */
+	private <T> List<T> invokeAllIsolated(List<Callable<T>> tasks, List<String> descriptions)
+			throws AuthenticationException {
+		List<FutureTask<T>> futures = submitAll(tasks);
+
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				T result = null;
+				try {
+					result = join(futures.get(i));
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof AuthenticationException) {
+						throw (AuthenticationException) cause;
+					}
+					Logging.w(TAG, "Error fetching " + descriptions.get(i),
+							cause instanceof Exception ? (Exception) cause : e);
+				}
+				results.add(result);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NetworkException(e);
+		} finally {
+			// no-op if everything completed
+			for (FutureTask<T> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Submits the given tasks to the request executor, to be waited for with
+	 * {@link #join(FutureTask)}
+	 */
+	private <T> List<FutureTask<T>> submitAll(List<Callable<T>> tasks) {
+		List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(tasks.size());
+		for (Callable<T> task : tasks) {
+			FutureTask<T> future = new FutureTask<T>(task);
+			requestExecutor.execute(future);
+			futures.add(future);
+		}
+
+		return futures;
+	}
+
+	/**
+	 * Waits for the given task, running it in the current thread if no worker
+	 * has started it yet. Callers may be tasks of the same executor, which
+	 * would otherwise deadlock once all threads of a bounded executor wait.
+	 * 
+	 * @param future
+	 * @return
+	 * @throws ExecutionException
+	 * @throws InterruptedException
+	 */
+	private static <T> T join(FutureTask<T> future) throws ExecutionException,
+			InterruptedException {
+		// no-op if already started or done, the worker just finds it done
+		future.run();
+
+		return future.get();
+	}
+
+	/**
+	 * Fetches the full daily history of active device installs and total user
+	 * installs of the given apps and merges it into
+	 * {@link AppInfo#getAppHistory()}, one entry per day
+	 * 
+	 * Apps are fetched concurrently. An app whose statistics can't be fetched
+	 * is logged and skipped, its history is left as it was.
+	 * 
+	 * @param apps
+	 * @throws DevConsoleException
+	 */
+	public void fetchStatisticsHistory(List<AppInfo> apps) throws DevConsoleException {
+		SessionCredentials credentials = null;
+		try {
+			credentials = authenticateWithCachedCredentialas();
+			if (credentials == null) {
+				return;
+			}
+
+			fetchStatisticsHistories(apps);
+		} catch (AuthenticationException ex) {
+			if (authenticateFromScratch(ex, credentials) == null) {
+				return;
+			}
+
+			// merging again is harmless, points are matched by date
+			fetchStatisticsHistories(apps);
+		}
+	}
+
+	private void fetchStatisticsHistories(List<AppInfo> apps) {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(apps.size());
+		List<String> descriptions = new ArrayList<String>(apps.size());
+		for (final AppInfo app : apps) {
+			// both series of an app in one task, only one thread touches its
+			// history
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					fetchStatisticsHistoryOfType(app,
+							DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS);
+					fetchStatisticsHistoryOfType(app,
+							DevConsoleV2Protocol.STATS_TYPE_TOTAL_USER_INSTALLS);
+					return null;
+				}
+			});
+			descriptions.add("statistics history for " + app.getPackageName());
+		}
+		invokeAllIsolated(tasks, descriptions);
+	}
+
+	/**
+	 * Fetches the daily statistics of the given app broken down by each of
+	 * the given dimensions, all in a single request
+	 * 
+	 * @param app
+	 * @param statsType
+	 *            e.g. {@link StatisticsBreakdown#STATS_TYPE_ACTIVE_DEVICE_INSTALLS}
+	 * @param dimensions
+	 *            e.g. {@link StatisticsBreakdown#BY_COUNTRY}
+	 * @return one breakdown per dimension the console returned data for, in
+	 *         the order requested, or <code>null</code> if there are no
+	 *         credentials
+	 * @throws DevConsoleException
+	 */
+	public List<StatisticsBreakdown> getStatisticsBreakdown(AppInfo app, int statsType,
+			int... dimensions) throws DevConsoleException {
+		SessionCredentials credentials = null;
+		try {
+			credentials = authenticateWithCachedCredentialas();
+			if (credentials == null) {
+				return null;
+			}
+
+			return fetchStatisticsBreakdown(app, statsType, dimensions);
+		} catch (AuthenticationException ex) {
+			if (authenticateFromScratch(ex, credentials) == null) {
+				return null;
+			}
+
+			return fetchStatisticsBreakdown(app, statsType, dimensions);
+		}
+	}
+
 	/**
 	 * Gets a list of comments for the given app based on the startIndex and
 	 * count
@@ -128,17 +479,19 @@ public class DevConsoleV2 implements DevConsole {
 	 * @return
 	 * @throws DevConsoleException
 	 */
-	public synchronized List<Comment> getComments( String packageName,
+	public List<Comment> getComments( String packageName,
 			String developerId, int startIndex, int count, String displayLocale)
 			throws DevConsoleException {
+		SessionCredentials credentials = null;
 		try {
-			if (!authenticateWithCachedCredentialas()) {
+			credentials = authenticateWithCachedCredentialas();
+			if (credentials == null) {
 				return new ArrayList<Comment>();
 			}
 
 			return fetchComments(packageName, developerId, startIndex, count, displayLocale);
 		} catch (AuthenticationException ex) {
-			if (!authenticateFromScratch()) {
+			if (authenticateFromScratch(ex, credentials) == null) {
 				return new ArrayList<Comment>();
 			}
 
@@ -146,16 +499,18 @@ public class DevConsoleV2 implements DevConsole {
 		}
 	}
 
-	public synchronized Comment replyToComment(String packageName,
+	public Comment replyToComment(String packageName,
 			String developerId, String commentUniqueId, String reply) {
+		SessionCredentials credentials = null;
 		try {
-			if (!authenticateWithCachedCredentialas()) {
+			credentials = authenticateWithCachedCredentialas();
+			if (credentials == null) {
 				return null;
 			}
 
 			return replyToCommentImpl(packageName, developerId, commentUniqueId, reply);
 		} catch (AuthenticationException ex) {
-			if (!authenticateFromScratch()) {
+			if (authenticateFromScratch(ex, credentials) == null) {
 				return null;
 			}
 
@@ -163,6 +518,266 @@ public class DevConsoleV2 implements DevConsole {
 		}
 	}
 
+	/**
+	 * Replies to several comments of the same app
+	 * 
+	 * All requests are encoded up front into a single buffer and then sent
+	 * one after the other. If the session expires on the way, the remaining
+	 * requests are encoded again with the new credentials.
+	 * 
+	 * @param packageName
+	 * @param developerId
+	 * @param commentUniqueIds
+	 * @param replies
+	 *            reply texts, in the same order as commentUniqueIds
+	 * @return the replies as returned by the console, in the same order.
+	 *         Shorter than replies if there are no credentials to send them
+	 *         with.
+	 * @throws DevConsoleException
+	 *             on the first reply that fails, the replies sent before it
+	 *             are not undone
+	 */
+	public List<Comment> replyToComments(String packageName, String developerId,
+			List<String> commentUniqueIds, List<String> replies) throws DevConsoleException {
+		int count = replies.size();
+		List<Comment> result = new ArrayList<Comment>(count);
+		SessionCredentials credentials = authenticateWithCachedCredentialas();
+		if (credentials == null) {
+			return result;
+		}
+
+		// requests for the comments from first on
+		int first = 0;
+		List<JsonPayload> requests = protocol.createReplyToCommentRequests(packageName,
+				commentUniqueIds, replies);
+		boolean reauthenticated = false;
+		while (result.size() < count) {
+			int i = result.size();
+			try {
+				String response = post(protocol.createCommentsUrl(developerId),
+						requests.get(i - first), developerId);
+				result.add(protocol.parseCommentReplyResponse(response));
+				reauthenticated = false;
+			} catch (AuthenticationException ex) {
+				if (reauthenticated) {
+					throw ex;
+				}
+				credentials = authenticateFromScratch(ex, credentials);
+				if (credentials == null) {
+					return result;
+				}
+				reauthenticated = true;
+
+				// the remaining requests carry the old XSRF token
+				first = i;
+				requests = protocol.createReplyToCommentRequests(packageName,
+						commentUniqueIds.subList(i, count), replies.subList(i, count));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns an iterator over all comments of the given app, fetching
+	 * {@link CommentStream#DEFAULT_PAGE_SIZE} comments per request with one
+	 * page fetched ahead
+	 * 
+	 * @param packageName
+	 * @param developerId
+	 * @param displayLocale
+	 * @return
+	 */
+	public CommentStream streamComments(String packageName, String developerId,
+			String displayLocale) {
+		return streamComments(packageName, developerId, CommentStream.DEFAULT_PAGE_SIZE,
+				CommentStream.DEFAULT_PREFETCH_PAGES, displayLocale);
+	}
+
+	/**
+	 * Returns an iterator over all comments of the given app
+	 * 
+	 * @param packageName
+	 * @param developerId
+	 * @param pageSize
+	 *            number of comments fetched per request
+	 * @param prefetchPages
+	 *            number of pages fetched ahead while the current one is
+	 *            consumed
+	 * @param displayLocale
+	 * @return
+	 */
+	public CommentStream streamComments(String packageName, String developerId, int pageSize,
+			int prefetchPages, String displayLocale) {
+		return new CommentStream(this, asyncExecutor, packageName, developerId, pageSize,
+				prefetchPages, displayLocale);
+	}
+
+	/**
+	 * Creates a queue sending replies concurrently on this console's
+	 * executor, at most maxRepliesPerMinute per developer account
+	 * 
+	 * @param maxRepliesPerMinute
+	 * @param maxRetries
+	 *            how often replies failing with a {@link NetworkException} are
+	 *            retried
+	 * @return the queue, to be shut down when done
+	 */
+	public ReplyQueue createReplyQueue(int maxRepliesPerMinute, int maxRetries) {
+		return new ReplyQueue(this, asyncExecutor, maxRepliesPerMinute, maxRetries);
+	}
+
+	/**
+	 * Fetches the comments added since the given watermark (or all comments
+	 * if it is <code>null</code>), together with the watermark for the next
+	 * sync.
+	 * 
+	 * Comments are fetched newest first, page by page. Seen comments are
+	 * returned again if they got a developer reply newer than the watermark.
+	 * Since replies often go to older comments, the scan doesn't stop at the
+	 * first comment older than the watermark: it goes on until pageSize
+	 * consecutive older comments without a new reply have been seen. The
+	 * number of requests thus depends on the number of new comments and
+	 * replies, not on the total; a reply to a comment beyond that window is
+	 * only picked up by a full sync (since == <code>null</code>).
+	 * 
+	 * @param packageName
+	 * @param developerId
+	 * @param since
+	 * @param displayLocale
+	 * @return
+	 * @throws DevConsoleException
+	 */
+	public CommentSyncResult syncComments(String packageName, String developerId,
+			CommentWatermark since, String displayLocale) throws DevConsoleException {
+		return syncComments(packageName, developerId, since, CommentStream.DEFAULT_PAGE_SIZE,
+				displayLocale);
+	}
+
+	public CommentSyncResult syncComments(String packageName, String developerId,
+			CommentWatermark since, int pageSize, String displayLocale)
+			throws DevConsoleException {
+		List<Comment> result = new ArrayList<Comment>();
+		Date lastCommentDate = since == null ? null : since.getLastCommentDate();
+		Set<String> lastCommentIds = new HashSet<String>();
+		if (since != null) {
+			lastCommentIds.addAll(since.getLastCommentIds());
+		}
+		Date lastReplyDate = since == null ? null : since.getLastReplyDate();
+
+		// don't prefetch, the first page is often the only one needed
+		CommentStream comments = streamComments(packageName, developerId, pageSize, 0,
+				displayLocale);
+		// consecutive comments older than the watermark without a new reply
+		int quietComments = 0;
+		try {
+			while (comments.hasNext()) {
+				Comment comment = comments.next();
+				if (since != null && since.isBefore(comment) && !since.hasNewReply(comment)) {
+					if (++quietComments >= pageSize) {
+						break;
+					}
+				} else {
+					quietComments = 0;
+				}
+
+				boolean seen = since != null && since.isSeen(comment);
+				boolean newReply = since == null || since.hasNewReply(comment);
+				if (!seen || newReply) {
+					result.add(comment);
+				}
+
+				Date date = comment.getDate();
+				if (date != null) {
+					if (lastCommentDate == null || date.after(lastCommentDate)) {
+						lastCommentDate = date;
+						lastCommentIds.clear();
+					}
+					if (date.equals(lastCommentDate)) {
+						lastCommentIds.add(comment.getUniqueId());
+					}
+				}
+				Comment reply = comment.getReply();
+				if (reply != null && reply.getDate() != null
+						&& (lastReplyDate == null || reply.getDate().after(lastReplyDate))) {
+					lastReplyDate = reply.getDate();
+				}
+			}
+		} finally {
+			comments.close();
+		}
+		Logging.d(TAG, String.format("Synced %s: %d new or updated comments", packageName,
+				result.size()));
+
+		return new CommentSyncResult(result, new CommentWatermark(lastCommentDate,
+				lastCommentIds, lastReplyDate));
+	}
+
+	public Future<List<AppInfo>> getAppInfoAsync(DevConsoleCallback<List<AppInfo>> callback) {
+		return submitAsync(new Callable<List<AppInfo>>() {
+			public List<AppInfo> call() {
+				return getAppInfo();
+			}
+		}, callback);
+	}
+
+	public Future<List<Comment>> getCommentsAsync(final String packageName,
+			final String developerId, final int startIndex, final int count,
+			final String displayLocale, DevConsoleCallback<List<Comment>> callback) {
+		return submitAsync(new Callable<List<Comment>>() {
+			public List<Comment> call() {
+				return getComments(packageName, developerId, startIndex, count, displayLocale);
+			}
+		}, callback);
+	}
+
+	public Future<Comment> replyToCommentAsync(final String packageName,
+			final String developerId, final String commentUniqueId, final String reply,
+			DevConsoleCallback<Comment> callback) {
+		return submitAsync(new Callable<Comment>() {
+			public Comment call() {
+				return replyToComment(packageName, developerId, commentUniqueId, reply);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Schedules the call on the async executor and notifies the callback (if
+	 * any) once it is done. Cancelled calls are not reported.
+	 * 
+	 * @param call
+	 * @param callback
+	 * @return
+	 */
+	private <T> Future<T> submitAsync(Callable<T> call, final DevConsoleCallback<T> callback) {
+		FutureTask<T> task = new FutureTask<T>(call) {
+			@Override
+			protected void done() {
+				if (callback == null || isCancelled()) {
+					return;
+				}
+
+				T result;
+				try {
+					result = get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					callback.onFailure(cause instanceof DevConsoleException ? (DevConsoleException) cause
+							: new DevConsoleException(cause));
+					return;
+				} catch (InterruptedException e) {
+					// can't happen, the task is already done
+					Thread.currentThread().interrupt();
+					return;
+				}
+				callback.onSuccess(result);
+			}
+		};
+		asyncExecutor.execute(task);
+
+		return task;
+	}
+
 	Comment replyToCommentImpl(String packageName, String developerId, String commentUiqueId,
 			String reply) {
 		String response = post(protocol.createCommentsUrl(developerId),
@@ -175,67 +790,108 @@ public class DevConsoleV2 implements DevConsole {
 	/**
 	 * Fetches a combined list of apps for all avaiable console accounts
 	 * 
+	 * Accounts are fetched concurrently, the result lists apps in the same
+	 * account order as {@link SessionCredentials#getDeveloperConsoleAccounts()}
+	 * 
 	 * @return combined list of apps
 	 * @throws DevConsoleException
 	 */
 	private List<AppInfo> fetchAppInfos() throws DevConsoleException {
+		DeveloperConsoleAccount[] consoleAccounts = protocol.getSessionCredentials()
+				.getDeveloperConsoleAccounts();
+		if (consoleAccounts.length == 1) {
+			return fetchAppInfos(consoleAccounts[0]);
+		}
+
+		List<Callable<List<AppInfo>>> tasks = new ArrayList<Callable<List<AppInfo>>>();
+		for (final DeveloperConsoleAccount consoleAccount : consoleAccounts) {
+			tasks.add(new Callable<List<AppInfo>>() {
+				public List<AppInfo> call() {
+					return fetchAppInfos(consoleAccount);
+				}
+			});
+		}
+
 		List<AppInfo> result = new ArrayList<AppInfo>();
-		for (DeveloperConsoleAccount consoleAccount : protocol.getSessionCredentials()
-				.getDeveloperConsoleAccounts()) {
-			String developerId = consoleAccount.getDeveloperId();
-			Logging.d(TAG, "Getting apps for " + developerId);
-			String response = post(protocol.createFetchAppsUrl(developerId),
-					protocol.createFetchAppInfosRequest(), developerId);
+		for (List<AppInfo> apps : invokeAll(tasks)) {
+			result.addAll(apps);
+		}
 
-			// don't skip incomplete apps, so we can get the package list
-			List<AppInfo> apps = protocol.parseAppInfosResponse(response, accountName, false);
-			if (apps.isEmpty()) {
-				continue;
-			}
+		return result;
+	}
 
-			for (AppInfo appInfo : apps) {
-				appInfo.setDeveloperId(developerId);
-				appInfo.setDeveloperName(consoleAccount.getName());
-			}
+	/**
+	 * Fetches the apps of a single console account, including the details of
+	 * apps that are incomplete in the initial listing
+	 * 
+	 * @param consoleAccount
+	 * @return
+	 * @throws DevConsoleException
+	 */
+	private List<AppInfo> fetchAppInfos(DeveloperConsoleAccount consoleAccount)
+			throws DevConsoleException {
+		long start = System.currentTimeMillis();
+		List<AppInfo> result = new ArrayList<AppInfo>();
+		String developerId = consoleAccount.getDeveloperId();
+		Logging.d(TAG, "Getting apps for " + developerId);
+		// don't skip incomplete apps, so we can get the package list
+		List<AppInfo> apps = post(protocol.createFetchAppsUrl(developerId),
+				protocol.createFetchAppInfosRequest(), developerId,
+				protocol.createAppInfosResponseHandler(accountName, false));
+		if (apps.isEmpty()) {
+			logAccountTiming(developerId, result, start);
+			return result;
+		}
 
-			result.addAll(apps);
-			List<String> incompletePackages = new ArrayList<String>();
-			for (AppInfo app : apps) {
-				if (app.isIncomplete()) {
-					result.remove(app);
-					incompletePackages.add(app.getPackageName());
-				}
-			}
-			Logging.d(TAG, String.format("Found %d apps for %s", apps.size(), developerId));
-			Logging.d(TAG, String.format("Incomplete packages: %d", incompletePackages.size()));
+		for (AppInfo appInfo : apps) {
+			appInfo.setDeveloperId(developerId);
+			appInfo.setDeveloperName(consoleAccount.getName());
+		}
 
-			if (incompletePackages.isEmpty()) {
-				continue;
+		result.addAll(apps);
+		List<String> incompletePackages = new ArrayList<String>();
+		for (AppInfo app : apps) {
+			if (app.isIncomplete()) {
+				result.remove(app);
+				incompletePackages.add(app.getPackageName());
 			}
+		}
+		Logging.d(TAG, String.format("Found %d apps for %s", apps.size(), developerId));
+		Logging.d(TAG, String.format("Incomplete packages: %d", incompletePackages.size()));
 
-			Logging.d(TAG, String.format("Got %d incomplete apps, issuing details request",
-					incompletePackages.size()));
-			response = post(protocol.createFetchAppsUrl(developerId),
-					protocol.createFetchAppInfosRequest(incompletePackages), developerId);
-			// if info is not here, not much to do, skip
-			List<AppInfo> extraApps = protocol.parseAppInfosResponse(response, accountName, true);
-			Logging.d(TAG, String.format("Got %d extra apps from details request", extraApps.size()));
-			for (AppInfo appInfo : extraApps) {
-				appInfo.setDeveloperId(developerId);
-				appInfo.setDeveloperName(consoleAccount.getName());
-			}
-			result.addAll(extraApps);
+		if (incompletePackages.isEmpty()) {
+			logAccountTiming(developerId, result, start);
+			return result;
+		}
+
+		Logging.d(TAG, String.format("Got %d incomplete apps, issuing details request",
+				incompletePackages.size()));
+		// if info is not here, not much to do, skip
+		List<AppInfo> extraApps = post(protocol.createFetchAppsUrl(developerId),
+				protocol.createFetchAppInfosRequest(incompletePackages), developerId,
+				protocol.createAppInfosResponseHandler(accountName, true));
+		Logging.d(TAG, String.format("Got %d extra apps from details request", extraApps.size()));
+		for (AppInfo appInfo : extraApps) {
+			appInfo.setDeveloperId(developerId);
+			appInfo.setDeveloperName(consoleAccount.getName());
 		}
+		result.addAll(extraApps);
+		logAccountTiming(developerId, result, start);
 
 		return result;
 	}
 
+	private static void logAccountTiming(String developerId, List<AppInfo> apps, long start) {
+		Logging.d(TAG, String.format("Fetched %d apps for %s in %d ms", apps.size(), developerId,
+				System.currentTimeMillis() - start));
+	}
+
 	/**
 	 * Fetches statistics for the given packageName of the given statsType and
 	 * adds them to the given {@link AppStats} object
 	 * 
-	 * This is not used as statistics can be fetched via fetchAppInfos Can use
-	 * it later to get historical etc data
+	 * This is not used as statistics can be fetched via fetchAppInfos, see
+	 * {@link #fetchStatisticsHistoryOfType(AppInfo, int)} for historical data
 	 * 
 	 * @param packageName
 	 * @param stats
@@ -252,6 +908,32 @@ public class DevConsoleV2 implements DevConsole {
 		protocol.parseStatisticsResponse(response, stats, statsType);
 	}
 
+	/**
+	 * Fetches statistics for the given app of the given statsType and merges
+	 * every data point into its history
+	 * 
+	 * @param appInfo
+	 * @param statsType
+	 * @throws DevConsoleException
+	 */
+	private void fetchStatisticsHistoryOfType(AppInfo appInfo, int statsType)
+			throws DevConsoleException {
+		String developerId = appInfo.getDeveloperId();
+		String response = post(protocol.createFetchStatisticsUrl(developerId),
+				protocol.createFetchStatisticsRequest(appInfo.getPackageName(), statsType),
+				developerId);
+		protocol.parseStatisticsHistoryResponse(response, appInfo.getAppHistory(), statsType);
+	}
+
+	private List<StatisticsBreakdown> fetchStatisticsBreakdown(AppInfo appInfo, int statsType,
+			int[] dimensions) throws DevConsoleException {
+		String developerId = appInfo.getDeveloperId();
+		String response = post(protocol.createFetchStatisticsUrl(developerId),
+				protocol.createFetchStatisticsRequest(appInfo.getPackageName(), statsType,
+						dimensions), developerId);
+		return protocol.parseStatisticsBreakdownResponse(response, statsType, dimensions);
+	}
+
 	/**
 	 * Fetches ratings for the given packageName and adds them to the given {@link AppStats} object
 	 * 
@@ -268,88 +950,270 @@ public class DevConsoleV2 implements DevConsole {
 		protocol.parseRatingsResponse(response, stats);
 	}
 
+	/**
+	 * Fetches ratings for a batch of apps of the same developer account in a
+	 * single request and adds them to each app's latest {@link AppStats}
+	 * 
+	 * If the batch request fails, the apps are fetched one by one, so one odd
+	 * app or a failed request doesn't cost the whole batch its ratings.
+	 * 
+	 * @param apps
+	 * @throws DevConsoleException
+	 *             the first failure of an app fetched one by one, once all
+	 *             others have been fetched
+	 */
+	private void fetchRatings(List<AppInfo> apps) throws DevConsoleException {
+		List<String> packageNames = new ArrayList<String>(apps.size());
+		Map<String, AppStats> statsByPackage = new HashMap<String, AppStats>();
+		for (AppInfo app : apps) {
+			packageNames.add(app.getPackageName());
+			statsByPackage.put(app.getPackageName(), app.getLatestStats());
+		}
+
+		String developerId = apps.get(0).getDeveloperId();
+		try {
+			String response = post(protocol.createCommentsUrl(developerId),
+					protocol.createFetchRatingsRequest(packageNames), developerId);
+			protocol.parseRatingsResponse(response, packageNames, statsByPackage);
+		} catch (AuthenticationException e) {
+			// re-authenticated and retried by the caller
+			throw e;
+		} catch (DevConsoleException e) {
+			if (apps.size() == 1) {
+				throw e;
+			}
+
+			Logging.w(TAG, "Error fetching batched ratings, fetching them one by one", e);
+			fetchRatingsOneByOne(apps);
+		}
+	}
+
+	private void fetchRatingsOneByOne(List<AppInfo> apps) throws DevConsoleException {
+		DevConsoleException failure = null;
+		for (AppInfo app : apps) {
+			try {
+				fetchRatings(app, app.getLatestStats());
+			} catch (AuthenticationException e) {
+				throw e;
+			} catch (DevConsoleException e) {
+				Logging.w(TAG, "Error fetching ratings for " + app.getPackageName(), e);
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Splits the apps into batches of at most
+	 * {@link DevConsoleV2Protocol#RATINGS_BATCH_SIZE}, each containing apps of a
+	 * single developer account
+	 * 
+	 * @param apps
+	 * @return
+	 */
+	private static List<List<AppInfo>> createRatingsBatches(List<AppInfo> apps) {
+		Map<String, List<AppInfo>> appsByDeveloper = new LinkedHashMap<String, List<AppInfo>>();
+		for (AppInfo app : apps) {
+			List<AppInfo> developerApps = appsByDeveloper.get(app.getDeveloperId());
+			if (developerApps == null) {
+				developerApps = new ArrayList<AppInfo>();
+				appsByDeveloper.put(app.getDeveloperId(), developerApps);
+			}
+			developerApps.add(app);
+		}
+
+		List<List<AppInfo>> result = new ArrayList<List<AppInfo>>();
+		for (List<AppInfo> developerApps : appsByDeveloper.values()) {
+			for (int i = 0; i < developerApps.size(); i += DevConsoleV2Protocol.RATINGS_BATCH_SIZE) {
+				result.add(developerApps.subList(i,
+						Math.min(i + DevConsoleV2Protocol.RATINGS_BATCH_SIZE, developerApps.size())));
+			}
+		}
+
+		return result;
+	}
+
 	/**
 	 * Fetches the number of comments for the given packageName
 	 * 
+	 * The total reported by the console is only approximate for apps with
+	 * many comments. To get the exact number, comments are probed one at a
+	 * time: the count is the index of the first missing comment. The
+	 * approximate total is checked first, then the search gallops away from
+	 * it and bisects between the last index known to exist and the first one
+	 * known to be missing, giving up after {@link #MAX_COMMENTS_COUNT_PROBES}.
+	 * 
 	 * @param packageName
 	 * @return
 	 * @throws DevConsoleException
 	 */
 	private int fetchCommentsCount(AppInfo appInfo, String displayLocale)
 			throws DevConsoleException {
-		// TODO -- this doesn't always produce correct results
-		// emulate the console: fetch first 50, get approx num. comments,
-		// fetch last 50 (or so) to get exact number.
-		int finalNumComments = 0;
-		int pageSize = 50;
-
+		String packageName = appInfo.getPackageName();
 		String developerId = appInfo.getDeveloperId();
 		String response = post(protocol.createCommentsUrl(developerId),
-				protocol.createFetchCommentsRequest(appInfo.getPackageName(), 0, pageSize,
-						displayLocale), developerId);
+				protocol.createFetchCommentsRequest(packageName, 0, 1, displayLocale), developerId);
 		int approxNumComments = protocol.extractCommentsCount(response);
-		if (approxNumComments <= pageSize) {
-			// this has a good chance of being exact
-			return approxNumComments;
+		if (!protocol.hasComments(response)) {
+			return 0;
 		}
 
-		response = post(
-				protocol.createCommentsUrl(developerId),
-				protocol.createFetchCommentsRequest(appInfo.getPackageName(), approxNumComments
-						- pageSize, pageSize, displayLocale), developerId);
-		finalNumComments += protocol.extractCommentsCount(response);
+		// invariant: comment #lowerBound exists, comment #upperBound doesn't
+		// (upperBound == -1 while unknown)
+		int lowerBound = 0;
+		int upperBound = -1;
+		int probes = 0;
+		int step = 1;
+		// comment #0 is known to exist, start with the last one the
+		// approximation accounts for
+		int next = Math.max(approxNumComments - 1, 1);
+		while ((upperBound == -1 || upperBound - lowerBound > 1)
+				&& probes < MAX_COMMENTS_COUNT_PROBES) {
+			probes++;
+			if (hasComment(packageName, developerId, next, displayLocale)) {
+				lowerBound = next;
+			} else {
+				upperBound = next;
+			}
 
-		return finalNumComments;
+			if (upperBound == -1) {
+				// the approximation is too low, gallop up
+				next = lowerBound + step;
+			} else if (lowerBound == 0) {
+				// the approximation is too high, gallop down
+				next = Math.max(upperBound - step, 1);
+			} else {
+				next = lowerBound + (upperBound - lowerBound) / 2;
+			}
+			step *= 2;
+		}
+		Logging.d(TAG, String.format("%s: approx. %d comments, bounds (%d, %d] after %d probes",
+				packageName, approxNumComments, lowerBound, upperBound, probes));
+
+		if (upperBound == -1) {
+			return lowerBound + 1;
+		}
+		// exact unless we ran out of probes
+		return Math.min(Math.max(approxNumComments, lowerBound + 1), upperBound);
 	}
 
-	private List<Comment> fetchComments(String packageName, String developerId, int startIndex,
-			int count, String displayLocale) throws DevConsoleException {
-		List<Comment> comments = new ArrayList<Comment>();
+	/**
+	 * Checks whether the comment with the given index exists by requesting a
+	 * single comment
+	 */
+	private boolean hasComment(String packageName, String developerId, int index,
+			String displayLocale) {
 		String response = post(protocol.createCommentsUrl(developerId),
-				protocol.createFetchCommentsRequest(packageName, startIndex, count, displayLocale),
+				protocol.createFetchCommentsRequest(packageName, index, 1, displayLocale),
 				developerId);
-		comments.addAll(protocol.parseCommentsResponse(response));
 
-		return comments;
+		return protocol.hasComments(response);
+	}
+
+	private List<Comment> fetchComments(String packageName, String developerId, int startIndex,
+			int count, String displayLocale) throws DevConsoleException {
+		return post(protocol.createCommentsUrl(developerId),
+				protocol.createFetchCommentsRequest(packageName, startIndex, count, displayLocale),
+				developerId, protocol.createCommentsResponseHandler());
 	}
 
-	private boolean authenticateWithCachedCredentialas() {
-		return authenticate(false);
+	private SessionCredentials authenticateWithCachedCredentialas() {
+		SessionCredentials credentials = protocol.getSessionCredentials();
+		if (credentials != null) {
+			// common case, no need to take the lock
+			return credentials;
+		}
+
+		return authenticate(false, null);
 	}
 
-	private boolean authenticateFromScratch() {
-		return authenticate(true);
+	/**
+	 * @param failure
+	 *            the exception the failed request was rejected with
+	 * @param fallback
+	 *            the credentials at the start of the call, used if the
+	 *            failure doesn't tell which credentials were rejected, e.g.
+	 *            when logging in failed. May be <code>null</code>.
+	 */
+	private SessionCredentials authenticateFromScratch(AuthenticationException failure,
+			SessionCredentials fallback) {
+		SessionCredentials rejected = fallback;
+		if (failure instanceof CredentialsRejectedException) {
+			rejected = ((CredentialsRejectedException) failure).credentials;
+		}
+
+		return authenticate(true, rejected);
 	}
 
 	/**
 	 * Logs into the Android Developer Console
 	 * 
-	 * @param reuseAuthentication
+	 * Only one thread logs in at a time. When several requests are rejected
+	 * at once, the first one to get here logs in again, the others wait for
+	 * it and then find that the credentials they were rejected with have
+	 * already been replaced, so they reuse the new ones.
+	 * 
+	 * @param invalidateCredentials
+	 * @param rejected
+	 *            credentials to replace when invalidateCredentials is set
+	 * @return the current credentials, or <code>null</code> if there are none
 	 * @throws DevConsoleException
 	 */
-	private boolean authenticate(boolean invalidateCredentials)
-			throws DevConsoleException {
-		if (invalidateCredentials) {
-			protocol.invalidateSessionCredentials();
-		}
+	private SessionCredentials authenticate(boolean invalidateCredentials,
+			SessionCredentials rejected) throws DevConsoleException {
+		synchronized (authLock) {
+			SessionCredentials current = protocol.getSessionCredentials();
+			if (current != null && (!invalidateCredentials || current != rejected)) {
+				// nothing to do, or someone else already logged in again
+				return current;
+			}
 
-		if (protocol.hasSessionCredentials()) {
-			// nothing to do
-			return true;
-		}
+			// keep the old credentials until the new ones are available, so
+			// concurrent requests fail with a 401 and wait here, rather than
+			// finding no credentials at all
+			SessionCredentials sessionCredentials;
+			try {
+				sessionCredentials = authenticator.authenticateSilently(invalidateCredentials);
+			} catch (DevConsoleException e) {
+				protocol.invalidateSessionCredentials();
+				throw e;
+			}
+			protocol.setSessionCredentials(sessionCredentials);
 
-		SessionCredentials sessionCredentials =  authenticator
-				.authenticateSilently(invalidateCredentials);
-		protocol.setSessionCredentials(sessionCredentials);
+			return protocol.getSessionCredentials();
+		}
+	}
 
-		return protocol.hasSessionCredentials();
+	private String post(String url, JsonPayload postData, String developerId) {
+		return post(url, postData, developerId, responseHandler);
 	}
 
-	private String post(String url, String postData, String developerId) {
+	/**
+	 * Posts the request and hands the response to the given handler. With a
+	 * {@link JsonResponseHandler} the response is parsed as it arrives.
+	 */
+	private <T> T post(String url, JsonPayload postData, String developerId,
+			ResponseHandler<T> handler) {
+		// the credentials the payload was just built with, reported if the
+		// request is rejected: they may be replaced concurrently while it
+		// waits for a permit or is on the wire
+		SessionCredentials credentials = protocol.getSessionCredentials();
+		try {
+			inFlightRequests.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NetworkException(e);
+		}
+
 		try {
 			HttpPost post = new HttpPost(url);
 			protocol.addHeaders(post, developerId);
-			post.setEntity(new StringEntity(postData, "UTF-8"));
+			post.setEntity(postData.toEntity());
 
 			if (DEBUG) {
 				Logging.d(TAG,url);
@@ -362,18 +1226,20 @@ public class DevConsoleV2 implements DevConsole {
 				for (Cookie c : cookies) {
 					Logging.d(TAG, String.format("****Cookie**** %s=%s", c.getName(), c.getValue()));
 				}
-				Logging.d(TAG,postData);
+				Logging.d(TAG, postData.toString());
 			}
 
-			return httpClient.execute(post, responseHandler);
+			return httpClient.execute(post, handler);
 		} catch (HttpResponseException e) {
 			if (e.getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
-				throw new AuthenticationException(e);
+				throw new CredentialsRejectedException(e, credentials);
 			}
 
 			throw new NetworkException(e);
 		} catch (IOException e) {
 			throw new NetworkException(e);
+		} finally {
+			inFlightRequests.release();
 		}
 
 	}
@@ -386,4 +1252,21 @@ public class DevConsoleV2 implements DevConsole {
 		return protocol.hasSessionCredentials();
 	}
 
+	/**
+	 * Thrown by post() when the console rejects the credentials a request was
+	 * sent with
+	 */
+	private static class CredentialsRejectedException extends AuthenticationException {
+
+		private static final long serialVersionUID = 6146349536398524347L;
+
+		private final transient SessionCredentials credentials;
+
+		CredentialsRejectedException(Throwable cause, SessionCredentials credentials) {
+			super(cause);
+			this.credentials = credentials;
+		}
+
+	}
+
 }
@@ -1,14 +1,20 @@
 package com.xiao.devconsole.console.v2;
 
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpPost;
 import org.json.JSONException;
 
 import com.xiao.devconsole.console.DevConsoleProtocolException;
+import com.xiao.devconsole.model.AppHistory;
 import com.xiao.devconsole.model.AppInfo;
 import com.xiao.devconsole.model.AppStats;
 import com.xiao.devconsole.model.Comment;
+import com.xiao.devconsole.model.StatisticsBreakdown;
 import com.xiao.devconsole.util.FileUtils;
 
 public class DevConsoleV2Protocol {
@@ -31,34 +37,61 @@ public class DevConsoleV2Protocol {
 	// 1$: package name, 2$: XSRF
 	static final String GET_RATINGS_TEMPLATE = "{\"method\":\"getRatings\","
 			+ "\"params\":{\"1\":[\"%1$s\"]},\"xsrf\":\"%2$s\"}";
+	// 1$: comma separated list of quoted package names, 2$: XSRF
+	static final String GET_RATINGS_BATCH_TEMPLATE = "{\"method\":\"getRatings\","
+			+ "\"params\":{\"1\":[%1$s]},\"xsrf\":\"%2$s\"}";
 	// 1$: package name, 2$: start, 3$: num comments to fetch, 4$: display locale, 5$ XSRF
 	static final String GET_REVIEWS_TEMPLATE = "{\"method\":\"getReviews\","
 			+ "\"params\":{\"1\":\"%1$s\",\"2\":%2$d,\"3\":%3$d,\"8\":\"%4$s\"},\"xsrf\":\"%5$s\"}";
-	// 1$: package name, 2$: stats type, 3$: stats by, 4$: XSRF
+	// 1$: package name, 2$: stats type, 3$: comma separated list of stats by,
+	// 4$: XSRF
 	static final String GET_COMBINED_STATS_TEMPLATE = "{\"method\":\"getCombinedStats\","
-			+ "\"params\":{\"1\":\"%1$s\",\"2\":1,\"3\":%2$d,\"4\":[%3$d]},\"xsrf\":\"%4$s\"}";
+			+ "\"params\":{\"1\":\"%1$s\",\"2\":1,\"3\":%2$d,\"4\":[%3$s]},\"xsrf\":\"%4$s\"}";
 	// %1$s: package name, %2$s: comment ID, %3$s: reply text, %4$s: XSRF
 	static final String REPLY_TO_COMMENT_TEMPLATE = "{\"method\":\"sendReply\","
 			+ "\"params\":{\"1\":\"%1$s\",\"2\":\"%2$s\",\"3\":\"%3$s\"},\"xsrf\":\"%4$s\"}";
 
+	// Compiled templates, see JsonPayload
+	private static final PayloadTemplate FETCH_APPS = PayloadTemplate
+			.compile(FETCH_APPS_TEMPLATE);
+	private static final PayloadTemplate FETCH_APPS_BY_PACKAGES = PayloadTemplate
+			.compile(FETCH_APPS_BY_PACKAGES_TEMPLATE);
+	private static final PayloadTemplate FETCH_APP = PayloadTemplate.compile(FETCH_APP_TEMPLATE);
+	private static final PayloadTemplate GET_RATINGS = PayloadTemplate
+			.compile(GET_RATINGS_TEMPLATE);
+	private static final PayloadTemplate GET_RATINGS_BATCH = PayloadTemplate
+			.compile(GET_RATINGS_BATCH_TEMPLATE);
+	private static final PayloadTemplate GET_REVIEWS = PayloadTemplate
+			.compile(GET_REVIEWS_TEMPLATE);
+	private static final PayloadTemplate GET_COMBINED_STATS = PayloadTemplate
+			.compile(GET_COMBINED_STATS_TEMPLATE);
+	private static final PayloadTemplate REPLY_TO_COMMENT = PayloadTemplate
+			.compile(REPLY_TO_COMMENT_TEMPLATE);
+
 	static final String REPLY_TO_COMMENTS_FEATURE = "REPLY_TO_COMMENTS";
 
 	// Represents the different ways to break down statistics by e.g. by android
 	// version
-	static final int STATS_BY_ANDROID_VERSION = 1;
-	static final int STATS_BY_DEVICE = 2;
-	static final int STATS_BY_COUNTRY = 3;
-	static final int STATS_BY_LANGUAGE = 4;
-	static final int STATS_BY_APP_VERSION = 5;
-	static final int STATS_BY_CARRIER = 6;
+	static final int STATS_BY_ANDROID_VERSION = StatisticsBreakdown.BY_ANDROID_VERSION;
+	static final int STATS_BY_DEVICE = StatisticsBreakdown.BY_DEVICE;
+	static final int STATS_BY_COUNTRY = StatisticsBreakdown.BY_COUNTRY;
+	static final int STATS_BY_LANGUAGE = StatisticsBreakdown.BY_LANGUAGE;
+	static final int STATS_BY_APP_VERSION = StatisticsBreakdown.BY_APP_VERSION;
+	static final int STATS_BY_CARRIER = StatisticsBreakdown.BY_CARRIER;
 
 	// Represents the different types of statistics e.g. active device installs
-	static final int STATS_TYPE_ACTIVE_DEVICE_INSTALLS = 1;
-	static final int STATS_TYPE_TOTAL_USER_INSTALLS = 8;
+	static final int STATS_TYPE_ACTIVE_DEVICE_INSTALLS = StatisticsBreakdown
+			.STATS_TYPE_ACTIVE_DEVICE_INSTALLS;
+	static final int STATS_TYPE_TOTAL_USER_INSTALLS = StatisticsBreakdown
+			.STATS_TYPE_TOTAL_USER_INSTALLS;
 
 	static final int COMMENT_REPLY_MAX_LENGTH = 350;
 
-	private SessionCredentials sessionCredentials;
+	// max number of packages to fetch ratings for in a single request
+	static final int RATINGS_BATCH_SIZE = 20;
+
+	// volatile: read by concurrent requests, replaced when re-authenticating
+	private volatile SessionCredentials sessionCredentials;
 
 	DevConsoleV2Protocol() {
 	}
@@ -83,10 +116,17 @@ public class DevConsoleV2Protocol {
 		sessionCredentials = null;
 	}
 
-	private void checkState() {
-		if (sessionCredentials == null) {
+	/**
+	 * Returns the current credentials. Callers should use the returned
+	 * object rather than re-reading the field, it may be replaced concurrently.
+	 */
+	private SessionCredentials checkState() {
+		SessionCredentials credentials = sessionCredentials;
+		if (credentials == null) {
 			throw new IllegalStateException("Set session credentials first.");
 		}
+
+		return credentials;
 	}
 
 	void addHeaders(HttpPost post, String developerId) {
@@ -121,29 +161,19 @@ public class DevConsoleV2Protocol {
 		return createDeveloperUrl(URL_REVIEWS, developerId);
 	}
 
-	String createFetchAppInfosRequest() {
-		checkState();
+	JsonPayload createFetchAppInfosRequest() {
+		SessionCredentials credentials = checkState();
 
 		// TODO Check the remaining possible parameters to see if they are
 		// needed for large numbers of apps
-		return String.format(FETCH_APPS_TEMPLATE, sessionCredentials.getXsrfToken());
+		return JsonPayload.start(FETCH_APPS).string(credentials.getXsrfToken()).finish();
 	}
 
-	String createFetchAppInfosRequest(List<String> packages) {
-		checkState();
+	JsonPayload createFetchAppInfosRequest(List<String> packages) {
+		SessionCredentials credentials = checkState();
 
-		StringBuilder buff = new StringBuilder();
-		for (int i = 0; i < packages.size(); i++) {
-			String packageName = packages.get(i);
-			buff.append(packageName);
-			if (i != packages.size() - 1) {
-				buff.append(",");
-			}
-		}
-		String packageList = buff.toString();
-
-		return String.format(FETCH_APPS_BY_PACKAGES_TEMPLATE, packageList,
-				sessionCredentials.getXsrfToken());
+		return JsonPayload.start(FETCH_APPS_BY_PACKAGES).strings(packages, true)
+				.string(credentials.getXsrfToken()).finish();
 	}
 
 	List<AppInfo> parseAppInfosResponse(String json, String accountName, boolean skipIncomplete) {
@@ -155,24 +185,47 @@ public class DevConsoleV2Protocol {
 		}
 	}
 
-	private static void saveDebugJson(String json) {
+	ResponseHandler<List<AppInfo>> createAppInfosResponseHandler(final String accountName,
+			final boolean skipIncomplete) {
+		return new JsonResponseHandler<List<AppInfo>>() {
+			@Override
+			protected List<AppInfo> parse(Reader reader) throws JSONException {
+				return JsonParser.parseAppInfos(reader, accountName, skipIncomplete);
+			}
+		};
+	}
+
+	static void saveDebugJson(String json) {
 		FileUtils.tryWriteToDebugDir(
 				String.format("console_reply_%d.json", System.currentTimeMillis()), json);
 	}
 
-	String createFetchAppInfoRequest(String packageName) {
-		checkState();
+	JsonPayload createFetchAppInfoRequest(String packageName) {
+		SessionCredentials credentials = checkState();
 
-		return String.format(FETCH_APP_TEMPLATE, packageName, sessionCredentials.getXsrfToken());
+		return JsonPayload.start(FETCH_APP).string(packageName)
+				.string(credentials.getXsrfToken()).finish();
 	}
 
-	String createFetchStatisticsRequest(String packageName, int statsType) {
-		checkState();
-
+	JsonPayload createFetchStatisticsRequest(String packageName, int statsType) {
 		// Don't care about the breakdown at the moment:
 		// STATS_BY_ANDROID_VERSION
-		return String.format(GET_COMBINED_STATS_TEMPLATE, packageName, statsType,
-				STATS_BY_ANDROID_VERSION, sessionCredentials.getXsrfToken());
+		return createFetchStatisticsRequest(packageName, statsType,
+				new int[] { STATS_BY_ANDROID_VERSION });
+	}
+
+	/**
+	 * @param dimensions
+	 *            STATS_BY_* values, all broken down in a single request
+	 */
+	JsonPayload createFetchStatisticsRequest(String packageName, int statsType, int[] dimensions) {
+		SessionCredentials credentials = checkState();
+		if (dimensions.length == 0) {
+			throw new IllegalArgumentException("No dimensions to break statistics down by");
+		}
+
+		return JsonPayload.start(GET_COMBINED_STATS).string(packageName).number(statsType)
+				.numbers(dimensions).string(credentials.getXsrfToken()).finish();
 	}
 
 	void parseStatisticsResponse(String json, AppStats stats, int statsType) {
@@ -184,10 +237,30 @@ public class DevConsoleV2Protocol {
 		}
 	}
 
-	String createFetchRatingsRequest(String packageName) {
-		checkState();
+	void parseStatisticsHistoryResponse(String json, AppHistory history, int statsType) {
+		try {
+			JsonParser.parseStatisticsHistory(json, history, statsType);
+		} catch (JSONException ex) {
+			saveDebugJson(json);
+			throw new DevConsoleProtocolException(json, ex);
+		}
+	}
+
+	List<StatisticsBreakdown> parseStatisticsBreakdownResponse(String json, int statsType,
+			int[] dimensions) {
+		try {
+			return JsonParser.parseStatisticsBreakdown(json, statsType, dimensions);
+		} catch (JSONException ex) {
+			saveDebugJson(json);
+			throw new DevConsoleProtocolException(json, ex);
+		}
+	}
 
-		return String.format(GET_RATINGS_TEMPLATE, packageName, sessionCredentials.getXsrfToken());
+	JsonPayload createFetchRatingsRequest(String packageName) {
+		SessionCredentials credentials = checkState();
+
+		return JsonPayload.start(GET_RATINGS).string(packageName)
+				.string(credentials.getXsrfToken()).finish();
 	}
 
 	void parseRatingsResponse(String json, AppStats stats) {
@@ -199,35 +272,111 @@ public class DevConsoleV2Protocol {
 		}
 	}
 
-	String createFetchCommentsRequest(String packageName, int start, int pageSize,
+	JsonPayload createFetchRatingsRequest(List<String> packageNames) {
+		SessionCredentials credentials = checkState();
+
+		return JsonPayload.start(GET_RATINGS_BATCH).strings(packageNames, true)
+				.string(credentials.getXsrfToken()).finish();
+	}
+
+	void parseRatingsResponse(String json, List<String> packageNames,
+			Map<String, AppStats> statsByPackage) {
+		try {
+			JsonParser.parseRatings(json, packageNames, statsByPackage);
+		} catch (JSONException ex) {
+			saveDebugJson(json);
+			throw new DevConsoleProtocolException(json, ex);
+		}
+	}
+
+	JsonPayload createFetchCommentsRequest(String packageName, int start, int pageSize,
 			String displayLocale) {
-		checkState();
+		SessionCredentials credentials = checkState();
 
-		return String.format(GET_REVIEWS_TEMPLATE, packageName, start, pageSize, displayLocale,
-				sessionCredentials.getXsrfToken());
+		return JsonPayload.start(GET_REVIEWS).string(packageName).number(start)
+				.number(pageSize).string(displayLocale).string(credentials.getXsrfToken())
+				.finish();
 	}
 
-	String createReplyToCommentRequest(String packageName, String commentId, String reply) {
-		checkState();
+	JsonPayload createReplyToCommentRequest(String packageName, String commentId, String reply) {
+		SessionCredentials credentials = checkState();
 
 		if (!canReplyToComments()) {
 			throw new IllegalStateException(
 					"Reply to comments feature not available for this account");
 		}
 
+		return JsonPayload.start(REPLY_TO_COMMENT).string(packageName).string(commentId)
+				.string(reply, 0, truncatedReplyLength(reply))
+				.string(credentials.getXsrfToken()).finish();
+	}
+
+	/**
+	 * Encodes the requests replying to several comments of the same app one
+	 * after the other into a single buffer
+	 * 
+	 * @param packageName
+	 * @param commentIds
+	 * @param replies
+	 *            reply texts, in the same order as commentIds
+	 * @return one payload per reply, all sharing the same buffer
+	 */
+	List<JsonPayload> createReplyToCommentRequests(String packageName, List<String> commentIds,
+			List<String> replies) {
+		SessionCredentials credentials = checkState();
+
+		if (!canReplyToComments()) {
+			throw new IllegalStateException(
+					"Reply to comments feature not available for this account");
+		}
+		if (commentIds.size() != replies.size()) {
+			throw new IllegalArgumentException("Got " + commentIds.size() + " comment IDs but "
+					+ replies.size() + " replies");
+		}
+
+		String xsrfToken = credentials.getXsrfToken();
+		int count = replies.size();
+		// enough for plain ASCII replies, the buffer grows if needed
+		JsonPayload buffer = JsonPayload.allocate(count
+				* (REPLY_TO_COMMENT.getLiteralLength() + packageName.length()
+						+ xsrfToken.length() + 32 + COMMENT_REPLY_MAX_LENGTH));
+		List<JsonPayload> result = new ArrayList<JsonPayload>(count);
+		for (int i = 0; i < count; i++) {
+			String reply = replies.get(i);
+			int start = buffer.length();
+			buffer.begin(REPLY_TO_COMMENT).string(packageName).string(commentIds.get(i))
+					.string(reply, 0, truncatedReplyLength(reply)).string(xsrfToken).finish();
+			result.add(buffer.slice(start));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Replies longer than {@link #COMMENT_REPLY_MAX_LENGTH} are truncated, but
+	 * never in the middle of a surrogate pair
+	 * 
+	 * @return the number of chars of reply to send
+	 */
+	static int truncatedReplyLength(String reply) {
+		int length = reply.length();
+		if (length <= COMMENT_REPLY_MAX_LENGTH) {
+			return length;
+		}
+
 		// XXX we can probably do better, truncate for now
-		if (reply.length() > COMMENT_REPLY_MAX_LENGTH) {
-			reply = reply.substring(0, COMMENT_REPLY_MAX_LENGTH);
+		length = COMMENT_REPLY_MAX_LENGTH;
+		if (Character.isHighSurrogate(reply.charAt(length - 1))) {
+			length--;
 		}
 
-		return String.format(REPLY_TO_COMMENT_TEMPLATE, packageName, commentId, reply,
-				sessionCredentials.getXsrfToken());
+		return length;
 	}
 
 	boolean hasFeature(String feature) {
-		checkState();
+		SessionCredentials credentials = checkState();
 
-		return sessionCredentials.hasFeature(feature);
+		return credentials.hasFeature(feature);
 	}
 
 	boolean canReplyToComments() {
@@ -243,6 +392,15 @@ public class DevConsoleV2Protocol {
 		}
 	}
 
+	boolean hasComments(String json) {
+		try {
+			return JsonParser.hasComments(json);
+		} catch (JSONException ex) {
+			saveDebugJson(json);
+			throw new DevConsoleProtocolException(json, ex);
+		}
+	}
+
 	List<Comment> parseCommentsResponse(String json) {
 		try {
 			return JsonParser.parseComments(json);
@@ -252,6 +410,15 @@ public class DevConsoleV2Protocol {
 		}
 	}
 
+	ResponseHandler<List<Comment>> createCommentsResponseHandler() {
+		return new JsonResponseHandler<List<Comment>>() {
+			@Override
+			protected List<Comment> parse(Reader reader) throws JSONException {
+				return JsonParser.parseComments(reader);
+			}
+		};
+	}
+
 	Comment parseCommentReplyResponse(String json) {
 		try {
 			return JsonParser.parseCommentReplyResponse(json);
@@ -13,6 +13,7 @@ import org.apache.http.ProtocolException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -43,11 +44,42 @@ public class HttpClientFactory {
 	// TODO do we need this?
 	private static final String KEEP_ALIVE_VALUE = "115";
 
+	// ThreadSafeClientConnManager only allows 2 connections per route by default
+	public static final int DEFAULT_MAX_CONNECTIONS = 2;
+
 	private HttpClientFactory() {
 	}
 
 	public static DefaultHttpClient createDevConsoleHttpClient(int timeoutMillis) {
-		DefaultHttpClient result = createDefaultClient(timeoutMillis);
+		return createDevConsoleHttpClient(timeoutMillis, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Creates a client whose connection pool allows up to maxConnections
+	 * concurrent requests to the console (all requests go to the same route).
+	 * 
+	 * @param timeoutMillis
+	 * @param maxConnections
+	 * @return
+	 */
+	public static DefaultHttpClient createDevConsoleHttpClient(int timeoutMillis,
+			int maxConnections) {
+		return createDevConsoleHttpClient(createConnectionManager(maxConnections), timeoutMillis);
+	}
+
+	/**
+	 * Creates a client on top of an existing connection manager. Clients
+	 * sharing a connection manager reuse each other's connections (and TLS
+	 * sessions), but each has its own cookie store, i.e. its own login.
+	 * Shutting down the connection manager is up to the caller.
+	 * 
+	 * @param connManager
+	 * @param timeoutMillis
+	 * @return
+	 */
+	public static DefaultHttpClient createDevConsoleHttpClient(
+			ClientConnectionManager connManager, int timeoutMillis) {
+		DefaultHttpClient result = createDefaultClient(connManager, timeoutMillis);
 		result.setRedirectStrategy(new DefaultRedirectStrategy() {
 			@Override
 			public boolean isRedirected(HttpRequest request, HttpResponse response,
@@ -77,7 +109,29 @@ public class HttpClientFactory {
 		return result;
 	}
 
-	private static DefaultHttpClient createDefaultClient(int timeoutMillis) {
+	/**
+	 * Creates a thread safe connection manager allowing up to maxConnections
+	 * concurrent connections to the console
+	 * 
+	 * @param maxConnections
+	 * @return
+	 */
+	public static ThreadSafeClientConnManager createConnectionManager(int maxConnections) {
+		SSLSocketFactory sf = SSLSocketFactory.getSocketFactory();
+		sf.setHostnameVerifier(SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
+		SchemeRegistry registry = new SchemeRegistry();
+		registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		registry.register(new Scheme("https", sf, 443));
+
+		ThreadSafeClientConnManager connManager = new ThreadSafeClientConnManager(registry);
+		connManager.setMaxTotal(Math.max(maxConnections, DEFAULT_MAX_CONNECTIONS));
+		connManager.setDefaultMaxPerRoute(Math.max(maxConnections, DEFAULT_MAX_CONNECTIONS));
+
+		return connManager;
+	}
+
+	private static DefaultHttpClient createDefaultClient(ClientConnectionManager connManager,
+			int timeoutMillis) {
 		HttpParams params = new BasicHttpParams();
 		HttpConnectionParams.setConnectionTimeout(params, timeoutMillis);
 		HttpConnectionParams.setSoTimeout(params, timeoutMillis);
@@ -90,13 +144,7 @@ public class HttpClientFactory {
 		HttpConnectionParams.setSoTimeout(params, timeoutMillis);
 		HttpConnectionParams.setConnectionTimeout(params, timeoutMillis);
 
-		SSLSocketFactory sf = SSLSocketFactory.getSocketFactory();
-		sf.setHostnameVerifier(SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
-		SchemeRegistry registry = new SchemeRegistry();
-		registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-		registry.register(new Scheme("https", sf, 443));
-
-		return new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
+		return new DefaultHttpClient(connManager, params);
 	}
 
 	private static void addGzipInterceptor(DefaultHttpClient result) {
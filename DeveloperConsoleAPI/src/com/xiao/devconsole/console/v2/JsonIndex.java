@@ -0,0 +1,564 @@
+package com.xiao.devconsole.console.v2;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+/**
+ * Read-only, lazily materialized view of a JSON document.
+ * 
+ * The document is scanned once, recording only the offsets of every value
+ * (and of its member name, inside objects) and links to the first child and
+ * the next sibling. Values are looked up by a path of member names and array
+ * indexes separated by '/', e.g. <code>result/1/0/2</code>, and only the
+ * values actually asked for are converted to Java objects. This makes picking
+ * a few values out of a large response much cheaper than building a
+ * {@link org.json.JSONObject} tree.
+ * 
+ * Lookups return node numbers, which can be used as the starting point of
+ * relative lookups, e.g. when iterating over an array:
+ * 
+ * <pre>
+ * int array = index.find(&quot;result/1&quot;);
+ * for (int node = index.firstChild(array); node != -1; node = index.nextSibling(node)) {
+ * 	int rating = index.getInt(node, &quot;2&quot;);
+ * }
+ * </pre>
+ * 
+ * As with {@link org.json.JSONObject}, escape sequences in member names are
+ * decoded before comparing them, and a document with duplicate names in an
+ * object is rejected.
+ */
+class JsonIndex {
+
+	private static final int ROOT = 0;
+	private static final int INITIAL_CAPACITY = 16;
+	// objects up to this size are checked for duplicate names pairwise
+	private static final int MAX_PAIRWISE_NAMES = 16;
+
+	private final String json;
+
+	// per node, in document order
+	private int[] starts;
+	private int[] ends;
+	// member name without quotes, -1 for array elements and the root
+	private int[] nameStarts;
+	private int[] nameEnds;
+	private int[] nextSiblings;
+	private int[] childCounts;
+	private int size;
+
+	JsonIndex(String json) throws JSONException {
+		this.json = json;
+		// grown as needed, most responses are small
+		starts = new int[INITIAL_CAPACITY];
+		ends = new int[INITIAL_CAPACITY];
+		nameStarts = new int[INITIAL_CAPACITY];
+		nameEnds = new int[INITIAL_CAPACITY];
+		nextSiblings = new int[INITIAL_CAPACITY];
+		childCounts = new int[INITIAL_CAPACITY];
+		build();
+	}
+
+	/**
+	 * @param path
+	 * @return the node at the given path, or -1 if there is none
+	 */
+	int find(String path) {
+		return find(ROOT, path);
+	}
+
+	/**
+	 * @param node
+	 * @param path
+	 *            relative to node, the empty path is node itself
+	 * @return the node at the given path, or -1 if there is none
+	 */
+	int find(int node, String path) {
+		int segmentStart = 0;
+		int length = path.length();
+		while (node != -1 && segmentStart < length) {
+			int segmentEnd = path.indexOf('/', segmentStart);
+			if (segmentEnd == -1) {
+				segmentEnd = length;
+			}
+			node = child(node, path, segmentStart, segmentEnd);
+			segmentStart = segmentEnd + 1;
+		}
+
+		return node;
+	}
+
+	boolean has(String path) {
+		return find(path) != -1;
+	}
+
+	/**
+	 * @return the first member or element of the given node, or -1 if it is
+	 *         not a non-empty object or array, or node is -1 itself
+	 */
+	int firstChild(int node) {
+		return node == -1 || childCounts[node] == 0 ? -1 : node + 1;
+	}
+
+	int nextSibling(int node) {
+		return nextSiblings[node];
+	}
+
+	/**
+	 * @return number of members or elements of the object or array at the
+	 *         given path, 0 for other values
+	 * @throws JSONException
+	 *             if there is no such value
+	 */
+	int length(String path) throws JSONException {
+		return childCounts[require(ROOT, path)];
+	}
+
+	/**
+	 * @return number of members or elements of the given node, 0 for other
+	 *         values or if node is -1
+	 */
+	int length(int node) {
+		return node == -1 ? 0 : childCounts[node];
+	}
+
+	boolean isNull(int node) {
+		return node == -1 || json.startsWith("null", starts[node]);
+	}
+
+	boolean isNull(String path) {
+		return isNull(find(path));
+	}
+
+	String getString(String path) throws JSONException {
+		return getString(ROOT, path);
+	}
+
+	/**
+	 * @return the string at the given path, numbers and booleans are
+	 *         converted to their string representation
+	 * @throws JSONException
+	 *             if there is no such value, or it is null, an object or an
+	 *             array
+	 */
+	String getString(int node, String path) throws JSONException {
+		int target = require(node, path);
+		String result = optString(target);
+		if (result == null) {
+			throw new JSONException("JSON value at " + path + " is not a string.");
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the string value of the given node, or <code>null</code> if
+	 *         there is no such node, it is null, an object or an array
+	 */
+	String optString(int node) {
+		if (node == -1 || isNull(node)) {
+			return null;
+		}
+
+		int start = starts[node];
+		int end = ends[node];
+		char c = json.charAt(start);
+		if (c == '{' || c == '[') {
+			return null;
+		}
+		if (c != '"') {
+			return json.substring(start, end);
+		}
+		int escape = json.indexOf('\\', start);
+		if (escape == -1 || escape >= end) {
+			return json.substring(start + 1, end - 1);
+		}
+
+		// rare: decode escape sequences
+		try {
+			return new JSONTokener(json.substring(start + 1, end)).nextString('"');
+		} catch (JSONException e) {
+			return null;
+		}
+	}
+
+	int getInt(String path) throws JSONException {
+		return getInt(ROOT, path);
+	}
+
+	int getInt(int node, String path) throws JSONException {
+		long value = getLong(node, path);
+		if (value != (int) value) {
+			throw new JSONException("JSON value at " + path + " is not an int.");
+		}
+
+		return (int) value;
+	}
+
+	long getLong(String path) throws JSONException {
+		return getLong(ROOT, path);
+	}
+
+	/**
+	 * @return the number at the given path, quoted or not, parsed without
+	 *         creating intermediate objects
+	 * @throws JSONException
+	 *             if there is no such value, or it isn't an integer
+	 */
+	long getLong(int node, String path) throws JSONException {
+		int target = require(node, path);
+		int start = starts[target];
+		int end = ends[target];
+		if (json.charAt(start) == '"') {
+			start++;
+			end--;
+		}
+
+		boolean negative = start < end && json.charAt(start) == '-';
+		int pos = negative ? start + 1 : start;
+		if (pos == end || end - pos > 19) {
+			throw new JSONException("JSON value at " + path + " is not a long.");
+		}
+		// accumulated negatively, as Long.MIN_VALUE has no positive counterpart
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long result = 0;
+		for (; pos < end; pos++) {
+			char c = json.charAt(pos);
+			if (c < '0' || c > '9' || result < limit / 10) {
+				throw new JSONException("JSON value at " + path + " is not a long.");
+			}
+			result = result * 10 - (c - '0');
+			if (result < limit || result > 0) {
+				throw new JSONException("JSON value at " + path + " is not a long.");
+			}
+		}
+
+		return negative ? result : -result;
+	}
+
+	int optInt(int node, String path, int defaultValue) {
+		try {
+			return find(node, path) == -1 ? defaultValue : getInt(node, path);
+		} catch (JSONException e) {
+			return defaultValue;
+		}
+	}
+
+	boolean getBoolean(int node, String path) throws JSONException {
+		int target = require(node, path);
+		if (json.startsWith("true", starts[target])) {
+			return true;
+		}
+		if (json.startsWith("false", starts[target])) {
+			return false;
+		}
+
+		throw new JSONException("JSON value at " + path + " is not a Boolean.");
+	}
+
+	private int require(int node, String path) throws JSONException {
+		int target = find(node, path);
+		if (target == -1) {
+			throw new JSONException("JSON value at " + path + " not found.");
+		}
+
+		return target;
+	}
+
+	/**
+	 * Finds the member (for objects) or element (for arrays) named by
+	 * path[segmentStart, segmentEnd)
+	 */
+	private int child(int node, String path, int segmentStart, int segmentEnd) {
+		char c = json.charAt(starts[node]);
+		int segmentLength = segmentEnd - segmentStart;
+		if (c == '{') {
+			for (int child = firstChild(node); child != -1; child = nextSiblings[child]) {
+				if (nameMatches(child, path, segmentStart, segmentEnd)) {
+					return child;
+				}
+			}
+			return -1;
+		}
+
+		if (c == '[') {
+			int index = 0;
+			for (int i = segmentStart; i < segmentEnd; i++) {
+				char digit = path.charAt(i);
+				if (digit < '0' || digit > '9' || segmentLength > 9) {
+					return -1;
+				}
+				index = index * 10 + (digit - '0');
+			}
+			if (segmentLength == 0 || index >= childCounts[node]) {
+				return -1;
+			}
+			int child = firstChild(node);
+			while (index-- > 0) {
+				child = nextSiblings[child];
+			}
+			return child;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return true if the name of the given member equals
+	 *         path[segmentStart, segmentEnd)
+	 */
+	private boolean nameMatches(int node, String path, int segmentStart, int segmentEnd) {
+		int nameLength = nameEnds[node] - nameStarts[node];
+		int segmentLength = segmentEnd - segmentStart;
+		if (nameLength == segmentLength) {
+			// equal as written, unless the segment contains an escape
+			// sequence matching an undecoded one of the name
+			return json.regionMatches(nameStarts[node], path, segmentStart, segmentLength)
+					&& path.lastIndexOf('\\', segmentEnd - 1) < segmentStart;
+		}
+		if (nameLength < segmentLength || !hasEscape(nameStarts[node], nameEnds[node])) {
+			return false;
+		}
+
+		return name(node).equals(path.substring(segmentStart, segmentEnd));
+	}
+
+	/**
+	 * @return the decoded name of the given member
+	 */
+	private String name(int node) {
+		int start = nameStarts[node];
+		int end = nameEnds[node];
+		if (!hasEscape(start, end)) {
+			return json.substring(start, end);
+		}
+
+		return new JSONTokener(json.substring(start, end + 1)).nextString('"');
+	}
+
+	private boolean hasEscape(int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (json.charAt(i) == '\\') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean sameName(int a, int b) {
+		int length = nameEnds[a] - nameStarts[a];
+		if (length == nameEnds[b] - nameStarts[b]
+				&& json.regionMatches(nameStarts[a], json, nameStarts[b], length)) {
+			return true;
+		}
+		if (!hasEscape(nameStarts[a], nameEnds[a]) && !hasEscape(nameStarts[b], nameEnds[b])) {
+			return false;
+		}
+
+		return name(a).equals(name(b));
+	}
+
+	/**
+	 * Rejects objects with duplicate member names, like
+	 * {@link org.json.JSONObject#putOnce(String, Object)}
+	 */
+	private void checkDuplicateNames(int object) throws JSONException {
+		if (childCounts[object] <= MAX_PAIRWISE_NAMES) {
+			for (int a = firstChild(object); a != -1; a = nextSiblings[a]) {
+				for (int b = nextSiblings[a]; b != -1; b = nextSiblings[b]) {
+					if (sameName(a, b)) {
+						throw new JSONException("Duplicate key \"" + name(a) + "\"");
+					}
+				}
+			}
+			return;
+		}
+
+		Set<String> names = new HashSet<String>();
+		for (int child = firstChild(object); child != -1; child = nextSiblings[child]) {
+			if (!names.add(name(child))) {
+				throw new JSONException("Duplicate key \"" + name(child) + "\"");
+			}
+		}
+	}
+
+	private void build() throws JSONException {
+		// open containers, and the last child seen in each
+		int[] open = new int[16];
+		int[] lastChild = new int[16];
+		int depth = 0;
+
+		int pos = skipWhitespace(0);
+		int nameStart = -1;
+		int nameEnd = -1;
+		boolean expectValue = true;
+		while (true) {
+			if (expectValue) {
+				int node = addNode(pos, nameStart, nameEnd);
+				if (depth > 0) {
+					int parent = open[depth - 1];
+					childCounts[parent]++;
+					if (lastChild[depth - 1] != -1) {
+						nextSiblings[lastChild[depth - 1]] = node;
+					}
+					lastChild[depth - 1] = node;
+				}
+
+				char c = charAt(pos);
+				if (c == '{' || c == '[') {
+					if (depth == open.length) {
+						open = grow(open);
+						lastChild = grow(lastChild);
+					}
+					open[depth] = node;
+					lastChild[depth] = -1;
+					depth++;
+					pos = skipWhitespace(pos + 1);
+					char close = c == '{' ? '}' : ']';
+					if (charAt(pos) != close) {
+						if (c == '{') {
+							pos = readName(pos);
+							nameStart = readNameStart;
+							nameEnd = readNameEnd;
+						} else {
+							nameStart = -1;
+							nameEnd = -1;
+						}
+						continue;
+					}
+					// empty container, close it below
+				} else {
+					ends[node] = c == '"' ? skipString(pos) : skipScalar(pos);
+					pos = ends[node];
+					if (depth == 0) {
+						return;
+					}
+				}
+			}
+
+			// after a value: ',' or the end of the current container
+			pos = skipWhitespace(pos);
+			char c = charAt(pos);
+			int parent = open[depth - 1];
+			boolean isObject = json.charAt(starts[parent]) == '{';
+			if (c == ',') {
+				pos = skipWhitespace(pos + 1);
+				if (isObject) {
+					pos = readName(pos);
+					nameStart = readNameStart;
+					nameEnd = readNameEnd;
+				} else {
+					nameStart = -1;
+					nameEnd = -1;
+				}
+				expectValue = true;
+			} else if (c == (isObject ? '}' : ']')) {
+				if (isObject && childCounts[parent] > 1) {
+					checkDuplicateNames(parent);
+				}
+				ends[parent] = pos + 1;
+				pos++;
+				depth--;
+				if (depth == 0) {
+					return;
+				}
+				expectValue = false;
+			} else {
+				throw syntaxError("Expected a ',' or '" + (isObject ? '}' : ']') + "'", pos);
+			}
+		}
+	}
+
+	// name of the member read by readName()
+	private int readNameStart;
+	private int readNameEnd;
+
+	/**
+	 * Reads a member name and the following ':'
+	 * 
+	 * @return position of the member value
+	 */
+	private int readName(int pos) throws JSONException {
+		if (charAt(pos) != '"') {
+			throw syntaxError("Expected a name", pos);
+		}
+		int end = skipString(pos);
+		readNameStart = pos + 1;
+		readNameEnd = end - 1;
+		pos = skipWhitespace(end);
+		if (charAt(pos) != ':') {
+			throw syntaxError("Expected a ':' after a key", pos);
+		}
+
+		return skipWhitespace(pos + 1);
+	}
+
+	private int addNode(int start, int nameStart, int nameEnd) {
+		if (size == starts.length) {
+			starts = grow(starts);
+			ends = grow(ends);
+			nameStarts = grow(nameStarts);
+			nameEnds = grow(nameEnds);
+			nextSiblings = grow(nextSiblings);
+			childCounts = grow(childCounts);
+		}
+		starts[size] = start;
+		nameStarts[size] = nameStart;
+		nameEnds[size] = nameEnd;
+		nextSiblings[size] = -1;
+		childCounts[size] = 0;
+
+		return size++;
+	}
+
+	private int skipString(int pos) throws JSONException {
+		for (pos++;; pos++) {
+			char c = charAt(pos);
+			if (c == '\\') {
+				pos++;
+			} else if (c == '"') {
+				return pos + 1;
+			}
+		}
+	}
+
+	private int skipScalar(int pos) throws JSONException {
+		int start = pos;
+		while (pos < json.length() && ",:]} \t\r\n".indexOf(json.charAt(pos)) < 0) {
+			pos++;
+		}
+		if (pos == start) {
+			throw syntaxError("Missing value", pos);
+		}
+
+		return pos;
+	}
+
+	private int skipWhitespace(int pos) {
+		while (pos < json.length() && json.charAt(pos) <= ' ') {
+			pos++;
+		}
+		return pos;
+	}
+
+	private char charAt(int pos) throws JSONException {
+		if (pos >= json.length()) {
+			throw syntaxError("Unexpected end of input", pos);
+		}
+		return json.charAt(pos);
+	}
+
+	private static int[] grow(int[] array) {
+		int[] result = new int[array.length * 2];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	private static JSONException syntaxError(String message, int pos) {
+		return new JSONException(message + " at " + pos);
+	}
+
+}
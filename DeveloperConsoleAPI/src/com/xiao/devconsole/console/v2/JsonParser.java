@@ -1,20 +1,26 @@
 package com.xiao.devconsole.console.v2;
 
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 
 import com.xiao.devconsole.console.DevConsoleException;
 import com.xiao.devconsole.model.AppDetails;
+import com.xiao.devconsole.model.AppHistory;
 import com.xiao.devconsole.model.AppInfo;
 import com.xiao.devconsole.model.AppStats;
 import com.xiao.devconsole.model.Comment;
+import com.xiao.devconsole.model.StatisticsBreakdown;
 import com.xiao.devconsole.util.FileUtils;
 import com.xiao.devconsole.util.Logging;
 
@@ -44,14 +50,62 @@ public class JsonParser {
 	 * @throws JSONException
 	 */
 	static void parseRatings(String json, AppStats stats) throws JSONException {
-		// Extract just the array with the values
-		JSONObject values = new JSONObject(json).getJSONObject("result").getJSONArray("1")
-				.getJSONObject(0);
+		// Extract just the object with the values
+		JsonIndex index = new JsonIndex(json);
+		int values = index.find("result/1/0");
+		if (values == -1) {
+			throw new JSONException("JSON value at result/1/0 not found.");
+		}
 
-		// Ratings are at index 2 - 6
-		stats.setRating(values.getInt("2"), values.getInt("3"), values.getInt("4"),
-				values.getInt("5"), values.getInt("6"));
+		setRating(index, values, stats);
+
+	}
+
+	/**
+	 * Parses the response to a batched ratings request and adds the ratings
+	 * of every package to its {@link AppStats} object
+	 * 
+	 * Each entry is matched by the package name it carries, falling back to
+	 * the request order for entries without one. Packages missing from the
+	 * response are left untouched.
+	 * 
+	 * @param json
+	 * @param packageNames
+	 *            packages in the order they were requested
+	 * @param statsByPackage
+	 * @throws JSONException
+	 */
+	static void parseRatings(String json, List<String> packageNames,
+			Map<String, AppStats> statsByPackage) throws JSONException {
+		JsonIndex index = new JsonIndex(json);
+		if (!index.has("result")) {
+			throw new JSONException("JSON value at result not found.");
+		}
+
+		int i = 0;
+		for (int values = index.firstChild(index.find("result/1")); values != -1; values = index
+				.nextSibling(values), i++) {
+			String packageName = index.optString(index.find(values, "1"));
+			if (packageName == null || !statsByPackage.containsKey(packageName)) {
+				if (i >= packageNames.size()) {
+					continue;
+				}
+				packageName = packageNames.get(i);
+			}
+
+			AppStats stats = statsByPackage.get(packageName);
+			if (stats == null) {
+				continue;
+			}
+			setRating(index, values, stats);
+		}
+	}
 
+	private static void setRating(JsonIndex index, int values, AppStats stats)
+			throws JSONException {
+		// Ratings are at index 2 - 6
+		stats.setRating(index.getInt(values, "2"), index.getInt(values, "3"),
+				index.getInt(values, "4"), index.getInt(values, "5"), index.getInt(values, "6"));
 	}
 
 	/**
@@ -67,7 +121,7 @@ public class JsonParser {
 	 */
 	static void parseStatistics(String json, AppStats stats, int statsType) throws JSONException {
 		// Extract the top level values array
-		JSONObject values = new JSONObject(json).getJSONObject("result").getJSONObject("1");
+		JsonIndex index = new JsonIndex(json);
 		/*
 		 * null
 		 * Nested array [null, [null, Array containing historical data]]
@@ -82,26 +136,206 @@ public class JsonParser {
 		 */
 		// For now we just care about todays value, later we may delve into the historical and
 		// dimensioned data
-		JSONArray historicalData = values.getJSONObject("1").getJSONArray("1");
-		JSONObject latestData = historicalData.getJSONObject(historicalData.length() - 1);
+		int historicalData = index.find("result/1/1/1");
+		if (historicalData == -1) {
+			throw new JSONException("JSON value at result/1/1/1 not found.");
+		}
+		int latestData = index.firstChild(historicalData);
+		while (latestData != -1 && index.nextSibling(latestData) != -1) {
+			latestData = index.nextSibling(latestData);
+		}
+		if (latestData == -1) {
+			throw new JSONException("No statistics in result/1/1/1.");
+		}
 		/*
 		 * null
 		 * Date
 		 * [null, value]
 		 */
-		int latestValue = latestData.getJSONObject("2").getInt("1");
+		int latestValue = index.getInt(latestData, "2/1");
+
+		setStatistic(stats, latestValue, statsType);
+	}
+
+	/**
+	 * Parses every data point of the historical data in the supplied JSON
+	 * string into the supplied history, one day per point. Points for days
+	 * already in the history update the existing day, the others are added.
+	 * The history is sorted by date afterwards.
+	 * 
+	 * @param json
+	 * @param history
+	 * @param statsType
+	 * @throws JSONException
+	 */
+	static void parseStatisticsHistory(String json, AppHistory history, int statsType)
+			throws JSONException {
+		JsonIndex index = new JsonIndex(json);
+		int historicalData = index.find("result/1/1/1");
+		if (historicalData == -1) {
+			throw new JSONException("JSON value at result/1/1/1 not found.");
+		}
+
+		// sorted, days are found by binary search. Once a point is added out
+		// of order, by a map that AppHistory keeps until it is sorted again.
+		history.sort();
+		for (int point = index.firstChild(historicalData); point != -1; point = index
+				.nextSibling(point)) {
+			/*
+			 * null
+			 * Date
+			 * [null, value]
+			 */
+			if (index.find(point, "2/1") == -1) {
+				// no data for that day
+				continue;
+			}
+			long date = index.getLong(point, "1");
+			int value = index.getInt(point, "2/1");
+
+			int day = history.indexOf(date);
+			if (day == -1) {
+				day = history.addDay(date);
+			}
+			switch (statsType) {
+				case DevConsoleV2Protocol.STATS_TYPE_TOTAL_USER_INSTALLS:
+					history.setTotalDownloads(day, value);
+					break;
+				case DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS:
+					history.setActiveInstalls(day, value);
+					break;
+				default:
+					break;
+			}
+		}
+
+		// no-op unless points were out of order
+		history.sort();
+	}
+
+	/**
+	 * Parses the dimensioned data in the supplied JSON string, one
+	 * {@link StatisticsBreakdown} per requested dimension in the order
+	 * requested. Dimensions missing from the response are left out.
+	 * 
+	 * @param json
+	 * @param statsType
+	 * @param dimensions
+	 *            the STATS_BY_* values requested
+	 * @return the breakdowns
+	 * @throws JSONException
+	 */
+	static List<StatisticsBreakdown> parseStatisticsBreakdown(String json, int statsType,
+			int[] dimensions) throws JSONException {
+		JsonIndex index = new JsonIndex(json);
+		int dimensioned = index.find("result/1/5");
+		if (dimensioned == -1) {
+			throw new JSONException("JSON value at result/1/5 not found.");
+		}
+
+		/*
+		 * One entry per dimension:
+		 * null
+		 * Dimension e.g. STATS_BY_COUNTRY
+		 * Array of values, each:
+		 * - null
+		 * - Value e.g. country code
+		 * - Array of historical data, same as result/1/1/1
+		 */
+		int[] entries = new int[dimensions.length];
+		Arrays.fill(entries, -1);
+		int position = 0;
+		for (int entry = index.firstChild(dimensioned); entry != -1; entry = index
+				.nextSibling(entry), position++) {
+			int dimension = index.optInt(entry, "1", -1);
+			int requested = -1;
+			for (int i = 0; i < dimensions.length; i++) {
+				if (dimensions[i] == dimension) {
+					requested = i;
+					break;
+				}
+			}
+			if (requested == -1 && dimension == -1 && position < dimensions.length) {
+				// no dimension ID, assume the order of the request
+				requested = position;
+			}
+			if (requested != -1 && entries[requested] == -1) {
+				entries[requested] = entry;
+			}
+		}
+
+		List<StatisticsBreakdown> result = new ArrayList<StatisticsBreakdown>(dimensions.length);
+		for (int i = 0; i < dimensions.length; i++) {
+			if (entries[i] != -1) {
+				result.add(parseBreakdown(index, entries[i], statsType, dimensions[i]));
+			}
+		}
+
+		return result;
+	}
+
+	private static StatisticsBreakdown parseBreakdown(JsonIndex index, int entry, int statsType,
+			int dimension) throws JSONException {
+		int valueList = index.find(entry, "2");
+		int valueCount = index.length(valueList);
 
+		// first pass: the days any value has data for
+		long[] dates = new long[16];
+		int dateCount = 0;
+		for (int value = index.firstChild(valueList); value != -1; value = index
+				.nextSibling(value)) {
+			for (int point = index.firstChild(index.find(value, "2")); point != -1; point = index
+					.nextSibling(point)) {
+				if (index.find(point, "2/1") == -1) {
+					continue;
+				}
+				if (dateCount == dates.length) {
+					dates = Arrays.copyOf(dates, dateCount * 2);
+				}
+				dates[dateCount++] = index.getLong(point, "1");
+			}
+		}
+		Arrays.sort(dates, 0, dateCount);
+		int dayCount = 0;
+		for (int i = 0; i < dateCount; i++) {
+			if (dayCount == 0 || dates[dayCount - 1] != dates[i]) {
+				dates[dayCount++] = dates[i];
+			}
+		}
+		dates = Arrays.copyOf(dates, dayCount);
+
+		// second pass: the counts, by day index
+		String[] values = new String[valueCount];
+		int[][] counts = new int[valueCount][];
+		int row = 0;
+		for (int value = index.firstChild(valueList); value != -1; value = index
+				.nextSibling(value), row++) {
+			values[row] = index.getString(value, "1");
+			counts[row] = new int[dayCount];
+			for (int point = index.firstChild(index.find(value, "2")); point != -1; point = index
+					.nextSibling(point)) {
+				if (index.find(point, "2/1") == -1) {
+					continue;
+				}
+				int day = Arrays.binarySearch(dates, index.getLong(point, "1"));
+				counts[row][day] = index.getInt(point, "2/1");
+			}
+		}
+
+		return new StatisticsBreakdown(statsType, dimension, dates, values, counts);
+	}
+
+	private static void setStatistic(AppStats stats, int value, int statsType) {
 		switch (statsType) {
 			case DevConsoleV2Protocol.STATS_TYPE_TOTAL_USER_INSTALLS:
-				stats.setTotalDownloads(latestValue);
+				stats.setTotalDownloads(value);
 				break;
 			case DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS:
-				stats.setActiveInstalls(latestValue);
+				stats.setActiveInstalls(value);
 				break;
 			default:
 				break;
 		}
-
 	}
 
 	/**
@@ -115,222 +349,308 @@ public class JsonParser {
 	 */
 	static List<AppInfo> parseAppInfos(String json, String accountName, boolean skipIncomplete)
 			throws JSONException {
+		return parseAppInfos(new JSONTokener(json), accountName, skipIncomplete);
+	}
 
-		Date now = new Date();
-		List<AppInfo> apps = new ArrayList<AppInfo>();
-		// Extract the base array containing apps
-		JSONObject result = new JSONObject(json).getJSONObject("result");
-		if (DEBUG) {
-			pp("result", result);
-		}
+	/**
+	 * Parses the supplied JSON stream and builds a list of apps from it
+	 * 
+	 * @param reader
+	 * @param accountName
+	 * @param skipIncomplete
+	 * @return List of apps
+	 * @throws JSONException
+	 */
+	static List<AppInfo> parseAppInfos(Reader reader, String accountName, boolean skipIncomplete)
+			throws JSONException {
+		return parseAppInfos(new JSONTokener(reader), accountName, skipIncomplete);
+	}
 
-		JSONArray jsonApps = result.optJSONArray("1");
-		if (DEBUG) {
-			pp("jsonApps", jsonApps);
-		}
-		if (jsonApps == null) {
-			// no apps yet?
-			return apps;
-		}
-
-		int numberOfApps = jsonApps.length();
-		Logging.d(TAG, String.format("Found %d apps in JSON", numberOfApps));
-		for (int i = 0; i < numberOfApps; i++) {
-			AppInfo app = new AppInfo();
-			app.setAccount(accountName);
-			app.setLastUpdate(now);
-			// Per app:
-			// 1 : { 1: package name,
-			// 2 : { 1: [{1 : lang, 2: name, 3: description, 4: ??, 5: what's new}], 2 : ?? },
-			// 3 : ??,
-			// 4 : update history,
-			// 5 : price,
-			// 6 : update date,
-			// 7 : state?
-			// }
-			// 2 : {}
-			// 3 : { 1: active dnd, 2: # ratings, 3: avg rating, 4: ???, 5: total dnd }
-
-			// arrays have changed to objects, with the index as the key
-			/*
-			 * Per app:
-			 * null
-			 * [ APP_INFO_ARRAY
-			 * * null
-			 * * packageName
-			 * * Nested array with details
-			 * * null
-			 * * Nested array with version details
-			 * * Nested array with price details
-			 * * Last update Date
-			 * * Number [1=published, 5 = draft?]
-			 * ]
-			 * null
-			 * [ APP_STATS_ARRAY
-			 * * null,
-			 * * Active installs
-			 * * Total ratings
-			 * * Average rating
-			 * * Errors
-			 * * Total installs
-			 * ]
-			 */
-			JSONObject jsonApp = jsonApps.getJSONObject(i);
-			JSONObject jsonAppInfo = jsonApp.getJSONObject("1");
-			if (DEBUG) {
-				pp("jsonAppInfo", jsonAppInfo);
-			}
-			String packageName = jsonAppInfo.getString("1");
-			// Look for "tmp.7238057230750432756094760456.235728507238057230542"
-			if (packageName == null
-					|| (packageName.startsWith("tmp.") && Character.isDigit(packageName.charAt(4)))) {
-				Logging.d(TAG, String.format("Skipping draft app %d, package name=%s", i, packageName));
-				continue;
-				// Draft app
-			}
+	/**
+	 * The app list is read with a {@link JsonReader}: the statistics and the
+	 * publish state are decoded straight into ints, only the (string valued)
+	 * details and version objects of each app are built as JSONObjects.
+	 */
+	private static List<AppInfo> parseAppInfos(JSONTokener tokener, String accountName,
+			boolean skipIncomplete) throws JSONException {
 
-			// Check number code and last updated date
-			// Published: 1
-			// Unpublished: 2
-			// Draft: 5
-			// Draft w/ in-app items?: 6
-			// TODO figure out the rest and add don't just skip, filter, etc. Cf. #223
-			int publishState = jsonAppInfo.optInt("7");
-			Logging.d(TAG, String.format("%s: publishState=%d", packageName, publishState));
-			if (publishState != 1) {
-				// Not a published app, skipping
-				Logging.d(TAG, String.format(
-						"Skipping app %d with state != 1: package name=%s: state=%d", i,
-						packageName, publishState));
+		Date now = new Date();
+		List<AppInfo> apps = new ArrayList<AppInfo>();
+		JsonReader reader = new JsonReader(tokener);
+		boolean resultFound = false;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (!"result".equals(reader.nextName())) {
+				reader.skipValue();
 				continue;
 			}
-			app.setPublishState(publishState);
-			app.setPackageName(packageName);
 
-			/*
-			 * Per app details:
-			 * 1: Country code
-			 * 2: App Name
-			 * 3: Description
-			 * 4: Promo text
-			 * 5: Last what's new
-			 */
-			// skip if we can't get all the data
-			// XXX should we just let this crash so we know there is a problem?
-			if (!jsonAppInfo.has("2")) {
-				if (skipIncomplete) {
-					Logging.d(TAG, String.format(
-							"Skipping app %d because no app details found: package name=%s", i,
-							packageName));
-				} else {
-					Logging.d(TAG, "Adding incomplete app: " + packageName);
-					apps.add(app);
+			resultFound = true;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				// Extract the base array containing apps
+				if (!"1".equals(reader.nextName()) || reader.peek() != '[') {
+					// no apps yet?
+					reader.skipValue();
+					continue;
 				}
-				continue;
-			}
-			if (!jsonAppInfo.has("4")) {
-				if (skipIncomplete) {
-					Logging.d(TAG, String.format(
-							"Skipping app %d because no versions info found: package name=%s", i,
-							packageName));
-				} else {
-					Logging.d(TAG, "Adding incomplete app: " + packageName);
-					apps.add(app);
+
+				reader.beginArray();
+				int numberOfApps = 0;
+				for (; reader.hasNext(); numberOfApps++) {
+					AppInfo app = parseAppInfo(reader, numberOfApps, accountName, now,
+							skipIncomplete);
+					if (app != null) {
+						apps.add(app);
+					}
 				}
-				continue;
+				reader.endArray();
+				Logging.d(TAG, String.format("Found %d apps in JSON", numberOfApps));
 			}
+			reader.endObject();
+		}
+		reader.endObject();
 
-			JSONObject appDetails = jsonAppInfo.getJSONObject("2").getJSONArray("1")
-					.getJSONObject(0);
-			if (DEBUG) {
-				pp("appDetails", appDetails);
-			}
-			app.setName(appDetails.getString("2"));
+		if (!resultFound) {
+			throw new JSONException("JSONObject[\"result\"] not found.");
+		}
 
-			String description = appDetails.getString("3");
-			String changelog = appDetails.optString("5");
-			Long lastPlayStoreUpdate = jsonAppInfo.optLong("7");
-			AppDetails details = new AppDetails(description, changelog, lastPlayStoreUpdate);
-			app.setDetails(details);
+		return apps;
+	}
 
-			/*
-			 * Per app version details:
-			 * null
-			 * null
-			 * packageName
-			 * versionNumber
-			 * versionName
-			 * null
-			 * Array with app icon [null,null,null,icon]
-			 */
-			// XXX
-			JSONArray appVersions = jsonAppInfo.optJSONObject("4").optJSONArray("1");
-			if (DEBUG) {
-				pp("appVersions", appVersions);
-			}
-			if (appVersions == null) {
-				if (skipIncomplete) {
-					Logging.d(TAG, String.format(
-							"Skipping app %d because no versions info found: package name=%s", i,
-							packageName));
-				} else {
-					Logging.d(TAG, "Adding incomplete app: " + packageName);
-					apps.add(app);
+	/**
+	 * Reads a single app object
+	 * 
+	 * @return the app, or <code>null</code> if it is skipped
+	 */
+	private static AppInfo parseAppInfo(JsonReader reader, int i, String accountName, Date now,
+			boolean skipIncomplete) throws JSONException {
+		// Per app:
+		// 1 : { 1: package name,
+		// 2 : { 1: [{1 : lang, 2: name, 3: description, 4: ??, 5: what's new}], 2 : ?? },
+		// 3 : ??,
+		// 4 : update history,
+		// 5 : price,
+		// 6 : update date,
+		// 7 : state?
+		// }
+		// 2 : {}
+		// 3 : { 1: active dnd, 2: # ratings, 3: avg rating, 4: ???, 5: total dnd }
+
+		// members may come in any order, collect them first
+		String packageName = null;
+		long publishState = 0;
+		boolean hasDetails = false;
+		JSONObject jsonDetails = null;
+		boolean hasVersions = false;
+		JSONObject jsonVersions = null;
+		boolean hasStats = false;
+		int statsCount = 0;
+		int activeInstalls = 0;
+		boolean hasActiveInstalls = false;
+		int totalDownloads = 0;
+		boolean hasTotalDownloads = false;
+		int numberOfErrors = 0;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if ("1".equals(name)) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String infoName = reader.nextName();
+					if ("1".equals(infoName)) {
+						packageName = reader.nextString();
+					} else if ("2".equals(infoName)) {
+						hasDetails = true;
+						jsonDetails = reader.nextNull() ? null : reader.nextObject();
+					} else if ("4".equals(infoName)) {
+						hasVersions = true;
+						jsonVersions = reader.nextNull() ? null : reader.nextObject();
+					} else if ("7".equals(infoName)) {
+						publishState = optLong(reader);
+					} else {
+						reader.skipValue();
+					}
 				}
-				continue;
-			}
-			JSONObject lastAppVersionDetails = appVersions.getJSONObject(appVersions.length() - 1)
-					.getJSONObject("2");
-			if (DEBUG) {
-				pp("lastAppVersionDetails", lastAppVersionDetails);
+				reader.endObject();
+			} else if ("3".equals(name) && reader.peek() == '{') {
+				hasStats = true;
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String statsName = reader.nextName();
+					statsCount++;
+					if ("1".equals(statsName)) {
+						activeInstalls = reader.nextInt();
+						hasActiveInstalls = true;
+					} else if ("4".equals(statsName)) {
+						numberOfErrors = (int) optLong(reader);
+					} else if ("5".equals(statsName)) {
+						totalDownloads = reader.nextInt();
+						hasTotalDownloads = true;
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+			} else {
+				reader.skipValue();
 			}
-			app.setVersionName(lastAppVersionDetails.getString("4"));
-			app.setIconUrl(lastAppVersionDetails.getJSONObject("6").getString("3"));
+		}
+		reader.endObject();
 
-			// App stats
-			/*
-			 * null,
-			 * Active installs
-			 * Total ratings
-			 * Average rating
-			 * Errors
-			 * Total installs
-			 */
-			// XXX this index might not be correct for all apps?
-			// 3 : { 1: active dnd, 2: # ratings, 3: avg rating, 4: #errors?, 5: total dnd }
-			JSONObject jsonAppStats = jsonApp.optJSONObject("3");
-			if (DEBUG) {
-				pp("jsonAppStats", jsonAppStats);
-			}
-			if (jsonAppStats == null) {
-				if (skipIncomplete) {
-					Logging.d(TAG, String.format(
-							"Skipping app %d because no stats found: package name=%s", i,
-							packageName));
-				} else {
-					Logging.d(TAG, "Adding incomplete app: " + packageName);
-					apps.add(app);
-				}
-				continue;
+		if (packageName == null) {
+			throw new JSONException("JSONObject[\"1\"] not found.");
+		}
+		// Look for "tmp.7238057230750432756094760456.235728507238057230542"
+		if (packageName.startsWith("tmp.") && Character.isDigit(packageName.charAt(4))) {
+			Logging.d(TAG, String.format("Skipping draft app %d, package name=%s", i, packageName));
+			return null;
+			// Draft app
+		}
+
+		// Check number code and last updated date
+		// Published: 1
+		// Unpublished: 2
+		// Draft: 5
+		// Draft w/ in-app items?: 6
+		// TODO figure out the rest and add don't just skip, filter, etc. Cf. #223
+		Logging.d(TAG, String.format("%s: publishState=%d", packageName, publishState));
+		if (publishState != 1) {
+			// Not a published app, skipping
+			Logging.d(TAG, String.format(
+					"Skipping app %d with state != 1: package name=%s: state=%d", i, packageName,
+					publishState));
+			return null;
+		}
+		AppInfo app = new AppInfo();
+		app.setAccount(accountName);
+		app.setLastUpdate(now);
+		app.setPublishState((int) publishState);
+		app.setPackageName(packageName);
+
+		/*
+		 * Per app details:
+		 * 1: Country code
+		 * 2: App Name
+		 * 3: Description
+		 * 4: Promo text
+		 * 5: Last what's new
+		 */
+		// skip if we can't get all the data
+		// XXX should we just let this crash so we know there is a problem?
+		if (!hasDetails) {
+			return incompleteApp(app, i, "no app details found", skipIncomplete);
+		}
+		if (!hasVersions) {
+			return incompleteApp(app, i, "no versions info found", skipIncomplete);
+		}
+		if (jsonDetails == null) {
+			throw new JSONException("JSONObject[\"2\"] is not a JSONObject.");
+		}
+
+		JSONObject appDetails = jsonDetails.getJSONArray("1").getJSONObject(0);
+		if (DEBUG) {
+			pp("appDetails", appDetails);
+		}
+		app.setName(appDetails.getString("2"));
+
+		String description = appDetails.getString("3");
+		String changelog = appDetails.optString("5");
+		// XXX this is the publish state member
+		Long lastPlayStoreUpdate = publishState;
+		AppDetails details = new AppDetails(description, changelog, lastPlayStoreUpdate);
+		app.setDetails(details);
+
+		/*
+		 * Per app version details:
+		 * null
+		 * null
+		 * packageName
+		 * versionNumber
+		 * versionName
+		 * null
+		 * Array with app icon [null,null,null,icon]
+		 */
+		// XXX
+		JSONArray appVersions = jsonVersions == null ? null : jsonVersions.optJSONArray("1");
+		if (DEBUG) {
+			pp("appVersions", appVersions);
+		}
+		if (appVersions == null) {
+			return incompleteApp(app, i, "no versions info found", skipIncomplete);
+		}
+		JSONObject lastAppVersionDetails = appVersions.getJSONObject(appVersions.length() - 1)
+				.getJSONObject("2");
+		if (DEBUG) {
+			pp("lastAppVersionDetails", lastAppVersionDetails);
+		}
+		app.setVersionName(lastAppVersionDetails.getString("4"));
+		app.setIconUrl(lastAppVersionDetails.getJSONObject("6").getString("3"));
+
+		// App stats
+		// XXX this index might not be correct for all apps?
+		// 3 : { 1: active dnd, 2: # ratings, 3: avg rating, 4: #errors?, 5: total dnd }
+		if (!hasStats) {
+			return incompleteApp(app, i, "no stats found", skipIncomplete);
+		}
+		AppStats stats = new AppStats();
+		// the day these statistics belong to
+		stats.setRequestDate(now);
+		if (statsCount < 4) {
+			// no statistics (yet?) or weird format
+			// TODO do we need differentiate?
+			stats.setActiveInstalls(0);
+			stats.setTotalDownloads(0);
+			stats.setNumberOfErrors(0);
+		} else {
+			if (!hasActiveInstalls) {
+				throw new JSONException("JSONObject[\"1\"] not found.");
 			}
-			AppStats stats = new AppStats();
-			if (jsonAppStats.length() < 4) {
-				// no statistics (yet?) or weird format
-				// TODO do we need differentiate?
-				stats.setActiveInstalls(0);
-				stats.setTotalDownloads(0);
-				stats.setNumberOfErrors(0);
-			} else {
-				stats.setActiveInstalls(jsonAppStats.getInt("1"));
-				stats.setTotalDownloads(jsonAppStats.getInt("5"));
-				stats.setNumberOfErrors(jsonAppStats.optInt("4"));
+			if (!hasTotalDownloads) {
+				throw new JSONException("JSONObject[\"5\"] not found.");
 			}
-			app.setLatestStats(stats);
+			stats.setActiveInstalls(activeInstalls);
+			stats.setTotalDownloads(totalDownloads);
+			stats.setNumberOfErrors(numberOfErrors);
+		}
+		app.setLatestStats(stats);
 
-			apps.add(app);
+		return app;
+	}
+
+	private static AppInfo incompleteApp(AppInfo app, int i, String reason,
+			boolean skipIncomplete) {
+		if (skipIncomplete) {
+			Logging.d(TAG, String.format("Skipping app %d because %s: package name=%s", i,
+					reason, app.getPackageName()));
+			return null;
 		}
 
-		return apps;
+		Logging.d(TAG, "Adding incomplete app: " + app.getPackageName());
+		return app;
+	}
+
+	/**
+	 * Reads the next value as a long like {@link JSONObject#optLong(String)}:
+	 * 0 unless it is a number or a string containing one
+	 */
+	private static long optLong(JsonReader reader) throws JSONException {
+		char c = reader.peek();
+		if (c == '-' || (c >= '0' && c <= '9')) {
+			return reader.nextLong();
+		}
+		if (c == '{' || c == '[') {
+			reader.skipValue();
+			return 0;
+		}
+
+		String value = reader.nextString();
+		try {
+			return value == null ? 0 : Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
 	}
 
 	private static void pp(String name, JSONArray jsonArr) {
@@ -367,130 +687,337 @@ public class JsonParser {
 		 * Array containing arrays of comments
 		 * numberOfComments
 		 */
-		return new JSONObject(json).getJSONObject("result").getInt("2");
+		// Only index the response instead of building the whole tree, the
+		// comments themselves aren't needed
+		return new JsonIndex(json).getInt("result/2");
+	}
+
+	/**
+	 * Checks whether the supplied comments JSON string contains at least one
+	 * comment, without parsing the comments
+	 * 
+	 * @param json
+	 * @return
+	 * @throws JSONException
+	 */
+	static boolean hasComments(String json) throws JSONException {
+		JsonIndex index = new JsonIndex(json);
+		if (!index.has("result")) {
+			throw new JSONException("JSON value at result not found.");
+		}
+
+		// no comments, or null
+		return index.find("result/1/0") != -1;
 	}
 
 	/**
 	 * Parses the supplied JSON string and returns a list of comments.
 	 * 
+	 * The response is read with a {@link JsonReader} and comments are built
+	 * directly from it, no JSONObject tree is built for the (potentially
+	 * large) page.
+	 * 
 	 * @param json
 	 * @return
 	 * @throws JSONException
 	 */
 	static List<Comment> parseComments(String json) throws JSONException {
+		return parseComments(new JsonReader(json));
+	}
+
+	/**
+	 * Parses the supplied JSON stream and returns a list of comments.
+	 * 
+	 * @param reader
+	 * @return
+	 * @throws JSONException
+	 */
+	static List<Comment> parseComments(Reader reader) throws JSONException {
+		return parseComments(new JsonReader(new JSONTokener(reader)));
+	}
+
+	private static List<Comment> parseComments(JsonReader reader) throws JSONException {
 		List<Comment> comments = new ArrayList<Comment>();
 		/*
 		 * null
 		 * Array containing arrays of comments
 		 * numberOfComments
 		 */
-		JSONArray jsonComments = new JSONObject(json).getJSONObject("result").getJSONArray("1");
-		int count = jsonComments.length();
-		for (int i = 0; i < count; i++) {
-			Comment comment = new Comment();
-			JSONObject jsonComment = jsonComments.getJSONObject(i);
-			// TODO These examples are out of date and need updating
-			/*
-			 * null
-			 * "gaia:17919762185957048423:1:vm:11887109942373535891", -- ID?
-			 * "REVIEWERS_NAME",
-			 * "1343652956570", -- DATE?
-			 * RATING,
-			 * null
-			 * "COMMENT",
-			 * null,
-			 * "VERSION_NAME",
-			 * [ null,
-			 * "DEVICE_CODE_NAME",
-			 * "DEVICE_MANFACTURER",
-			 * "DEVICE_MODEL"
-			 * ],
-			 * "LOCALE",
-			 * null,
-			 * 0
-			 */
-			// Example with developer reply
-			/*
-			 * [
-			 * null,
-			 * "gaia:12824185113034449316:1:vm:18363775304595766012",
-			 * "Micka�l",
-			 * "1350333837326",
-			 * 1,
-			 * "",
-			 * "Nul\tNul!! N'arrive pas a scanner le moindre code barre!",
-			 * 73,
-			 * "3.2.5",
-			 * [
-			 * null,
-			 * "X10i",
-			 * "SEMC",
-			 * "Xperia X10"
-			 * ],
-			 * "fr_FR",
-			 * [
-			 * null,
-			 * "Prixing foncti"
-			 * ,
-			 * null,
-			 * "1350393460968"
-			 * ],
-			 * 1
-			 * ]
-			 */
-			String uniqueId = jsonComment.getString("1");
-			comment.setUniqueId(uniqueId);
-			String user = jsonComment.optString("2");
-			if (user != null && !"".equals(user) && !"null".equals(user)) {
-				comment.setUser(user);
-			}
-			comment.setDate(parseDate(jsonComment.getLong("3")));
-			comment.setRating(jsonComment.getInt("4"));
-			String version = jsonComment.optString("7");
-			if (version != null && !"".equals(version) && !version.equals("null")) {
-				comment.setAppVersion(version);
+		boolean resultFound = false;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (!"result".equals(reader.nextName())) {
+				reader.skipValue();
+				continue;
 			}
 
-			String commentLang = jsonComment.optJSONObject("5").getString("1");
-			String commentText = jsonComment.optJSONObject("5").getString("3");
-			comment.setLanguage(commentLang);
-			comment.setOriginalText(commentText);
-			// overwritten if translation is available
-			comment.setText(commentText);
-
-			JSONObject translation = jsonComment.optJSONObject("11");
-			if (translation != null) {
-				String displayLanguage = Locale.getDefault().getLanguage();
-				String translationLang = translation.getString("1");
-				String translationText = translation.getString("3");
-				if (translationLang.contains(displayLanguage)) {
-					comment.setText(translationText);
+			resultFound = true;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (!"1".equals(reader.nextName())) {
+					reader.skipValue();
+					continue;
+				}
+				if (reader.nextNull()) {
+					// no comments
+					continue;
+				}
+
+				reader.beginArray();
+				while (reader.hasNext()) {
+					comments.add(parseComment(reader));
 				}
+				reader.endArray();
 			}
+			reader.endObject();
+		}
+		reader.endObject();
+
+		if (!resultFound) {
+			throw new JSONException("JSONObject[\"result\"] not found.");
+		}
+
+		return comments;
+	}
+
+	/**
+	 * Reads a single comment object
+	 * 
+	 * @param reader
+	 * @return
+	 * @throws JSONException
+	 */
+	private static Comment parseComment(JsonReader reader) throws JSONException {
+		// TODO These examples are out of date and need updating
+		/*
+		 * null
+		 * "gaia:17919762185957048423:1:vm:11887109942373535891", -- ID?
+		 * "REVIEWERS_NAME",
+		 * "1343652956570", -- DATE?
+		 * RATING,
+		 * null
+		 * "COMMENT",
+		 * null,
+		 * "VERSION_NAME",
+		 * [ null,
+		 * "DEVICE_CODE_NAME",
+		 * "DEVICE_MANFACTURER",
+		 * "DEVICE_MODEL"
+		 * ],
+		 * "LOCALE",
+		 * null,
+		 * 0
+		 */
+		// Example with developer reply
+		/*
+		 * [
+		 * null,
+		 * "gaia:12824185113034449316:1:vm:18363775304595766012",
+		 * "Micka�l",
+		 * "1350333837326",
+		 * 1,
+		 * "",
+		 * "Nul\tNul!! N'arrive pas a scanner le moindre code barre!",
+		 * 73,
+		 * "3.2.5",
+		 * [
+		 * null,
+		 * "X10i",
+		 * "SEMC",
+		 * "Xperia X10"
+		 * ],
+		 * "fr_FR",
+		 * [
+		 * null,
+		 * "Prixing foncti"
+		 * ,
+		 * null,
+		 * "1350393460968"
+		 * ],
+		 * 1
+		 * ]
+		 */
+		String uniqueId = null;
+		String user = null;
+		Long date = null;
+		Integer rating = null;
+		String version = null;
+		String[] text = null;
+		String[] translation = null;
+		String device = null;
+		Comment reply = null;
 
-			JSONObject jsonDevice = jsonComment.optJSONObject("8");
-			if (jsonDevice != null) {
-				String device = jsonDevice.optString("3");
-				JSONArray extraInfo = jsonDevice.optJSONArray("2");
-				if (extraInfo != null) {
-					device += " " + extraInfo.optString(0);
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (reader.nextNull()) {
+				continue;
+			}
+
+			if ("1".equals(name)) {
+				uniqueId = reader.nextString();
+			} else if ("2".equals(name)) {
+				user = reader.nextString();
+			} else if ("3".equals(name)) {
+				date = reader.nextLong();
+			} else if ("4".equals(name)) {
+				rating = reader.nextInt();
+			} else if ("5".equals(name)) {
+				text = parseCommentText(reader);
+			} else if ("7".equals(name)) {
+				version = reader.nextString();
+			} else if ("8".equals(name)) {
+				device = parseCommentDevice(reader);
+			} else if ("9".equals(name)) {
+				reply = parseCommentReply(reader);
+			} else if ("11".equals(name)) {
+				translation = parseCommentText(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (uniqueId == null) {
+			throw new JSONException("JSONObject[\"1\"] not a string.");
+		}
+		if (date == null) {
+			throw new JSONException("JSONObject[\"3\"] not found.");
+		}
+		if (rating == null) {
+			throw new JSONException("JSONObject[\"4\"] not found.");
+		}
+		if (text == null) {
+			throw new JSONException("JSONObject[\"5\"] not found.");
+		}
+
+		Comment comment = new Comment();
+		comment.setUniqueId(uniqueId);
+		if (user != null && !"".equals(user) && !"null".equals(user)) {
+			comment.setUser(user);
+		}
+		comment.setDate(parseDate(date));
+		comment.setRating(rating);
+		if (version != null && !"".equals(version) && !version.equals("null")) {
+			comment.setAppVersion(version);
+		}
+
+		comment.setLanguage(text[0]);
+		comment.setOriginalText(text[1]);
+		// overwritten if translation is available
+		comment.setText(text[1]);
+
+		if (translation != null) {
+			String displayLanguage = Locale.getDefault().getLanguage();
+			if (translation[0].contains(displayLanguage)) {
+				comment.setText(translation[1]);
+			}
+		}
+
+		if (device != null) {
+			comment.setDevice(device);
+		}
+
+		if (reply != null) {
+			reply.setOriginalCommentDate(comment.getDate());
+			comment.setReply(reply);
+		}
+
+		return comment;
+	}
+
+	/**
+	 * Reads a text object: { 1: language, 3: text }
+	 * 
+	 * @return language and text
+	 */
+	private static String[] parseCommentText(JsonReader reader) throws JSONException {
+		String[] result = new String[2];
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if ("1".equals(name)) {
+				result[0] = reader.nextString();
+			} else if ("3".equals(name)) {
+				result[1] = reader.nextString();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (result[0] == null || result[1] == null) {
+			throw new JSONException("Comment text is missing language or text");
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads a device object: { 2: [ extra info, ... ], 3: device name }
+	 */
+	private static String parseCommentDevice(JsonReader reader) throws JSONException {
+		String device = "";
+		String extraInfo = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if ("3".equals(name)) {
+				if (!reader.nextNull()) {
+					device = reader.nextString();
+				}
+			} else if ("2".equals(name) && reader.peek() == '[') {
+				reader.beginArray();
+				extraInfo = "";
+				if (reader.hasNext()) {
+					String first = reader.nextString();
+					extraInfo = first == null ? "" : first;
+				}
+				while (reader.hasNext()) {
+					reader.skipValue();
 				}
-				comment.setDevice(device.trim());
+				reader.endArray();
+			} else {
+				reader.skipValue();
 			}
+		}
+		reader.endObject();
+
+		if (extraInfo != null) {
+			device += " " + extraInfo;
+		}
 
-			JSONObject jsonReply = jsonComment.optJSONObject("9");
-			if (jsonReply != null) {
-				Comment reply = new Comment(true);
-				reply.setText(jsonReply.getString("1"));
-				reply.setDate(parseDate(jsonReply.getLong("3")));
-				reply.setOriginalCommentDate(comment.getDate());
-				comment.setReply(reply);
+		return device.trim();
+	}
+
+	/**
+	 * Reads a reply object: { 1: text, 3: date }
+	 */
+	private static Comment parseCommentReply(JsonReader reader) throws JSONException {
+		String text = null;
+		Long date = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if ("1".equals(name)) {
+				text = reader.nextString();
+			} else if ("3".equals(name)) {
+				date = reader.nextLong();
+			} else {
+				reader.skipValue();
 			}
+		}
+		reader.endObject();
 
-			comments.add(comment);
+		if (text == null || date == null) {
+			throw new JSONException("Reply is missing text or date");
 		}
 
-		return comments;
+		Comment reply = new Comment(true);
+		reply.setText(text);
+		reply.setDate(parseDate(date));
+
+		return reply;
 	}
 
 	static Comment parseCommentReplyResponse(String json) throws JSONException {
@@ -0,0 +1,369 @@
+package com.xiao.devconsole.console.v2;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * A request payload, written as UTF-8 straight into a byte buffer from a
+ * {@link PayloadTemplate} and its arguments:
+ *
+ * <pre>
+ * JsonPayload payload = JsonPayload.start(GET_REVIEWS);
+ * payload.string(packageName).number(start).number(pageSize).string(locale).string(xsrf);
+ * post.setEntity(payload.finish().toEntity());
+ * </pre>
+ *
+ * String arguments are JSON escaped, they are expected to be placed inside
+ * quotes by the template.
+ *
+ * Each payload has its own buffer, sized from the template for typical
+ * arguments, which {@link #toEntity()} sends without copying. A payload
+ * thus takes about as many bytes as its UTF-8 encoding, half of what the
+ * formatted String took.
+ *
+ * To encode many payloads at once, {@link #allocate(int)} a buffer, write
+ * them one after the other with {@link #begin(PayloadTemplate)} and take a
+ * {@link #slice(int)} of each.
+ */
+class JsonPayload {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final ContentType CONTENT_TYPE = ContentType.create("application/javascript",
+			UTF_8);
+
+	private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+			'a', 'b', 'c', 'd', 'e', 'f' };
+
+	private byte[] buffer;
+	// the payload is buffer[offset, length)
+	private int offset;
+	private int length;
+
+	private PayloadTemplate template;
+	private int argument;
+
+	private JsonPayload(byte[] buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Starts a payload in a new buffer, sized for the template
+	 *
+	 * @param template
+	 * @return the payload, ready for the first argument
+	 */
+	static JsonPayload start(PayloadTemplate template) {
+		return allocate(template.getEstimatedLength()).begin(template);
+	}
+
+	/**
+	 * @param capacity
+	 *            initial size of the buffer in bytes, it grows as needed
+	 * @return an empty payload buffer that is not shared with other
+	 *         payloads
+	 */
+	static JsonPayload allocate(int capacity) {
+		return new JsonPayload(new byte[capacity], 0, 0);
+	}
+
+	/**
+	 * Starts a new payload after the current one, keeping what has been
+	 * written so far
+	 *
+	 * @param template
+	 * @return this payload, ready for the first argument
+	 */
+	JsonPayload begin(PayloadTemplate template) {
+		this.offset = length;
+		this.template = template;
+		this.argument = 0;
+		append(template.getLiteral(0));
+
+		return this;
+	}
+
+	/**
+	 * Writes the next argument, a string, JSON escaped
+	 */
+	JsonPayload string(String value) {
+		return string(value, 0, value.length());
+	}
+
+	/**
+	 * Writes the next argument, value[start, end), JSON escaped
+	 */
+	JsonPayload string(String value, int start, int end) {
+		checkArgument('s');
+		appendEscaped(value, start, end);
+
+		return nextArgument();
+	}
+
+	/**
+	 * Writes the next argument, a comma separated list of strings, each
+	 * quoted if quote is set
+	 */
+	JsonPayload strings(List<String> values, boolean quote) {
+		checkArgument('s');
+		int count = values.size();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				appendByte(',');
+			}
+			String value = values.get(i);
+			if (quote) {
+				appendByte('"');
+			}
+			appendEscaped(value, 0, value.length());
+			if (quote) {
+				appendByte('"');
+			}
+		}
+
+		return nextArgument();
+	}
+
+	/**
+	 * Writes the next argument, a number
+	 */
+	JsonPayload number(long value) {
+		checkArgument('d');
+		appendNumber(value);
+
+		return nextArgument();
+	}
+
+	/**
+	 * Writes the next argument, a comma separated list of numbers
+	 */
+	JsonPayload numbers(int[] values) {
+		checkArgument('s');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				appendByte(',');
+			}
+			appendNumber(values[i]);
+		}
+
+		return nextArgument();
+	}
+
+	/**
+	 * Checks that all arguments have been written
+	 *
+	 * @return this payload
+	 */
+	JsonPayload finish() {
+		if (template == null || argument != template.getArgumentCount()) {
+			throw new IllegalStateException("Payload is missing arguments");
+		}
+
+		return this;
+	}
+
+	/**
+	 * @param start
+	 *            a position previously returned by {@link #length()}
+	 * @return a payload of the bytes written since start, sharing this
+	 *         payload's buffer. It stays valid when more is written to this
+	 *         payload, even if the buffer grows.
+	 */
+	JsonPayload slice(int start) {
+		if (start < 0 || start > length) {
+			throw new IndexOutOfBoundsException("start: " + start);
+		}
+
+		return new JsonPayload(buffer, start, length);
+	}
+
+	/**
+	 * @return an entity sending the payload directly from the buffer
+	 */
+	HttpEntity toEntity() {
+		return new ByteArrayEntity(buffer, offset, length - offset, CONTENT_TYPE);
+	}
+
+	/**
+	 * @return the number of bytes written to the buffer, which is also the
+	 *         position the next payload will start at
+	 */
+	int length() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return new String(buffer, offset, length - offset, UTF_8);
+	}
+
+	private void checkArgument(char type) {
+		if (template == null || argument >= template.getArgumentCount()) {
+			throw new IllegalStateException("Payload has no more arguments");
+		}
+		if (template.getArgumentType(argument) != type) {
+			throw new IllegalArgumentException("Argument " + (argument + 1) + " is a '"
+					+ template.getArgumentType(argument) + "'");
+		}
+	}
+
+	private JsonPayload nextArgument() {
+		argument++;
+		append(template.getLiteral(argument));
+
+		return this;
+	}
+
+	/**
+	 * Appends value[start, end) as the contents of a JSON string: UTF-8
+	 * encoded, with quotes, backslashes and control characters escaped.
+	 * Unpaired surrogates are written as '?', like String.getBytes() does.
+	 */
+	void appendEscaped(String value, int start, int end) {
+		// at most 6 bytes per char, for \\u00XX escapes. Rather than growing
+		// the buffer for that, count the bytes needed if it doesn't fit.
+		if (length + (end - start) * 6 > buffer.length) {
+			ensureCapacity(escapedLength(value, start, end));
+		}
+		byte[] buffer = this.buffer;
+		int pos = length;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				if (c >= 0x20 && c != '"' && c != '\\') {
+					buffer[pos++] = (byte) c;
+					continue;
+				}
+				buffer[pos++] = '\\';
+				switch (c) {
+					case '"':
+					case '\\':
+						buffer[pos++] = (byte) c;
+						break;
+					case '\n':
+						buffer[pos++] = 'n';
+						break;
+					case '\r':
+						buffer[pos++] = 'r';
+						break;
+					case '\t':
+						buffer[pos++] = 't';
+						break;
+					case '\b':
+						buffer[pos++] = 'b';
+						break;
+					case '\f':
+						buffer[pos++] = 'f';
+						break;
+					default:
+						buffer[pos++] = 'u';
+						buffer[pos++] = '0';
+						buffer[pos++] = '0';
+						buffer[pos++] = HEX_DIGITS[c >> 4];
+						buffer[pos++] = HEX_DIGITS[c & 0xf];
+						break;
+				}
+			} else if (c < 0x800) {
+				buffer[pos++] = (byte) (0xc0 | c >> 6);
+				buffer[pos++] = (byte) (0x80 | c & 0x3f);
+			} else if (Character.isHighSurrogate(c) && i + 1 < end
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer[pos++] = (byte) (0xf0 | codePoint >> 18);
+				buffer[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+				buffer[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+				buffer[pos++] = (byte) (0x80 | codePoint & 0x3f);
+			} else if (Character.isSurrogate(c)) {
+				buffer[pos++] = '?';
+			} else {
+				buffer[pos++] = (byte) (0xe0 | c >> 12);
+				buffer[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+				buffer[pos++] = (byte) (0x80 | c & 0x3f);
+			}
+		}
+		length = pos;
+	}
+
+	/**
+	 * @return the number of bytes {@link #appendEscaped(String, int, int)}
+	 *         writes for value[start, end)
+	 */
+	private static int escapedLength(String value, int start, int end) {
+		int result = 0;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				if (c >= 0x20 && c != '"' && c != '\\') {
+					result += 1;
+				} else if (c == '"' || c == '\\' || c == '\n' || c == '\r' || c == '\t'
+						|| c == '\b' || c == '\f') {
+					result += 2;
+				} else {
+					result += 6;
+				}
+			} else if (c < 0x800) {
+				result += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < end
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				result += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				result += 1;
+			} else {
+				result += 3;
+			}
+		}
+
+		return result;
+	}
+
+	private void appendNumber(long value) {
+		// 20 chars for Long.MIN_VALUE
+		ensureCapacity(20);
+		if (value == Long.MIN_VALUE) {
+			append(Long.toString(value).getBytes(UTF_8));
+			return;
+		}
+		if (value < 0) {
+			buffer[length++] = '-';
+			value = -value;
+		}
+
+		int digits = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		int pos = length + digits;
+		length = pos;
+		do {
+			buffer[--pos] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+	}
+
+	private void appendByte(char c) {
+		ensureCapacity(1);
+		buffer[length++] = (byte) c;
+	}
+
+	private void append(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+	}
+
+	private void ensureCapacity(int extra) {
+		if (length + extra > buffer.length) {
+			byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+			System.arraycopy(buffer, 0, grown, 0, length);
+			buffer = grown;
+		}
+	}
+
+}
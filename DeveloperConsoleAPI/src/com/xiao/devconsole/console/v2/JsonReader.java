@@ -0,0 +1,344 @@
+package com.xiao.devconsole.console.v2;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * A pull parser reading JSON values one at a time from a {@link JSONTokener},
+ * without building {@link JSONObject}s or {@link org.json.JSONArray}s. Used by
+ * {@link JsonParser} for large responses where only some values are needed.
+ * 
+ * Usage mirrors the structure of the document:
+ * 
+ * <pre>
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ * 	String name = reader.nextName();
+ * 	if (&quot;1&quot;.equals(name)) {
+ * 		value = reader.nextString();
+ * 	} else {
+ * 		reader.skipValue();
+ * 	}
+ * }
+ * reader.endObject();
+ * </pre>
+ */
+class JsonReader {
+
+	// states of the innermost container
+	// nothing read yet
+	private static final int EMPTY = 0;
+	// a value has been read, a ',' or the end of the container comes next
+	private static final int AFTER_VALUE = 1;
+	// a ',' has been read, a value (or name) comes next
+	private static final int AFTER_COMMA = 2;
+	// a name has been read, its value comes next
+	private static final int AFTER_NAME = 3;
+
+	private final JSONTokener tokener;
+
+	private char[] containers = new char[16];
+	private int[] states = new int[16];
+	private int depth;
+
+	JsonReader(JSONTokener tokener) {
+		this.tokener = tokener;
+	}
+
+	JsonReader(String json) {
+		this(new JSONTokener(json));
+	}
+
+	void beginObject() throws JSONException {
+		begin('{');
+	}
+
+	void endObject() throws JSONException {
+		end('}');
+	}
+
+	void beginArray() throws JSONException {
+		begin('[');
+	}
+
+	void endArray() throws JSONException {
+		end(']');
+	}
+
+	/**
+	 * @return true if the current object or array has another member
+	 * @throws JSONException
+	 */
+	boolean hasNext() throws JSONException {
+		checkInContainer();
+		beforeValue();
+		char c = tokener.nextClean();
+		tokener.back();
+
+		return c != '}' && c != ']' && c != 0;
+	}
+
+	/**
+	 * @return the name of the next member of the current object
+	 * @throws JSONException
+	 */
+	String nextName() throws JSONException {
+		checkInContainer();
+		if (containers[depth - 1] != '{') {
+			throw tokener.syntaxError("Names are only allowed in objects");
+		}
+		beforeValue();
+
+		char c = tokener.nextClean();
+		if (c != '"' && c != '\'') {
+			throw tokener.syntaxError("Expected a name");
+		}
+		String name = tokener.nextString(c);
+		if (tokener.nextClean() != ':') {
+			throw tokener.syntaxError("Expected a ':' after a key");
+		}
+		states[depth - 1] = AFTER_NAME;
+
+		return name;
+	}
+
+	/**
+	 * @return the first character of the next value, without consuming it
+	 * @throws JSONException
+	 */
+	char peek() throws JSONException {
+		beforeValue();
+		char c = tokener.nextClean();
+		tokener.back();
+
+		return c;
+	}
+
+	/**
+	 * Reads the next value as a string. Numbers and booleans are converted
+	 * to their string representation.
+	 * 
+	 * @return the value, or <code>null</code> for JSON null
+	 * @throws JSONException
+	 *             if the next value is an object or array
+	 */
+	String nextString() throws JSONException {
+		beforeValue();
+		char c = tokener.nextClean();
+		String result;
+		if (c == '"' || c == '\'') {
+			result = tokener.nextString(c);
+		} else {
+			result = nextScalar(c);
+		}
+		afterValue();
+
+		return result;
+	}
+
+	/**
+	 * Reads the next value as a long, parsing quoted numbers. The digits are
+	 * read straight into the result, no String or Long is created.
+	 * 
+	 * @return
+	 * @throws JSONException
+	 *             if the value isn't a number
+	 */
+	long nextLong() throws JSONException {
+		beforeValue();
+		long value = tokener.nextLong();
+		afterValue();
+
+		return value;
+	}
+
+	/**
+	 * Reads the next value as an int, parsing quoted numbers
+	 * 
+	 * @return
+	 * @throws JSONException
+	 *             if the value isn't a number
+	 */
+	int nextInt() throws JSONException {
+		long value = nextLong();
+		if (value != (int) value) {
+			throw tokener.syntaxError("Expected an int but was " + value);
+		}
+
+		return (int) value;
+	}
+
+	/**
+	 * Reads the next value, which must be an object, into a
+	 * {@link JSONObject}. For small parts of a document that are easier to
+	 * handle as a tree.
+	 * 
+	 * @return
+	 * @throws JSONException
+	 */
+	JSONObject nextObject() throws JSONException {
+		beforeValue();
+		char c = tokener.nextClean();
+		if (c != '{') {
+			throw tokener.syntaxError("Expected '{' and instead saw '" + c + "'");
+		}
+		tokener.back();
+		JSONObject result = new JSONObject(tokener);
+		afterValue();
+
+		return result;
+	}
+
+	/**
+	 * Consumes the next value if it is null
+	 * 
+	 * @return true if the value was null
+	 * @throws JSONException
+	 */
+	boolean nextNull() throws JSONException {
+		if (peek() != 'n') {
+			return false;
+		}
+
+		tokener.nextClean();
+		String value = nextScalar('n');
+		if (value != null) {
+			throw tokener.syntaxError("Expected null but was " + value);
+		}
+		afterValue();
+
+		return true;
+	}
+
+	/**
+	 * Skips the next value, including nested objects and arrays
+	 * 
+	 * @throws JSONException
+	 */
+	void skipValue() throws JSONException {
+		beforeValue();
+		char c = tokener.nextClean();
+		if (c == '"' || c == '\'') {
+			tokener.nextString(c);
+		} else if (c == '{' || c == '[') {
+			int nesting = 1;
+			while (nesting > 0) {
+				c = tokener.next();
+				switch (c) {
+					case 0:
+						throw tokener.syntaxError("Unterminated object or array");
+					case '"':
+					case '\'':
+						tokener.nextString(c);
+						break;
+					case '{':
+					case '[':
+						nesting++;
+						break;
+					case '}':
+					case ']':
+						nesting--;
+						break;
+					default:
+						break;
+				}
+			}
+		} else {
+			nextScalar(c);
+		}
+		afterValue();
+	}
+
+	/**
+	 * Reads an unquoted value whose first character c has already been
+	 * consumed
+	 * 
+	 * @return its string form, or <code>null</code> for JSON null
+	 */
+	private String nextScalar(char c) throws JSONException {
+		if (c == '{' || c == '[') {
+			throw tokener.syntaxError("Expected a value but found an object or array");
+		}
+		if (c == 0 || c == ',' || c == '}' || c == ']') {
+			throw tokener.syntaxError("Missing value");
+		}
+
+		tokener.back();
+		Object value = tokener.nextValue();
+
+		return JSONObject.NULL.equals(value) ? null : value.toString();
+	}
+
+	private void begin(char container) throws JSONException {
+		beforeValue();
+		char c = tokener.nextClean();
+		if (c != container) {
+			throw tokener.syntaxError("Expected '" + container + "' and instead saw '" + c + "'");
+		}
+
+		if (depth == containers.length) {
+			char[] newContainers = new char[depth * 2];
+			System.arraycopy(containers, 0, newContainers, 0, depth);
+			containers = newContainers;
+			int[] newStates = new int[depth * 2];
+			System.arraycopy(states, 0, newStates, 0, depth);
+			states = newStates;
+		}
+		containers[depth] = container;
+		states[depth] = EMPTY;
+		depth++;
+	}
+
+	private void end(char container) throws JSONException {
+		checkInContainer();
+		char expected = container == '}' ? '{' : '[';
+		if (containers[depth - 1] != expected) {
+			throw tokener.syntaxError("Unexpected '" + container + "'");
+		}
+		if (states[depth - 1] == AFTER_NAME) {
+			throw tokener.syntaxError("Missing value");
+		}
+
+		char c = tokener.nextClean();
+		if (c != container) {
+			throw tokener.syntaxError("Expected '" + container + "' and instead saw '" + c + "'");
+		}
+		depth--;
+		afterValue();
+	}
+
+	/**
+	 * Consumes the ',' separating the next value from the previous one, if
+	 * not done already. Trailing commas are tolerated, as by
+	 * {@link JSONObject}.
+	 */
+	private void beforeValue() throws JSONException {
+		if (depth == 0 || states[depth - 1] != AFTER_VALUE) {
+			return;
+		}
+
+		char c = tokener.nextClean();
+		if (c == ',' || c == ';') {
+			states[depth - 1] = AFTER_COMMA;
+		} else if (c == '}' || c == ']') {
+			tokener.back();
+		} else {
+			throw tokener.syntaxError("Expected a ',' or '" + (containers[depth - 1] == '{' ? '}' : ']')
+					+ "'");
+		}
+	}
+
+	private void afterValue() {
+		if (depth > 0) {
+			states[depth - 1] = AFTER_VALUE;
+		}
+	}
+
+	private void checkInContainer() throws JSONException {
+		if (depth == 0) {
+			throw tokener.syntaxError("Not in an object or array");
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.xiao.devconsole.console.v2;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+
+import com.xiao.devconsole.console.DevConsoleProtocolException;
+
+/**
+ * Parses a console response while it is being received, instead of reading
+ * the whole (inflated) body into a String first.
+ * 
+ * Like {@link org.apache.http.impl.client.BasicResponseHandler}, responses
+ * with a status code >= 300 are turned into an {@link HttpResponseException}.
+ * The first {@link #DEBUG_CAPTURE_LIMIT} characters read are kept, so a
+ * response that can't be parsed can still be saved for debugging and
+ * reported in the {@link DevConsoleProtocolException}.
+ * 
+ * @param <T>
+ *            type of the parsed response
+ */
+abstract class JsonResponseHandler<T> implements ResponseHandler<T> {
+
+	static final int DEBUG_CAPTURE_LIMIT = 64 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public T handleResponse(HttpResponse response) throws IOException {
+		StatusLine statusLine = response.getStatusLine();
+		HttpEntity entity = response.getEntity();
+		if (statusLine.getStatusCode() >= 300) {
+			EntityUtils.consume(entity);
+			throw new HttpResponseException(statusLine.getStatusCode(),
+					statusLine.getReasonPhrase());
+		}
+		if (entity == null) {
+			throw new ClientProtocolException("Response contains no content");
+		}
+
+		Charset charset = ContentType.getOrDefault(entity).getCharset();
+		CapturingReader reader = new CapturingReader(new InputStreamReader(entity.getContent(),
+				charset == null ? UTF_8 : charset), DEBUG_CAPTURE_LIMIT);
+		try {
+			return parse(reader);
+		} catch (JSONException ex) {
+			if (ex.getCause() instanceof IOException) {
+				// the connection failed, not the parser
+				throw (IOException) ex.getCause();
+			}
+
+			String json = reader.getCaptured();
+			DevConsoleV2Protocol.saveDebugJson(json);
+			throw new DevConsoleProtocolException(json, ex);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parses the response body
+	 * 
+	 * @param reader
+	 * @return
+	 * @throws JSONException
+	 */
+	protected abstract T parse(Reader reader) throws JSONException;
+
+	/**
+	 * Keeps a copy of the first characters read through it
+	 */
+	private static class CapturingReader extends FilterReader {
+
+		private final StringBuilder captured = new StringBuilder();
+		private final int limit;
+
+		CapturingReader(Reader in, int limit) {
+			super(in);
+			this.limit = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int c = super.read();
+			if (c != -1 && captured.length() < limit) {
+				captured.append((char) c);
+			}
+			return c;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			int read = super.read(cbuf, off, len);
+			if (read > 0 && captured.length() < limit) {
+				captured.append(cbuf, off, Math.min(read, limit - captured.length()));
+			}
+			return read;
+		}
+
+		String getCaptured() {
+			return captured.length() < limit ? captured.toString() : captured.toString()
+					+ "\n...(truncated)";
+		}
+	}
+
+}
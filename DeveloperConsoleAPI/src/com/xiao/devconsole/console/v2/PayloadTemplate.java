@@ -0,0 +1,132 @@
+package com.xiao.devconsole.console.v2;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request payload template, compiled once from a format string such as
+ * {@link DevConsoleV2Protocol#GET_REVIEWS_TEMPLATE}.
+ *
+ * The format string is split at its <code>%s</code>, <code>%d</code>,
+ * <code>%1$s</code> etc. arguments into UTF-8 encoded literal parts, which
+ * {@link JsonPayload} copies into its buffer around the argument values.
+ * Arguments must appear in the template in the order of their indexes.
+ */
+class PayloadTemplate {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// assumed bytes per argument when sizing a payload: enough for package
+	// names, XSRF tokens and numbers
+	private static final int ARGUMENT_LENGTH_ESTIMATE = 64;
+
+	// literals[i] comes before argument i, the last one after the last
+	// argument
+	private final byte[][] literals;
+	// 's' or 'd' per argument
+	private final char[] types;
+	private final int estimatedLength;
+
+	private PayloadTemplate(byte[][] literals, char[] types) {
+		this.literals = literals;
+		this.types = types;
+		this.estimatedLength = getLiteralLength() + types.length * ARGUMENT_LENGTH_ESTIMATE;
+	}
+
+	/**
+	 * @param format
+	 *            a format string using only <code>%s</code> and
+	 *            <code>%d</code> arguments, optionally indexed
+	 * @return the compiled template
+	 * @throws IllegalArgumentException
+	 *             if the format string has other conversions, or indexed
+	 *             arguments out of order
+	 */
+	static PayloadTemplate compile(String format) {
+		List<byte[]> literals = new ArrayList<byte[]>();
+		StringBuilder types = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		int length = format.length();
+		for (int i = 0; i < length; i++) {
+			char c = format.charAt(i);
+			if (c != '%') {
+				literal.append(c);
+				continue;
+			}
+
+			int start = i;
+			i++;
+			if (i < length && format.charAt(i) == '%') {
+				literal.append('%');
+				continue;
+			}
+			int index = 0;
+			while (i < length && format.charAt(i) >= '0' && format.charAt(i) <= '9') {
+				index = index * 10 + format.charAt(i) - '0';
+				i++;
+			}
+			if (index > 0) {
+				if (i >= length || format.charAt(i) != '$') {
+					throw new IllegalArgumentException("Unsupported argument at " + start + ": "
+							+ format);
+				}
+				i++;
+				if (index != types.length() + 1) {
+					throw new IllegalArgumentException("Argument " + index
+							+ " out of order in: " + format);
+				}
+			}
+			char type = i < length ? format.charAt(i) : 0;
+			if (type != 's' && type != 'd') {
+				throw new IllegalArgumentException("Unsupported argument at " + start + ": "
+						+ format);
+			}
+
+			literals.add(literal.toString().getBytes(UTF_8));
+			literal.setLength(0);
+			types.append(type);
+		}
+		literals.add(literal.toString().getBytes(UTF_8));
+
+		return new PayloadTemplate(literals.toArray(new byte[literals.size()][]), types
+				.toString().toCharArray());
+	}
+
+	/**
+	 * @return the total length in bytes of all literal parts
+	 */
+	int getLiteralLength() {
+		int result = 0;
+		for (byte[] literal : literals) {
+			result += literal.length;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the expected size in bytes of a payload built from this
+	 *         template, for sizing its buffer
+	 */
+	int getEstimatedLength() {
+		return estimatedLength;
+	}
+
+	int getArgumentCount() {
+		return types.length;
+	}
+
+	char getArgumentType(int argument) {
+		return types[argument];
+	}
+
+	/**
+	 * @return the UTF-8 bytes of the literal text before the given argument,
+	 *         or after the last one if argument is the argument count
+	 */
+	byte[] getLiteral(int argument) {
+		return literals[argument];
+	}
+
+}
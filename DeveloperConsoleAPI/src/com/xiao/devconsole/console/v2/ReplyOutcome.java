@@ -0,0 +1,74 @@
+package com.xiao.devconsole.console.v2;
+
+import com.xiao.devconsole.console.DevConsoleException;
+import com.xiao.devconsole.model.Comment;
+
+/**
+ * The result of a reply sent through a {@link ReplyQueue}: either the reply
+ * as returned by the console, or the error it failed with.
+ */
+public class ReplyOutcome {
+
+	private final String packageName;
+	private final String developerId;
+	private final String commentUniqueId;
+	private final Comment reply;
+	private final DevConsoleException error;
+	private final int attempts;
+
+	ReplyOutcome(String packageName, String developerId, String commentUniqueId, Comment reply,
+			DevConsoleException error, int attempts) {
+		this.packageName = packageName;
+		this.developerId = developerId;
+		this.commentUniqueId = commentUniqueId;
+		this.reply = reply;
+		this.error = error;
+		this.attempts = attempts;
+	}
+
+	public String getPackageName() {
+		return packageName;
+	}
+
+	public String getDeveloperId() {
+		return developerId;
+	}
+
+	public String getCommentUniqueId() {
+		return commentUniqueId;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * @return the reply as returned by the console, <code>null</code> if it
+	 *         failed
+	 */
+	public Comment getReply() {
+		return reply;
+	}
+
+	/**
+	 * @return the error of the last attempt, <code>null</code> if the reply
+	 *         was sent
+	 */
+	public DevConsoleException getError() {
+		return error;
+	}
+
+	/**
+	 * @return the number of times the reply was sent, including retries
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ReplyOutcome[%s/%s: %s after %d attempt(s)]", packageName,
+				commentUniqueId, isSuccess() ? "sent" : error.getMessage(), attempts);
+	}
+
+}
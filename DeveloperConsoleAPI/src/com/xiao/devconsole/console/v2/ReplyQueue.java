@@ -0,0 +1,302 @@
+package com.xiao.devconsole.console.v2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.xiao.devconsole.console.DevConsole;
+import com.xiao.devconsole.console.DevConsoleException;
+import com.xiao.devconsole.console.NetworkException;
+import com.xiao.devconsole.model.Comment;
+
+/**
+ * Sends many comment replies concurrently, without exceeding a given number
+ * of replies per minute for each developer account.
+ *
+ * Each reply added gets the next free send slot of its developer account
+ * and is sent at that time on the console's executor, so replies for
+ * different accounts don't hold each other up. Replies failing with a
+ * {@link NetworkException} are retried, with increasing delays, up to
+ * maxRetries times; other errors are final.
+ *
+ * <pre>
+ * ReplyQueue queue = console.createReplyQueue(30, ReplyQueue.DEFAULT_MAX_RETRIES);
+ * for (...) {
+ * 	queue.add(packageName, developerId, commentUniqueId, reply);
+ * }
+ * List&lt;ReplyOutcome&gt; outcomes = queue.awaitAll();
+ * queue.shutdown();
+ * </pre>
+ *
+ * Instances are thread safe.
+ */
+public class ReplyQueue {
+
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	// doubled for each further retry
+	static final long INITIAL_RETRY_DELAY_MILLIS = 2000;
+
+	private final DevConsole console;
+	private final ExecutorService executor;
+	private final ScheduledExecutorService scheduler;
+	private final long sendIntervalNanos;
+	private final int maxRetries;
+
+	// per developer ID, System.nanoTime() of the next free send slot
+	private final ConcurrentMap<String, AtomicLong> nextSendTimes = new ConcurrentHashMap<String, AtomicLong>();
+	// outcomes not yet returned by awaitAll(), in the order added
+	private final List<Future<ReplyOutcome>> pending = new ArrayList<Future<ReplyOutcome>>();
+	// items without an outcome yet
+	private final Set<Item> unfinished = Collections
+			.newSetFromMap(new ConcurrentHashMap<Item, Boolean>());
+
+	ReplyQueue(DevConsole console, ExecutorService executor, int maxRepliesPerMinute,
+			int maxRetries) {
+		if (maxRepliesPerMinute < 1) {
+			throw new IllegalArgumentException("maxRepliesPerMinute must be at least 1");
+		}
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("maxRetries must not be negative");
+		}
+
+		this.console = console;
+		this.executor = executor;
+		this.sendIntervalNanos = TimeUnit.MINUTES.toNanos(1) / maxRepliesPerMinute;
+		this.maxRetries = maxRetries;
+		// only hands replies over to executor when they are due
+		this.scheduler = new ScheduledThreadPoolExecutor(1, new WorkerThreadFactory(
+				"reply-queue-"));
+	}
+
+	/**
+	 * Queues a reply
+	 *
+	 * @param packageName
+	 * @param developerId
+	 * @param commentUniqueId
+	 * @param reply
+	 * @return the outcome, available once the reply has been sent or has
+	 *         finally failed. It can't be cancelled.
+	 */
+	public Future<ReplyOutcome> add(String packageName, String developerId,
+			String commentUniqueId, String reply) {
+		Item item = new Item(packageName, developerId, commentUniqueId, reply);
+		unfinished.add(item);
+		synchronized (pending) {
+			pending.add(item.outcome);
+		}
+		schedule(item, 0);
+
+		return item.outcome;
+	}
+
+	/**
+	 * Waits for all replies added so far
+	 *
+	 * @return their outcomes, in the order they were added. They are not
+	 *         returned again by later calls.
+	 * @throws NetworkException
+	 *             if interrupted while waiting
+	 */
+	public List<ReplyOutcome> awaitAll() {
+		List<Future<ReplyOutcome>> outcomes;
+		synchronized (pending) {
+			outcomes = new ArrayList<Future<ReplyOutcome>>(pending);
+			pending.clear();
+		}
+
+		List<ReplyOutcome> result = new ArrayList<ReplyOutcome>(outcomes.size());
+		for (Future<ReplyOutcome> outcome : outcomes) {
+			try {
+				result.add(outcome.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new NetworkException(e);
+			} catch (ExecutionException e) {
+				// can't happen, outcomes are only ever set
+				throw new DevConsoleException(e.getCause());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the number of replies added but not yet returned by
+	 *         {@link #awaitAll()}
+	 */
+	public int size() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Stops sending replies. Replies not sent yet fail with a
+	 * {@link DevConsoleException}.
+	 */
+	public void shutdown() {
+		scheduler.shutdownNow();
+		// replies being sent right now may still succeed, their outcome is
+		// whichever comes first
+		for (Item item : unfinished) {
+			item.fail(new DevConsoleException("Reply queue shut down"));
+		}
+	}
+
+	/**
+	 * Schedules the next attempt to send item, no earlier than minDelayNanos
+	 * from now and in the next free send slot of its account
+	 */
+	private void schedule(Item item, long minDelayNanos) {
+		long delayNanos = reserveSendSlot(item.developerId, minDelayNanos);
+		try {
+			scheduler.schedule(new Dispatch(item), delayNanos, TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			item.fail(new DevConsoleException("Reply queue shut down", e));
+		}
+	}
+
+	/**
+	 * @return the delay until the reserved slot
+	 */
+	private long reserveSendSlot(String developerId, long minDelayNanos) {
+		AtomicLong nextSendTime = nextSendTimes.get(developerId);
+		if (nextSendTime == null) {
+			AtomicLong created = new AtomicLong(Long.MIN_VALUE);
+			nextSendTime = nextSendTimes.putIfAbsent(developerId, created);
+			if (nextSendTime == null) {
+				nextSendTime = created;
+			}
+		}
+
+		long now = System.nanoTime();
+		long earliest = now + minDelayNanos;
+		while (true) {
+			long next = nextSendTime.get();
+			// nanoTime values may be negative, compare differences
+			long slot = next == Long.MIN_VALUE || next - earliest < 0 ? earliest : next;
+			if (nextSendTime.compareAndSet(next, slot + sendIntervalNanos)) {
+				return slot - now;
+			}
+		}
+	}
+
+	/**
+	 * Hands a due item over to the executor, runs on the scheduler thread
+	 */
+	private class Dispatch implements Runnable {
+
+		private final Item item;
+
+		Dispatch(Item item) {
+			this.item = item;
+		}
+
+		public void run() {
+			try {
+				executor.execute(item);
+			} catch (RejectedExecutionException e) {
+				item.fail(new DevConsoleException("Console shut down", e));
+			}
+		}
+
+	}
+
+	private class Item implements Runnable {
+
+		final String packageName;
+		final String developerId;
+		final String commentUniqueId;
+		final String reply;
+		final Outcome outcome = new Outcome();
+		volatile int attempts;
+
+		Item(String packageName, String developerId, String commentUniqueId, String reply) {
+			this.packageName = packageName;
+			this.developerId = developerId;
+			this.commentUniqueId = commentUniqueId;
+			this.reply = reply;
+		}
+
+		public void run() {
+			attempts++;
+			try {
+				Comment result = console.replyToComment(packageName, developerId,
+						commentUniqueId, reply);
+				if (result == null) {
+					fail(new DevConsoleException("No credentials to reply with"));
+				} else {
+					complete(new ReplyOutcome(packageName, developerId, commentUniqueId,
+							result, null, attempts));
+				}
+			} catch (NetworkException e) {
+				if (attempts > maxRetries) {
+					fail(e);
+				} else {
+					long delayMillis = INITIAL_RETRY_DELAY_MILLIS << (attempts - 1);
+					schedule(this, TimeUnit.MILLISECONDS.toNanos(delayMillis));
+				}
+			} catch (DevConsoleException e) {
+				fail(e);
+			} catch (RuntimeException e) {
+				fail(new DevConsoleException(e));
+			}
+		}
+
+		void fail(DevConsoleException e) {
+			complete(new ReplyOutcome(packageName, developerId, commentUniqueId, null, e,
+					attempts));
+		}
+
+		private void complete(ReplyOutcome result) {
+			unfinished.remove(this);
+			// ignored if already set
+			outcome.set(result);
+		}
+
+	}
+
+	/**
+	 * A future that is completed explicitly, rather than by running a task,
+	 * and can't be cancelled
+	 */
+	private static class Outcome extends FutureTask<ReplyOutcome> {
+
+		private static final Callable<ReplyOutcome> NOTHING = new Callable<ReplyOutcome>() {
+			public ReplyOutcome call() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		Outcome() {
+			super(NOTHING);
+		}
+
+		@Override
+		protected void set(ReplyOutcome outcome) {
+			super.set(outcome);
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.xiao.devconsole.console.v2;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads, so an unused console doesn't keep the VM alive
+ */
+class WorkerThreadFactory implements ThreadFactory {
+
+	private final String namePrefix;
+	private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+	WorkerThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+		t.setDaemon(true);
+		return t;
+	}
+
+}
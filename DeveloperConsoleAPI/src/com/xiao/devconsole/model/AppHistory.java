@@ -0,0 +1,678 @@
+package com.xiao.devconsole.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The statistics history of an app, one entry per day.
+ *
+ * Rather than one {@link AppStats} object per day, every metric is kept in
+ * its own primitive array, indexed by day: 48 bytes per day, a quarter to
+ * half of what the objects take (depending on how many of their Integers
+ * come from the cache). Days are usually in ascending
+ * order of their date, which makes lookups and range queries by date binary
+ * searches; {@link #sort()} restores that order after days were added out of
+ * order. Until then, lookups by date go through a map built on demand.
+ *
+ * Values that are <code>null</code> in {@link AppStats}, such as a missing
+ * version code, are stored as {@link #NO_VALUE}, missing dates as
+ * {@link #NO_DATE}. The average rating and rating count are not stored but
+ * recalculated when converting back to {@link AppStats}.
+ *
+ * Not thread safe.
+ */
+public class AppHistory {
+
+	public static final int NO_VALUE = Integer.MIN_VALUE;
+	public static final long NO_DATE = Long.MIN_VALUE;
+
+	// indexes into columns
+	private static final int TOTAL_DOWNLOADS = 0;
+	private static final int ACTIVE_INSTALLS = 1;
+	private static final int NUMBER_OF_COMMENTS = 2;
+	// ratings 1 - 5 are at RATING + 0 - 4
+	private static final int RATING = 3;
+	private static final int VERSION_CODE = 8;
+	private static final int NUMBER_OF_ERRORS = 9;
+	private static final int COLUMN_COUNT = 10;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private long[] dates;
+	private int[][] columns;
+	private int size;
+	// whether dates[0, size) is ascending
+	private boolean sorted = true;
+	// the first day of each date while not sorted, built by indexOf() and
+	// kept up to date by addDay(), null if not built
+	private Map<Long, Integer> daysByDate;
+
+	public AppHistory() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public AppHistory(int capacity) {
+		dates = new long[capacity];
+		columns = new int[COLUMN_COUNT][capacity];
+	}
+
+	/**
+	 * @param history
+	 * @return a new history holding the values of the given stats, in the
+	 *         same order
+	 */
+	public static AppHistory fromAppStats(List<AppStats> history) {
+		AppHistory result = new AppHistory(Math.max(history.size(), DEFAULT_CAPACITY));
+		for (AppStats stats : history) {
+			result.append(stats);
+		}
+
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+		sorted = true;
+		daysByDate = null;
+	}
+
+	/**
+	 * Adds a day holding the values of the given stats at the end
+	 *
+	 * @param stats
+	 * @return the index of the new day
+	 */
+	public int append(AppStats stats) {
+		int day = addDay(toDate(stats.getRequestDate()));
+		set(day, stats);
+
+		return day;
+	}
+
+	/**
+	 * Adds a day with the given date and no values at the end
+	 *
+	 * @param date
+	 *            in milliseconds since the epoch, or {@link #NO_DATE}
+	 * @return the index of the new day
+	 */
+	public int addDay(long date) {
+		insertDay(size, date);
+
+		return size - 1;
+	}
+
+	/**
+	 * Inserts a day holding the values of the given stats, moving the
+	 * following days up
+	 *
+	 * @param day
+	 * @param stats
+	 */
+	public void insert(int day, AppStats stats) {
+		insertDay(day, toDate(stats.getRequestDate()));
+		set(day, stats);
+	}
+
+	/**
+	 * Removes a day, moving the following days down
+	 *
+	 * @param day
+	 */
+	public void remove(int day) {
+		checkDay(day);
+		int moved = size - day - 1;
+		System.arraycopy(dates, day + 1, dates, day, moved);
+		for (int[] column : columns) {
+			System.arraycopy(column, day + 1, column, day, moved);
+		}
+		size--;
+		daysByDate = null;
+	}
+
+	/**
+	 * Overwrites all values of a day, including its date, with those of the
+	 * given stats
+	 *
+	 * @param day
+	 * @param stats
+	 */
+	public void set(int day, AppStats stats) {
+		checkDay(day);
+		setDate(day, toDate(stats.getRequestDate()));
+		columns[TOTAL_DOWNLOADS][day] = stats.getTotalDownloads();
+		columns[ACTIVE_INSTALLS][day] = stats.getActiveInstalls();
+		columns[NUMBER_OF_COMMENTS][day] = stats.getNumberOfComments();
+		columns[RATING][day] = toValue(stats.getRating1());
+		columns[RATING + 1][day] = toValue(stats.getRating2());
+		columns[RATING + 2][day] = toValue(stats.getRating3());
+		columns[RATING + 3][day] = toValue(stats.getRating4());
+		columns[RATING + 4][day] = toValue(stats.getRating5());
+		columns[VERSION_CODE][day] = toValue(stats.getVersionCode());
+		columns[NUMBER_OF_ERRORS][day] = toValue(stats.getNumberOfErrors());
+	}
+
+	/**
+	 * @param day
+	 * @return a new {@link AppStats} object holding the values of the given
+	 *         day. Changes to it are not written back.
+	 */
+	public AppStats toAppStats(int day) {
+		checkDay(day);
+		AppStats stats = new AppStats();
+		long date = dates[day];
+		stats.setRequestDate(date == NO_DATE ? null : new Date(date));
+		stats.setTotalDownloads(columns[TOTAL_DOWNLOADS][day]);
+		stats.setActiveInstalls(columns[ACTIVE_INSTALLS][day]);
+		stats.setNumberOfComments(columns[NUMBER_OF_COMMENTS][day]);
+		stats.setRating(toInteger(columns[RATING][day]), toInteger(columns[RATING + 1][day]),
+				toInteger(columns[RATING + 2][day]), toInteger(columns[RATING + 3][day]),
+				toInteger(columns[RATING + 4][day]));
+		stats.setVersionCode(toInteger(columns[VERSION_CODE][day]));
+		stats.setNumberOfErrors(toInteger(columns[NUMBER_OF_ERRORS][day]));
+		if (hasRatings(day)) {
+			stats.calcAll();
+		}
+
+		return stats;
+	}
+
+	/**
+	 * @return a new list of {@link AppStats} objects, one per day
+	 */
+	public List<AppStats> toAppStats() {
+		return toAppStats(0, size);
+	}
+
+	/**
+	 * @param fromDay
+	 *            inclusive
+	 * @param toDay
+	 *            exclusive
+	 * @return a new list of {@link AppStats} objects, one per day in the
+	 *         given range
+	 */
+	public List<AppStats> toAppStats(int fromDay, int toDay) {
+		checkRange(fromDay, toDay);
+		List<AppStats> result = new ArrayList<AppStats>(toDay - fromDay);
+		for (int day = fromDay; day < toDay; day++) {
+			result.add(toAppStats(day));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return a list view of this history. Reading an element converts the
+	 *         day to a new {@link AppStats} object, changes to which are not
+	 *         written back; use {@link List#set(int, Object)} to do that.
+	 *         Adding, setting and removing elements changes this history.
+	 */
+	public List<AppStats> asList() {
+		return new ListView();
+	}
+
+	/**
+	 * @param date
+	 *            in milliseconds since the epoch
+	 * @return the index of a day with the given date, or -1 if there is none
+	 */
+	public int indexOf(long date) {
+		if (sorted) {
+			int day = Arrays.binarySearch(dates, 0, size, date);
+			return day < 0 ? -1 : day;
+		}
+		if (daysByDate == null) {
+			daysByDate = new HashMap<Long, Integer>(size * 2);
+			for (int day = size - 1; day >= 0; day--) {
+				daysByDate.put(dates[day], day);
+			}
+		}
+		Integer day = daysByDate.get(date);
+
+		return day == null ? -1 : day;
+	}
+
+	/**
+	 * Sorts the days by date, days without a date first. Days with the same
+	 * date keep their order.
+	 */
+	public void sort() {
+		if (sorted) {
+			return;
+		}
+
+		// sort day indexes by date, then apply the permutation to all columns
+		int[] order = new int[size];
+		for (int day = 0; day < size; day++) {
+			order[day] = day;
+		}
+		mergeSort(order, new int[size], 0, size, dates);
+
+		long[] sortedDates = new long[dates.length];
+		for (int day = 0; day < size; day++) {
+			sortedDates[day] = dates[order[day]];
+		}
+		dates = sortedDates;
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			int[] column = columns[i];
+			int[] sortedColumn = new int[column.length];
+			for (int day = 0; day < size; day++) {
+				sortedColumn[day] = column[order[day]];
+			}
+			columns[i] = sortedColumn;
+		}
+		sorted = true;
+		daysByDate = null;
+	}
+
+	/**
+	 * Sorts order[from, to) by the dates the days point to. Stable, days
+	 * with the same date keep their order.
+	 */
+	private static void mergeSort(int[] order, int[] scratch, int from, int to, long[] dates) {
+		if (to - from < 2) {
+			return;
+		}
+
+		int middle = (from + to) >>> 1;
+		mergeSort(order, scratch, from, middle, dates);
+		mergeSort(order, scratch, middle, to, dates);
+		if (dates[order[middle - 1]] <= dates[order[middle]]) {
+			// already in order, e.g. days appended in order to a sorted history
+			return;
+		}
+
+		System.arraycopy(order, from, scratch, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right == to || (left < middle && dates[scratch[left]] <= dates[scratch[right]])) {
+				order[i] = scratch[left++];
+			} else {
+				order[i] = scratch[right++];
+			}
+		}
+	}
+
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	/**
+	 * @param date
+	 *            in milliseconds since the epoch
+	 * @return the index of the first day on or after the given date, or
+	 *         {@link #size()} if there is none. The history must be sorted.
+	 */
+	public int firstDayFrom(long date) {
+		checkSorted();
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (dates[middle] < date) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * @param from
+	 *            inclusive
+	 * @param to
+	 *            exclusive
+	 * @return a new history holding the days from the given date up to, but
+	 *         not including, the given end date. The history must be sorted.
+	 */
+	public AppHistory range(Date from, Date to) {
+		int fromDay = firstDayFrom(from.getTime());
+		int toDay = Math.max(fromDay, firstDayFrom(to.getTime()));
+
+		return copy(fromDay, toDay);
+	}
+
+	/**
+	 * @param fromDay
+	 *            inclusive
+	 * @param toDay
+	 *            exclusive
+	 * @return a new history holding the given days
+	 */
+	public AppHistory copy(int fromDay, int toDay) {
+		checkRange(fromDay, toDay);
+		int count = toDay - fromDay;
+		AppHistory result = new AppHistory(Math.max(count, DEFAULT_CAPACITY));
+		System.arraycopy(dates, fromDay, result.dates, 0, count);
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			System.arraycopy(columns[i], fromDay, result.columns[i], 0, count);
+		}
+		result.size = count;
+		result.sorted = sorted || isAscending(result.dates, count);
+
+		return result;
+	}
+
+	/**
+	 * @return the date of the given day in milliseconds since the epoch, or
+	 *         {@link #NO_DATE}
+	 */
+	public long getDate(int day) {
+		checkDay(day);
+		return dates[day];
+	}
+
+	public void setDate(int day, long date) {
+		checkDay(day);
+		dates[day] = date;
+		daysByDate = null;
+		if (sorted && ((day > 0 && dates[day - 1] > date)
+				|| (day < size - 1 && date > dates[day + 1]))) {
+			sorted = false;
+		}
+	}
+
+	public int getTotalDownloads(int day) {
+		return get(TOTAL_DOWNLOADS, day);
+	}
+
+	public void setTotalDownloads(int day, int totalDownloads) {
+		set(TOTAL_DOWNLOADS, day, totalDownloads);
+	}
+
+	/**
+	 * @param fromDay
+	 *            inclusive
+	 * @param toDay
+	 *            exclusive
+	 * @return a copy of the total downloads of the given days
+	 */
+	public int[] getTotalDownloads(int fromDay, int toDay) {
+		return get(TOTAL_DOWNLOADS, fromDay, toDay);
+	}
+
+	public int getActiveInstalls(int day) {
+		return get(ACTIVE_INSTALLS, day);
+	}
+
+	public void setActiveInstalls(int day, int activeInstalls) {
+		set(ACTIVE_INSTALLS, day, activeInstalls);
+	}
+
+	/**
+	 * @param fromDay
+	 *            inclusive
+	 * @param toDay
+	 *            exclusive
+	 * @return a copy of the active installs of the given days
+	 */
+	public int[] getActiveInstalls(int fromDay, int toDay) {
+		return get(ACTIVE_INSTALLS, fromDay, toDay);
+	}
+
+	public int getNumberOfComments(int day) {
+		return get(NUMBER_OF_COMMENTS, day);
+	}
+
+	public void setNumberOfComments(int day, int numberOfComments) {
+		set(NUMBER_OF_COMMENTS, day, numberOfComments);
+	}
+
+	/**
+	 * @param day
+	 * @param stars
+	 *            1 - 5
+	 * @return the number of ratings with the given number of stars, or
+	 *         {@link #NO_VALUE}
+	 */
+	public int getRating(int day, int stars) {
+		return get(ratingColumn(stars), day);
+	}
+
+	public void setRating(int day, int stars, int count) {
+		set(ratingColumn(stars), day, count);
+	}
+
+	/**
+	 * @return the version code, or {@link #NO_VALUE}
+	 */
+	public int getVersionCode(int day) {
+		return get(VERSION_CODE, day);
+	}
+
+	public void setVersionCode(int day, int versionCode) {
+		set(VERSION_CODE, day, versionCode);
+	}
+
+	/**
+	 * @return the number of errors, or {@link #NO_VALUE}
+	 */
+	public int getNumberOfErrors(int day) {
+		return get(NUMBER_OF_ERRORS, day);
+	}
+
+	public void setNumberOfErrors(int day, int numberOfErrors) {
+		set(NUMBER_OF_ERRORS, day, numberOfErrors);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 1;
+		for (int day = 0; day < size; day++) {
+			long date = dates[day];
+			result = 31 * result + (int) (date ^ (date >>> 32));
+			for (int[] column : columns) {
+				result = 31 * result + column[day];
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		AppHistory other = (AppHistory) obj;
+		if (size != other.size)
+			return false;
+		for (int day = 0; day < size; day++) {
+			if (dates[day] != other.dates[day])
+				return false;
+			for (int i = 0; i < COLUMN_COUNT; i++) {
+				if (columns[i][day] != other.columns[i][day])
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("AppHistory [days=%d, from=%s, to=%s]", size,
+				size == 0 || dates[0] == NO_DATE ? null : new Date(dates[0]),
+				size == 0 || dates[size - 1] == NO_DATE ? null : new Date(dates[size - 1]));
+	}
+
+	private void insertDay(int day, long date) {
+		if (day < 0 || day > size) {
+			throw new IndexOutOfBoundsException("day: " + day + ", size: " + size);
+		}
+		ensureCapacity(size + 1);
+		int moved = size - day;
+		System.arraycopy(dates, day, dates, day + 1, moved);
+		for (int[] column : columns) {
+			System.arraycopy(column, day, column, day + 1, moved);
+			column[day] = 0;
+		}
+		for (int i = RATING + 5; i < COLUMN_COUNT; i++) {
+			// nullable in AppStats, no value until set
+			columns[i][day] = NO_VALUE;
+		}
+		size++;
+		// not sorted yet if the date is out of order, see setDate()
+		Map<Long, Integer> days = daysByDate;
+		dates[day] = NO_DATE;
+		setDate(day, date);
+		if (days != null && !sorted && day == size - 1) {
+			// appended, the map only needs the new day
+			if (!days.containsKey(date)) {
+				days.put(date, day);
+			}
+			daysByDate = days;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= dates.length) {
+			return;
+		}
+
+		int newCapacity = Math.max(capacity, dates.length + (dates.length >> 1) + 1);
+		dates = Arrays.copyOf(dates, newCapacity);
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			columns[i] = Arrays.copyOf(columns[i], newCapacity);
+		}
+	}
+
+	private int get(int column, int day) {
+		checkDay(day);
+		return columns[column][day];
+	}
+
+	private int[] get(int column, int fromDay, int toDay) {
+		checkRange(fromDay, toDay);
+		return Arrays.copyOfRange(columns[column], fromDay, toDay);
+	}
+
+	private void set(int column, int day, int value) {
+		checkDay(day);
+		columns[column][day] = value;
+	}
+
+	private boolean hasRatings(int day) {
+		for (int i = RATING; i < RATING + 5; i++) {
+			if (columns[i][day] == NO_VALUE) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int ratingColumn(int stars) {
+		if (stars < 1 || stars > 5) {
+			throw new IllegalArgumentException("stars must be 1 - 5: " + stars);
+		}
+
+		return RATING + stars - 1;
+	}
+
+	private void checkDay(int day) {
+		if (day < 0 || day >= size) {
+			throw new IndexOutOfBoundsException("day: " + day + ", size: " + size);
+		}
+	}
+
+	private void checkRange(int fromDay, int toDay) {
+		if (fromDay < 0 || toDay > size || fromDay > toDay) {
+			throw new IndexOutOfBoundsException("days: " + fromDay + " - " + toDay + ", size: "
+					+ size);
+		}
+	}
+
+	private void checkSorted() {
+		if (!sorted) {
+			throw new IllegalStateException("History is not sorted by date");
+		}
+	}
+
+	private static boolean isAscending(long[] dates, int count) {
+		for (int i = 1; i < count; i++) {
+			if (dates[i - 1] > dates[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static long toDate(Date date) {
+		return date == null ? NO_DATE : date.getTime();
+	}
+
+	private static int toValue(Integer value) {
+		return value == null ? NO_VALUE : value;
+	}
+
+	private static Integer toInteger(int value) {
+		return value == NO_VALUE ? null : value;
+	}
+
+	private class ListView extends AbstractList<AppStats> implements RandomAccess {
+
+		@Override
+		public AppStats get(int index) {
+			return toAppStats(index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public AppStats set(int index, AppStats element) {
+			AppStats previous = toAppStats(index);
+			AppHistory.this.set(index, element);
+
+			return previous;
+		}
+
+		@Override
+		public void add(int index, AppStats element) {
+			insert(index, element);
+			modCount++;
+		}
+
+		@Override
+		public AppStats remove(int index) {
+			AppStats previous = toAppStats(index);
+			AppHistory.this.remove(index);
+			modCount++;
+
+			return previous;
+		}
+
+		@Override
+		public void clear() {
+			AppHistory.this.clear();
+			modCount++;
+		}
+
+	}
+
+}
@@ -1,6 +1,5 @@
 package com.xiao.devconsole.model;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -16,7 +15,7 @@ public class AppInfo {
 
 	private String iconUrl;
 
-	private List<AppStats> history = new ArrayList<AppStats>();
+	private AppHistory history = new AppHistory();
 
 	private AppStats latestStats;
 
@@ -81,16 +80,37 @@ public class AppInfo {
 		return iconName;
 	}
 
+	/**
+	 * Replaces the history with a copy of the given stats
+	 */
 	public void setHistory(List<AppStats> history) {
-		this.history = history;
+		this.history = history == null ? new AppHistory() : AppHistory.fromAppStats(history);
+	}
+
+	/**
+	 * @return a live view of the history, see {@link AppHistory#asList()}:
+	 *         adding, setting and removing elements changes the history, but
+	 *         every element is a copy of the day it was read from, changes
+	 *         to it are not written back.
+	 * @deprecated elements used to be the history itself, use
+	 *             {@link #getAppHistory()}, which also reads many days
+	 *             without creating an object per day
+	 */
+	@Deprecated
+	public List<AppStats> getHistory() {
+		return history.asList();
 	}
 
-	public List<AppStats> getHistory() {
+	public void addToHistory(AppStats stats) {
+		history.append(stats);
+	}
+
+	public AppHistory getAppHistory() {
 		return history;
 	}
 
-	public void addToHistory(AppStats stats) {
-		history.add(stats);
+	public void setAppHistory(AppHistory history) {
+		this.history = history;
 	}
 
 	public void setLatestStats(AppStats latestStats) {
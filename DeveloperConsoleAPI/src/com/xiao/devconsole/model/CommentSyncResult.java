@@ -0,0 +1,33 @@
+package com.xiao.devconsole.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Comments found by an incremental sync, together with the watermark to pass
+ * to the next sync
+ */
+public class CommentSyncResult {
+
+	private final List<Comment> comments;
+	private final CommentWatermark watermark;
+
+	public CommentSyncResult(List<Comment> comments, CommentWatermark watermark) {
+		this.comments = Collections.unmodifiableList(comments);
+		this.watermark = watermark;
+	}
+
+	/**
+	 * New comments and comments with a new reply, newest first
+	 * 
+	 * @return
+	 */
+	public List<Comment> getComments() {
+		return comments;
+	}
+
+	public CommentWatermark getWatermark() {
+		return watermark;
+	}
+
+}
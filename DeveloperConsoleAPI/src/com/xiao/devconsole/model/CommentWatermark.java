@@ -0,0 +1,80 @@
+package com.xiao.devconsole.model;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Marks how far the comments of an app have been synced: the date of the
+ * newest comment seen, the IDs of the comments with exactly that date (the
+ * console only has millisecond resolution, so several comments may share it)
+ * and the date of the newest developer reply seen.
+ */
+public class CommentWatermark {
+
+	private final Date lastCommentDate;
+	private final Set<String> lastCommentIds;
+	private final Date lastReplyDate;
+
+	public CommentWatermark(Date lastCommentDate, Set<String> lastCommentIds, Date lastReplyDate) {
+		this.lastCommentDate = lastCommentDate == null ? null : (Date) lastCommentDate.clone();
+		this.lastCommentIds = Collections.unmodifiableSet(new HashSet<String>(lastCommentIds));
+		this.lastReplyDate = lastReplyDate == null ? null : (Date) lastReplyDate.clone();
+	}
+
+	public Date getLastCommentDate() {
+		return lastCommentDate == null ? null : (Date) lastCommentDate.clone();
+	}
+
+	public Set<String> getLastCommentIds() {
+		return lastCommentIds;
+	}
+
+	public Date getLastReplyDate() {
+		return lastReplyDate == null ? null : (Date) lastReplyDate.clone();
+	}
+
+	/**
+	 * @param comment
+	 * @return true if the comment is older than, or part of, this watermark
+	 */
+	public boolean isSeen(Comment comment) {
+		if (lastCommentDate == null || comment.getDate() == null) {
+			return false;
+		}
+
+		int cmp = comment.getDate().compareTo(lastCommentDate);
+		return cmp < 0 || (cmp == 0 && lastCommentIds.contains(comment.getUniqueId()));
+	}
+
+	/**
+	 * @param comment
+	 * @return true if the comment is strictly older than this watermark, i.e.
+	 *         all comments after it have been seen
+	 */
+	public boolean isBefore(Comment comment) {
+		return lastCommentDate != null && comment.getDate() != null
+				&& comment.getDate().before(lastCommentDate);
+	}
+
+	/**
+	 * @param comment
+	 * @return true if the comment has a reply newer than this watermark
+	 */
+	public boolean hasNewReply(Comment comment) {
+		Comment reply = comment.getReply();
+		if (reply == null || reply.getDate() == null) {
+			return false;
+		}
+
+		return lastReplyDate == null || reply.getDate().after(lastReplyDate);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CommentWatermark [lastCommentDate=%s, lastCommentIds=%s, lastReplyDate=%s]",
+				lastCommentDate, lastCommentIds, lastReplyDate);
+	}
+
+}
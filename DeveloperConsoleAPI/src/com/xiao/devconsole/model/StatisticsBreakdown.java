@@ -0,0 +1,140 @@
+package com.xiao.devconsole.model;
+
+import java.util.Date;
+
+/**
+ * Daily statistics of an app broken down by one dimension, e.g. the number of
+ * active device installs per country.
+ *
+ * The data is kept in columns rather than one object per data point: a
+ * sorted array of days shared by all dimension values, and one array of
+ * counts per dimension value, indexed by day. Days for which the console
+ * reported no value for a dimension value have a count of 0.
+ */
+public class StatisticsBreakdown {
+
+	// Types of statistics
+	public static final int STATS_TYPE_ACTIVE_DEVICE_INSTALLS = 1;
+	public static final int STATS_TYPE_TOTAL_USER_INSTALLS = 8;
+
+	// Dimensions statistics can be broken down by
+	public static final int BY_ANDROID_VERSION = 1;
+	public static final int BY_DEVICE = 2;
+	public static final int BY_COUNTRY = 3;
+	public static final int BY_LANGUAGE = 4;
+	public static final int BY_APP_VERSION = 5;
+	public static final int BY_CARRIER = 6;
+
+	private final int statsType;
+	private final int dimension;
+	private final long[] dates;
+	private final String[] values;
+	private final int[][] counts;
+
+	/**
+	 * The arrays are used as they are, not copied
+	 *
+	 * @param statsType
+	 * @param dimension
+	 * @param dates
+	 *            days in milliseconds since the epoch, ascending
+	 * @param values
+	 *            dimension values, e.g. country codes
+	 * @param counts
+	 *            counts[value][day], one row per dimension value with one
+	 *            column per day
+	 */
+	public StatisticsBreakdown(int statsType, int dimension, long[] dates, String[] values,
+			int[][] counts) {
+		if (values.length != counts.length) {
+			throw new IllegalArgumentException("Got " + values.length + " values but "
+					+ counts.length + " rows of counts");
+		}
+		for (int[] row : counts) {
+			if (row.length != dates.length) {
+				throw new IllegalArgumentException("Expected " + dates.length
+						+ " counts per value, got " + row.length);
+			}
+		}
+
+		this.statsType = statsType;
+		this.dimension = dimension;
+		this.dates = dates;
+		this.values = values;
+		this.counts = counts;
+	}
+
+	public int getStatsType() {
+		return statsType;
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	public int getDayCount() {
+		return dates.length;
+	}
+
+	public Date getDate(int day) {
+		return new Date(dates[day]);
+	}
+
+	public int getValueCount() {
+		return values.length;
+	}
+
+	/**
+	 * @param value
+	 *            index of the dimension value
+	 * @return the dimension value, e.g. a country code
+	 */
+	public String getValue(int value) {
+		return values[value];
+	}
+
+	/**
+	 * @return the index of the given dimension value, or -1 if it isn't
+	 *         part of the breakdown
+	 */
+	public int indexOf(String value) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].equals(value)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	public int getCount(int value, int day) {
+		return counts[value][day];
+	}
+
+	/**
+	 * @return a copy of the daily counts of the given dimension value, one
+	 *         per day
+	 */
+	public int[] getCounts(int value) {
+		return counts[value].clone();
+	}
+
+	/**
+	 * @return the sum of the counts of all dimension values on the given day
+	 */
+	public long getTotal(int day) {
+		long total = 0;
+		for (int[] row : counts) {
+			total += row[day];
+		}
+
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StatisticsBreakdown[type=%d, dimension=%d, %d values, %d days]",
+				statsType, dimension, values.length, dates.length);
+	}
+
+}
@@ -0,0 +1,479 @@
+package com.xiao.devconsole.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.xiao.devconsole.model.Comment;
+
+/**
+ * An in-memory full-text index over the text of comments, for keyword and
+ * phrase searches across all apps, see {@link ReviewQuery}.
+ *
+ * Each comment added becomes a document. For every term, i.e. lower case
+ * word, the index keeps the documents containing it and the term's positions
+ * within each, in primitive arrays; the fields queries filter by are kept in
+ * one array per field, indexed by document. A query intersects the documents
+ * of its terms, starting with the rarest, before checking phrases and
+ * filters, so only documents containing every term are looked at.
+ *
+ * Comments are added as they are fetched or synced, or all at once from a
+ * {@link ReviewStore}. Adding a comment again, e.g. after it got a reply,
+ * replaces the earlier document. Searches return unique IDs, which can be
+ * looked up in the store.
+ *
+ * Instances are thread safe.
+ */
+public class ReviewIndex {
+
+	// positions left between the text and the original text, so phrases
+	// don't match across both
+	private static final int FIELD_GAP = 16;
+
+	private static final int NO_VALUE = -1;
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private final Map<String, Postings> postings = new HashMap<String, Postings>();
+
+	// package names and languages by number and vice versa
+	private final List<String> strings = new ArrayList<String>();
+	private final Map<String, Integer> stringNumbers = new HashMap<String, Integer>();
+
+	// per document
+	private String[] uniqueIds = new String[1024];
+	private int[] packageNumbers = new int[1024];
+	private int[] languageNumbers = new int[1024];
+	private byte[] ratings = new byte[1024];
+	private long[] dates = new long[1024];
+	private int documentCount;
+	// documents replaced by a later one for the same comment
+	private final BitSet replaced = new BitSet();
+	private final Map<String, Integer> documentsByUniqueId = new HashMap<String, Integer>();
+
+	/**
+	 * Indexes a comment of the given app
+	 *
+	 * @param packageName
+	 * @param comment
+	 */
+	public synchronized void add(String packageName, Comment comment) {
+		String uniqueId = comment.getUniqueId();
+		if (uniqueId == null) {
+			throw new IllegalArgumentException("Comments without a unique ID can't be indexed");
+		}
+
+		int document = documentCount;
+		ensureCapacity(document + 1);
+		uniqueIds[document] = uniqueId;
+		packageNumbers[document] = stringNumber(packageName);
+		languageNumbers[document] = comment.getLanguage() == null ? NO_VALUE
+				: stringNumber(comment.getLanguage());
+		ratings[document] = (byte) Math.max(Byte.MIN_VALUE,
+				Math.min(Byte.MAX_VALUE, comment.getRating()));
+		dates[document] = comment.getDate() == null ? NO_DATE : comment.getDate().getTime();
+		documentCount++;
+
+		int position = addTerms(document, comment.getText(), 0);
+		String originalText = comment.getOriginalText();
+		if (originalText != null && !originalText.equals(comment.getText())) {
+			addTerms(document, originalText, position + FIELD_GAP);
+		}
+
+		Integer previous = documentsByUniqueId.put(uniqueId, document);
+		if (previous != null) {
+			replaced.set(previous);
+		}
+	}
+
+	/**
+	 * Indexes comments of the given app
+	 *
+	 * @param packageName
+	 * @param comments
+	 */
+	public synchronized void add(String packageName, List<Comment> comments) {
+		for (Comment comment : comments) {
+			add(packageName, comment);
+		}
+	}
+
+	/**
+	 * Indexes every comment in the given store
+	 *
+	 * @param store
+	 * @throws IOException
+	 */
+	public void addAll(ReviewStore store) throws IOException {
+		StoredCommentIterator iterator = store.iterator();
+		try {
+			while (iterator.hasNext()) {
+				StoredComment stored = iterator.next();
+				add(stored.getPackageName(), stored.getComment());
+			}
+		} finally {
+			iterator.close();
+		}
+	}
+
+	/**
+	 * @return the number of comments indexed, not counting replaced ones
+	 */
+	public synchronized int size() {
+		return documentsByUniqueId.size();
+	}
+
+	/**
+	 * @param query
+	 * @param limit
+	 *            maximum number of results
+	 * @return the unique IDs of the matching comments, newest first
+	 */
+	public synchronized List<String> search(ReviewQuery query, int limit) {
+		if (limit < 1) {
+			return Collections.emptyList();
+		}
+
+		// the newest limit matches, oldest at the head
+		PriorityQueue<Integer> newest = new PriorityQueue<Integer>(Math.min(limit, 1024),
+				new Comparator<Integer>() {
+					public int compare(Integer lhs, Integer rhs) {
+						return compareDocuments(lhs, rhs);
+					}
+				});
+		Matcher matcher = new Matcher(query);
+		for (int document = matcher.next(); document != -1; document = matcher.next()) {
+			if (newest.size() < limit) {
+				newest.add(document);
+			} else if (compareDocuments(document, newest.peek()) > 0) {
+				newest.poll();
+				newest.add(document);
+			}
+		}
+
+		String[] result = new String[newest.size()];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = uniqueIds[newest.poll()];
+		}
+
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * @return the number of comments matching the query
+	 */
+	public synchronized int count(ReviewQuery query) {
+		int count = 0;
+		Matcher matcher = new Matcher(query);
+		while (matcher.next() != -1) {
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Orders documents by date, then by the order they were added
+	 */
+	private int compareDocuments(int lhs, int rhs) {
+		if (dates[lhs] != dates[rhs]) {
+			return dates[lhs] < dates[rhs] ? -1 : 1;
+		}
+
+		return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+	}
+
+	/**
+	 * @return the position after the last term
+	 */
+	private int addTerms(int document, String text, int position) {
+		if (text == null) {
+			return position;
+		}
+
+		for (String term : tokenize(text)) {
+			Postings termPostings = postings.get(term);
+			if (termPostings == null) {
+				termPostings = new Postings();
+				postings.put(term, termPostings);
+			}
+			termPostings.add(document, position++);
+		}
+
+		return position;
+	}
+
+	/**
+	 * Splits text into lower case words, at anything but letters and digits
+	 */
+	static List<String> tokenize(String text) {
+		List<String> terms = new ArrayList<String>();
+		int length = text.length();
+		int start = -1;
+		for (int i = 0; i < length;) {
+			int c = text.codePointAt(i);
+			boolean wordChar = Character.isLetterOrDigit(c);
+			if (wordChar && start == -1) {
+				start = i;
+			} else if (!wordChar && start != -1) {
+				terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+			i += Character.charCount(c);
+		}
+		if (start != -1) {
+			terms.add(text.substring(start).toLowerCase(Locale.ROOT));
+		}
+
+		return terms;
+	}
+
+	private int stringNumber(String value) {
+		Integer number = stringNumbers.get(value);
+		if (number == null) {
+			number = strings.size();
+			strings.add(value);
+			stringNumbers.put(value, number);
+		}
+
+		return number;
+	}
+
+	/**
+	 * @return the number of the given string, or NO_VALUE if it has none.
+	 *         Doesn't add it.
+	 */
+	private int findStringNumber(String value) {
+		Integer number = stringNumbers.get(value);
+		return number == null ? NO_VALUE : number;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= uniqueIds.length) {
+			return;
+		}
+
+		int newCapacity = Math.max(capacity, uniqueIds.length * 2);
+		uniqueIds = Arrays.copyOf(uniqueIds, newCapacity);
+		packageNumbers = Arrays.copyOf(packageNumbers, newCapacity);
+		languageNumbers = Arrays.copyOf(languageNumbers, newCapacity);
+		ratings = Arrays.copyOf(ratings, newCapacity);
+		dates = Arrays.copyOf(dates, newCapacity);
+	}
+
+	/**
+	 * The documents containing a term, in ascending order, and the term's
+	 * positions in each of them
+	 */
+	private static class Postings {
+
+		int[] documents = new int[2];
+		// positionStarts[i] is where the positions of documents[i] start
+		int[] positionStarts = new int[2];
+		int documentCount;
+		int[] positions = new int[2];
+		int positionCount;
+
+		void add(int document, int position) {
+			if (documentCount == 0 || documents[documentCount - 1] != document) {
+				if (documentCount == documents.length) {
+					documents = Arrays.copyOf(documents, documentCount * 2);
+					positionStarts = Arrays.copyOf(positionStarts, documentCount * 2);
+				}
+				documents[documentCount] = document;
+				positionStarts[documentCount] = positionCount;
+				documentCount++;
+			}
+			if (positionCount == positions.length) {
+				positions = Arrays.copyOf(positions, positionCount * 2);
+			}
+			positions[positionCount++] = position;
+		}
+
+		int positionEnd(int i) {
+			return i + 1 < documentCount ? positionStarts[i + 1] : positionCount;
+		}
+
+		/**
+		 * @return the index of the first document at or after from that is
+		 *         not less than document, found by galloping
+		 */
+		int advance(int from, int document) {
+			int bound = 1;
+			int low = from;
+			while (low + bound < documentCount && documents[low + bound] < document) {
+				low += bound;
+				bound <<= 1;
+			}
+			int high = Math.min(low + bound, documentCount);
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (documents[middle] < document) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+
+			return low;
+		}
+
+	}
+
+	/**
+	 * Finds the documents matching a query one after the other, in ascending
+	 * order
+	 */
+	private class Matcher {
+
+		private final ReviewQuery query;
+		private final String[][] phrases;
+		// postings of each term of each phrase, null if the query can't match
+		private Postings[][] phrasePostings;
+		// the term with the fewest documents, driving the iteration
+		private Postings rarest;
+		// per phrase and term, index of the current document in its postings
+		private int[][] cursors;
+		private final int packageNumber;
+		private final int languageNumber;
+		private int next;
+
+		Matcher(ReviewQuery query) {
+			this.query = query;
+			List<String[]> queryPhrases = query.getPhrases();
+			phrases = queryPhrases.toArray(new String[queryPhrases.size()][]);
+			packageNumber = query.getPackageName() == null ? NO_VALUE : findStringNumber(query
+					.getPackageName());
+			languageNumber = query.getLanguage() == null ? NO_VALUE : findStringNumber(query
+					.getLanguage());
+			boolean canMatch = (query.getPackageName() == null || packageNumber != NO_VALUE)
+					&& (query.getLanguage() == null || languageNumber != NO_VALUE);
+
+			phrasePostings = new Postings[phrases.length][];
+			cursors = new int[phrases.length][];
+			for (int i = 0; i < phrases.length && canMatch; i++) {
+				phrasePostings[i] = new Postings[phrases[i].length];
+				cursors[i] = new int[phrases[i].length];
+				for (int j = 0; j < phrases[i].length; j++) {
+					Postings termPostings = postings.get(phrases[i][j]);
+					if (termPostings == null) {
+						canMatch = false;
+						break;
+					}
+					phrasePostings[i][j] = termPostings;
+					if (rarest == null || termPostings.documentCount < rarest.documentCount) {
+						rarest = termPostings;
+					}
+				}
+			}
+			if (!canMatch) {
+				phrasePostings = null;
+			}
+		}
+
+		/**
+		 * @return the next matching document, or -1 if there is none
+		 */
+		int next() {
+			if (phrasePostings == null) {
+				return -1;
+			}
+
+			while (true) {
+				int candidate;
+				if (rarest == null) {
+					// no terms, every document is a candidate
+					if (next >= documentCount) {
+						return -1;
+					}
+					candidate = next++;
+				} else {
+					if (next >= rarest.documentCount) {
+						return -1;
+					}
+					candidate = rarest.documents[next++];
+				}
+
+				if (!replaced.get(candidate) && passesFilters(candidate)
+						&& containsPhrases(candidate)) {
+					return candidate;
+				}
+			}
+		}
+
+		private boolean passesFilters(int document) {
+			if (packageNumber != NO_VALUE && packageNumbers[document] != packageNumber) {
+				return false;
+			}
+			if (languageNumber != NO_VALUE && languageNumbers[document] != languageNumber) {
+				return false;
+			}
+			int rating = ratings[document];
+			if (rating < query.getMinRating() || rating > query.getMaxRating()) {
+				return false;
+			}
+			if (query.hasDates()) {
+				long date = dates[document];
+				if (date == NO_DATE || date < query.getFrom() || date >= query.getTo()) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		private boolean containsPhrases(int document) {
+			for (int i = 0; i < phrases.length; i++) {
+				// documents are visited in ascending order, cursors only move
+				// forward
+				Postings[] terms = phrasePostings[i];
+				for (int j = 0; j < terms.length; j++) {
+					int cursor = terms[j].advance(cursors[i][j], document);
+					cursors[i][j] = cursor;
+					if (cursor == terms[j].documentCount
+							|| terms[j].documents[cursor] != document) {
+						return false;
+					}
+				}
+				if (terms.length > 1 && !containsPhrase(terms, cursors[i])) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * @return true if the terms occur next to each other, in order, in
+		 *         the document the cursors point to
+		 */
+		private boolean containsPhrase(Postings[] terms, int[] termCursors) {
+			Postings first = terms[0];
+			int firstEnd = first.positionEnd(termCursors[0]);
+			for (int p = first.positionStarts[termCursors[0]]; p < firstEnd; p++) {
+				int start = first.positions[p];
+				boolean match = true;
+				for (int j = 1; j < terms.length && match; j++) {
+					Postings term = terms[j];
+					int cursor = termCursors[j];
+					match = Arrays.binarySearch(term.positions, term.positionStarts[cursor],
+							term.positionEnd(cursor), start + j) >= 0;
+				}
+				if (match) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+	}
+
+}
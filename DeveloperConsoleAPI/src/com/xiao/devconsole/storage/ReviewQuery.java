@@ -0,0 +1,122 @@
+package com.xiao.devconsole.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A search for comments in a {@link ReviewIndex}: words and phrases that
+ * must all occur in the text of a comment, and optional filters. A query
+ * without words or phrases matches every comment passing the filters.
+ *
+ * <pre>
+ * ReviewQuery query = new ReviewQuery().words(&quot;crash&quot;).phrase(&quot;can't login&quot;)
+ * 		.packageName(&quot;com.example&quot;).maxRating(2);
+ * </pre>
+ */
+public class ReviewQuery {
+
+	// each a list of terms that must occur in this order, a single term for
+	// words
+	private final List<String[]> phrases = new ArrayList<String[]>();
+
+	private String packageName;
+	private String language;
+	private int minRating = Integer.MIN_VALUE;
+	private int maxRating = Integer.MAX_VALUE;
+	private long from = Long.MIN_VALUE;
+	private long to = Long.MAX_VALUE;
+
+	/**
+	 * Requires every word of the given text, anywhere in a comment
+	 */
+	public ReviewQuery words(String text) {
+		for (String term : ReviewIndex.tokenize(text)) {
+			phrases.add(new String[] { term });
+		}
+
+		return this;
+	}
+
+	/**
+	 * Requires the words of the given text next to each other, in this order
+	 */
+	public ReviewQuery phrase(String text) {
+		List<String> terms = ReviewIndex.tokenize(text);
+		if (!terms.isEmpty()) {
+			phrases.add(terms.toArray(new String[terms.size()]));
+		}
+
+		return this;
+	}
+
+	public ReviewQuery packageName(String packageName) {
+		this.packageName = packageName;
+		return this;
+	}
+
+	/**
+	 * @param language
+	 *            as returned by {@link com.xiao.devconsole.model.Comment#getLanguage()}
+	 */
+	public ReviewQuery language(String language) {
+		this.language = language;
+		return this;
+	}
+
+	public ReviewQuery minRating(int minRating) {
+		this.minRating = minRating;
+		return this;
+	}
+
+	public ReviewQuery maxRating(int maxRating) {
+		this.maxRating = maxRating;
+		return this;
+	}
+
+	/**
+	 * @param from
+	 *            inclusive
+	 * @param to
+	 *            exclusive
+	 */
+	public ReviewQuery dates(Date from, Date to) {
+		this.from = from == null ? Long.MIN_VALUE : from.getTime();
+		this.to = to == null ? Long.MAX_VALUE : to.getTime();
+		return this;
+	}
+
+	List<String[]> getPhrases() {
+		return Collections.unmodifiableList(phrases);
+	}
+
+	String getPackageName() {
+		return packageName;
+	}
+
+	String getLanguage() {
+		return language;
+	}
+
+	int getMinRating() {
+		return minRating;
+	}
+
+	int getMaxRating() {
+		return maxRating;
+	}
+
+	long getFrom() {
+		return from;
+	}
+
+	long getTo() {
+		return to;
+	}
+
+	boolean hasDates() {
+		return from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+	}
+
+}
@@ -0,0 +1,701 @@
+package com.xiao.devconsole.storage;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.xiao.devconsole.model.Comment;
+import com.xiao.devconsole.model.CommentSyncResult;
+import com.xiao.devconsole.util.FileUtils;
+
+/**
+ * An append-only local store of comments and their replies, in a compact
+ * binary format.
+ *
+ * The file is a sequence of entries, each a type byte, the length of its
+ * payload and the payload. Strings repeated across many comments, i.e.
+ * package names, languages, app versions and devices, are written once as a
+ * dictionary entry the first time they are seen and referred to by number
+ * afterwards; all other values are written inline, numbers as varints.
+ *
+ * The position of each comment is indexed by its unique ID when the store
+ * is opened, which only decodes the dictionary and the ID of each comment.
+ * {@link #get(String)} then reads and decodes a single comment. A comment
+ * appended again, e.g. after it got a reply, supersedes the earlier one.
+ *
+ * Instances are thread safe. Only one instance may have a given store open
+ * at a time.
+ */
+public class ReviewStore implements Closeable {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int MAGIC = 0x44435253; // "DCRS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+
+	static final int ENTRY_STRING = 1;
+	static final int ENTRY_COMMENT = 2;
+
+	// comment flags
+	private static final int HAS_DATE = 1;
+	private static final int HAS_ORIGINAL_COMMENT_DATE = 1 << 1;
+	private static final int HAS_REPLY = 1 << 2;
+	// original text is the same as the text and not written again
+	private static final int SAME_ORIGINAL_TEXT = 1 << 3;
+	private static final int IS_REPLY = 1 << 4;
+
+	// index values pack the payload position and length of a comment
+	private static final int LENGTH_BITS = 24;
+	private static final int MAX_PAYLOAD_LENGTH = (1 << LENGTH_BITS) - 1;
+
+	private final File file;
+	private final RandomAccessFile data;
+
+	// dictionary strings by number and vice versa
+	private final List<String> strings = new ArrayList<String>();
+	private final Map<String, Integer> stringNumbers = new HashMap<String, Integer>();
+	// packed position and length of the latest payload of each comment
+	private final Map<String, Long> index = new HashMap<String, Long>();
+	// iterators that haven't been closed, told about superseded comments.
+	// Weak, an abandoned iterator needn't be tracked
+	private final Set<StoredCommentIterator> iterators = Collections
+			.newSetFromMap(new WeakHashMap<StoredCommentIterator, Boolean>());
+	// end of the last complete entry
+	private long end;
+
+	private boolean closed;
+
+	/**
+	 * Opens a store, creating it if it doesn't exist. An entry cut short by a
+	 * crash while appending is discarded.
+	 *
+	 * @param file
+	 * @throws IOException
+	 *             if the store can't be read or is corrupt
+	 */
+	public ReviewStore(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile data = new RandomAccessFile(file, "rw");
+		try {
+			if (data.length() == 0) {
+				data.writeInt(MAGIC);
+				data.writeInt(VERSION);
+				end = HEADER_SIZE;
+			} else {
+				readIndex(data.length());
+				if (data.length() > end) {
+					data.setLength(end);
+				}
+			}
+		} catch (IOException e) {
+			FileUtils.closeSilently(data);
+			throw e;
+		} catch (RuntimeException e) {
+			FileUtils.closeSilently(data);
+			throw e;
+		}
+		this.data = data;
+	}
+
+	private void readIndex(long length) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+				file), 64 * 1024));
+		try {
+			if (length < HEADER_SIZE || in.readInt() != MAGIC) {
+				throw new IOException("Not a review store: " + file);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported review store version " + version + ": " + file);
+			}
+
+			long position = HEADER_SIZE;
+			end = position;
+			byte[] payload = new byte[256];
+			while (position < length) {
+				int type = in.read();
+				int payloadLength;
+				try {
+					payloadLength = readVarint(in);
+				} catch (EOFException e) {
+					break;
+				}
+				long payloadPosition = position + 1 + varintSize(payloadLength);
+				if (payloadPosition + payloadLength > length) {
+					// cut short
+					break;
+				}
+				if (payload.length < payloadLength) {
+					payload = new byte[Math.max(payloadLength, payload.length * 2)];
+				}
+				in.readFully(payload, 0, payloadLength);
+
+				switch (type) {
+					case ENTRY_STRING:
+						addString(new String(payload, 0, payloadLength, UTF_8));
+						break;
+					case ENTRY_COMMENT:
+						// only the ID, the rest is decoded on demand
+						index.put(new Decoder(this, payload, 0, payloadLength).readCommentId(),
+								pack(payloadPosition, payloadLength));
+						break;
+					default:
+						throw new IOException("Corrupt review store, unknown entry " + type
+								+ " at " + position + ": " + file);
+				}
+				position = payloadPosition + payloadLength;
+				end = position;
+			}
+		} finally {
+			FileUtils.closeSilently(in);
+		}
+	}
+
+	/**
+	 * Appends a comment of the given app, superseding any comment with the
+	 * same unique ID appended before
+	 *
+	 * @param packageName
+	 * @param comment
+	 * @throws IOException
+	 */
+	public void append(String packageName, Comment comment) throws IOException {
+		List<Comment> comments = new ArrayList<Comment>(1);
+		comments.add(comment);
+		append(packageName, comments);
+	}
+
+	/**
+	 * Appends the new comments and comments with a new reply found by an
+	 * incremental sync
+	 *
+	 * @param packageName
+	 * @param result
+	 * @throws IOException
+	 */
+	public void append(String packageName, CommentSyncResult result) throws IOException {
+		append(packageName, result.getComments());
+	}
+
+	/**
+	 * Appends comments of the given app in a single write. If writing fails,
+	 * what was written is cut off again and none of them are appended. This
+	 * doesn't hold across a crash: when the store is reopened, the entries
+	 * that were written completely are kept, so only part of the comments
+	 * may have been appended.
+	 *
+	 * @param packageName
+	 * @param comments
+	 * @throws IOException
+	 */
+	public synchronized void append(String packageName, List<Comment> comments)
+			throws IOException {
+		checkOpen();
+		int stringCount = strings.size();
+		Encoder encoder = new Encoder();
+		// position and length of each comment relative to the write
+		long[] payloads = new long[comments.size()];
+		try {
+			for (int i = 0; i < comments.size(); i++) {
+				payloads[i] = encodeComment(encoder, packageName, comments.get(i));
+			}
+
+			data.seek(end);
+			data.write(encoder.buffer, 0, encoder.length);
+		} catch (IOException e) {
+			rollback(stringCount);
+			throw e;
+		} catch (RuntimeException e) {
+			rollback(stringCount);
+			throw e;
+		}
+
+		for (int i = 0; i < comments.size(); i++) {
+			String uniqueId = comments.get(i).getUniqueId();
+			Long previous = index.put(uniqueId, payloads[i] + (end << LENGTH_BITS));
+			if (previous != null) {
+				for (StoredCommentIterator iterator : iterators) {
+					iterator.superseded(uniqueId, previous);
+				}
+			}
+		}
+		end += encoder.length;
+	}
+
+	/**
+	 * Forgets dictionary strings added by a failed append and cuts off
+	 * whatever part of it was written
+	 */
+	private void rollback(int stringCount) throws IOException {
+		while (strings.size() > stringCount) {
+			stringNumbers.remove(strings.remove(strings.size() - 1));
+		}
+		data.setLength(end);
+	}
+
+	/**
+	 * Writes the comment entry, preceded by entries for the dictionary strings
+	 * it adds
+	 *
+	 * @return the packed position and length of the payload, relative to the
+	 *         start of the encoder
+	 */
+	private long encodeComment(Encoder encoder, String packageName, Comment comment) {
+		if (comment.getUniqueId() == null) {
+			throw new IllegalArgumentException("Comments without a unique ID can't be stored");
+		}
+
+		int packageNumber = stringNumber(encoder, packageName);
+		int language = optStringNumber(encoder, comment.getLanguage());
+		int appVersion = optStringNumber(encoder, comment.getAppVersion());
+		int device = optStringNumber(encoder, comment.getDevice());
+
+		Comment reply = comment.getReply();
+		boolean sameOriginalText = comment.getOriginalText() != null
+				&& comment.getOriginalText().equals(comment.getText());
+		int flags = (comment.getDate() != null ? HAS_DATE : 0)
+				| (comment.getOriginalCommentDate() != null ? HAS_ORIGINAL_COMMENT_DATE : 0)
+				| (reply != null ? HAS_REPLY : 0) | (sameOriginalText ? SAME_ORIGINAL_TEXT : 0)
+				| (comment.isReply() ? IS_REPLY : 0);
+
+		int start = encoder.startEntry(ENTRY_COMMENT);
+		encoder.writeByte(flags);
+		encoder.writeVarint(packageNumber);
+		encoder.writeString(comment.getUniqueId());
+		if (comment.getDate() != null) {
+			encoder.writeVarlong(comment.getDate().getTime());
+		}
+		if (comment.getOriginalCommentDate() != null) {
+			encoder.writeVarlong(comment.getOriginalCommentDate().getTime());
+		}
+		encoder.writeVarint(comment.getRating());
+		encoder.writeVarint(language);
+		encoder.writeVarint(appVersion);
+		encoder.writeVarint(device);
+		encoder.writeOptString(comment.getUser());
+		encoder.writeOptString(comment.getText());
+		if (!sameOriginalText) {
+			encoder.writeOptString(comment.getOriginalText());
+		}
+		if (reply != null) {
+			int replyFlags = (reply.getDate() != null ? HAS_DATE : 0)
+					| (reply.getOriginalCommentDate() != null ? HAS_ORIGINAL_COMMENT_DATE : 0);
+			encoder.writeByte(replyFlags);
+			encoder.writeOptString(reply.getText());
+			if (reply.getDate() != null) {
+				encoder.writeVarlong(reply.getDate().getTime());
+			}
+			if (reply.getOriginalCommentDate() != null) {
+				encoder.writeVarlong(reply.getOriginalCommentDate().getTime());
+			}
+		}
+		int payloadLength = encoder.length - start;
+		if (payloadLength > MAX_PAYLOAD_LENGTH) {
+			throw new IllegalArgumentException("Comment too long: " + comment.getUniqueId());
+		}
+
+		return pack(encoder.finishEntry(start), payloadLength);
+	}
+
+	private int stringNumber(Encoder encoder, String value) {
+		Integer number = stringNumbers.get(value);
+		if (number == null) {
+			byte[] bytes = value.getBytes(UTF_8);
+			int start = encoder.startEntry(ENTRY_STRING);
+			encoder.write(bytes, 0, bytes.length);
+			encoder.finishEntry(start);
+			number = addString(value);
+		}
+
+		return number;
+	}
+
+	/**
+	 * @return 0 for null, the string number + 1 otherwise
+	 */
+	private int optStringNumber(Encoder encoder, String value) {
+		return value == null ? 0 : stringNumber(encoder, value) + 1;
+	}
+
+	private int addString(String value) {
+		int number = strings.size();
+		strings.add(value);
+		stringNumbers.put(value, number);
+
+		return number;
+	}
+
+	synchronized String getString(int number) throws IOException {
+		if (number < 0 || number >= strings.size()) {
+			throw new IOException("Corrupt review store, unknown string " + number + ": " + file);
+		}
+
+		return strings.get(number);
+	}
+
+	/**
+	 * @param uniqueId
+	 * @return the comment with the given unique ID as appended last, or
+	 *         <code>null</code> if there is none
+	 * @throws IOException
+	 */
+	public synchronized StoredComment get(String uniqueId) throws IOException {
+		checkOpen();
+		Long packed = index.get(uniqueId);
+		if (packed == null) {
+			return null;
+		}
+
+		int length = unpackLength(packed);
+		byte[] payload = new byte[length];
+		data.seek(unpackPosition(packed));
+		data.readFully(payload);
+
+		return new Decoder(this, payload, 0, length).readComment();
+	}
+
+	public synchronized boolean contains(String uniqueId) {
+		return index.containsKey(uniqueId);
+	}
+
+	/**
+	 * @return the number of comments, not counting superseded ones
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return an iterator over all comments appended so far, in the order
+	 *         appended, skipping superseded ones. It reads the file
+	 *         sequentially; close it when stopping before the end.
+	 * @throws IOException
+	 */
+	public synchronized StoredCommentIterator iterator() throws IOException {
+		checkOpen();
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+		try {
+			long skipped = in.skip(HEADER_SIZE);
+			if (skipped != HEADER_SIZE) {
+				throw new EOFException();
+			}
+		} catch (IOException e) {
+			FileUtils.closeSilently(in);
+			throw e;
+		}
+
+		StoredCommentIterator iterator = new StoredCommentIterator(this, in, HEADER_SIZE, end);
+		iterators.add(iterator);
+
+		return iterator;
+	}
+
+	/**
+	 * @return true if the comment at the given payload position was the one
+	 *         appended last when the given iterator was created
+	 */
+	synchronized boolean isLatest(StoredCommentIterator iterator, String uniqueId,
+			long payloadPosition) {
+		Long packed = iterator.getSuperseded(uniqueId);
+		if (packed == null) {
+			packed = index.get(uniqueId);
+		}
+
+		return packed != null && unpackPosition(packed) == payloadPosition;
+	}
+
+	synchronized void closed(StoredCommentIterator iterator) {
+		iterators.remove(iterator);
+	}
+
+	public synchronized void flush() throws IOException {
+		checkOpen();
+		data.getFD().sync();
+	}
+
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			data.close();
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Review store closed: " + file);
+		}
+	}
+
+	private static long pack(long position, int length) {
+		return position << LENGTH_BITS | length;
+	}
+
+	private static long unpackPosition(long packed) {
+		return packed >>> LENGTH_BITS;
+	}
+
+	private static int unpackLength(long packed) {
+		return (int) (packed & MAX_PAYLOAD_LENGTH);
+	}
+
+	static int readVarint(InputStream in) throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException();
+			}
+			result |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+
+		throw new IOException("Malformed varint");
+	}
+
+	static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			size++;
+		}
+
+		return size;
+	}
+
+	/**
+	 * Encodes entries into a growing buffer
+	 */
+	private static class Encoder {
+
+		byte[] buffer = new byte[1024];
+		int length;
+
+		/**
+		 * Writes the type of an entry; its length is written by
+		 * {@link #finishEntry(int)}, once known
+		 *
+		 * @return the start of the payload
+		 */
+		int startEntry(int type) {
+			writeByte(type);
+			return length;
+		}
+
+		/**
+		 * Inserts the payload length in front of the payload
+		 *
+		 * @return the new start of the payload
+		 */
+		int finishEntry(int start) {
+			int payloadLength = length - start;
+			int size = varintSize(payloadLength);
+			ensureCapacity(size);
+			System.arraycopy(buffer, start, buffer, start + size, payloadLength);
+			int end = length;
+			length = start;
+			writeVarint(payloadLength);
+			length = end + size;
+
+			return start + size;
+		}
+
+		void writeByte(int b) {
+			ensureCapacity(1);
+			buffer[length++] = (byte) b;
+		}
+
+		void write(byte[] bytes, int offset, int count) {
+			ensureCapacity(count);
+			System.arraycopy(bytes, offset, buffer, length, count);
+			length += count;
+		}
+
+		void writeVarint(int value) {
+			ensureCapacity(5);
+			while ((value & ~0x7f) != 0) {
+				buffer[length++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			buffer[length++] = (byte) value;
+		}
+
+		/**
+		 * Writes a zig-zag encoded varint, small for small negative values too
+		 */
+		void writeVarlong(long value) {
+			ensureCapacity(10);
+			long zigZag = (value << 1) ^ (value >> 63);
+			while ((zigZag & ~0x7fL) != 0) {
+				buffer[length++] = (byte) ((zigZag & 0x7f) | 0x80);
+				zigZag >>>= 7;
+			}
+			buffer[length++] = (byte) zigZag;
+		}
+
+		void writeString(String value) {
+			byte[] bytes = value.getBytes(UTF_8);
+			writeVarint(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+		/**
+		 * Writes 0 for null, the length + 1 and the UTF-8 bytes otherwise
+		 */
+		void writeOptString(String value) {
+			if (value == null) {
+				writeVarint(0);
+				return;
+			}
+
+			byte[] bytes = value.getBytes(UTF_8);
+			writeVarint(bytes.length + 1);
+			write(bytes, 0, bytes.length);
+		}
+
+		private void ensureCapacity(int extra) {
+			if (length + extra > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(length + extra, buffer.length * 2));
+			}
+		}
+
+	}
+
+	/**
+	 * Decodes a comment payload
+	 */
+	static class Decoder {
+
+		private final ReviewStore store;
+		private final byte[] buffer;
+		private final int limit;
+		private int position;
+
+		Decoder(ReviewStore store, byte[] buffer, int offset, int length) {
+			this.store = store;
+			this.buffer = buffer;
+			this.position = offset;
+			this.limit = offset + length;
+		}
+
+		String readCommentId() throws IOException {
+			readByte();
+			readVarint();
+			return readString();
+		}
+
+		StoredComment readComment() throws IOException {
+			int flags = readByte();
+			String packageName = store.getString(readVarint());
+			Comment comment = new Comment((flags & IS_REPLY) != 0);
+			comment.setUniqueId(readString());
+			if ((flags & HAS_DATE) != 0) {
+				comment.setDate(new Date(readVarlong()));
+			}
+			if ((flags & HAS_ORIGINAL_COMMENT_DATE) != 0) {
+				comment.setOriginalCommentDate(new Date(readVarlong()));
+			}
+			comment.setRating(readVarint());
+			comment.setLanguage(readOptDictionaryString());
+			comment.setAppVersion(readOptDictionaryString());
+			comment.setDevice(readOptDictionaryString());
+			comment.setUser(readOptString());
+			comment.setText(readOptString());
+			comment.setOriginalText((flags & SAME_ORIGINAL_TEXT) != 0 ? comment.getText()
+					: readOptString());
+			if ((flags & HAS_REPLY) != 0) {
+				int replyFlags = readByte();
+				Comment reply = new Comment(true);
+				reply.setText(readOptString());
+				if ((replyFlags & HAS_DATE) != 0) {
+					reply.setDate(new Date(readVarlong()));
+				}
+				if ((replyFlags & HAS_ORIGINAL_COMMENT_DATE) != 0) {
+					reply.setOriginalCommentDate(new Date(readVarlong()));
+				}
+				comment.setReply(reply);
+			}
+
+			return new StoredComment(packageName, comment);
+		}
+
+		private int readByte() throws IOException {
+			if (position >= limit) {
+				throw new IOException("Corrupt review store, comment cut short");
+			}
+
+			return buffer[position++] & 0xff;
+		}
+
+		private int readVarint() throws IOException {
+			int result = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = readByte();
+				result |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return result;
+				}
+			}
+
+			throw new IOException("Corrupt review store, malformed varint");
+		}
+
+		private long readVarlong() throws IOException {
+			long zigZag = 0;
+			for (int shift = 0; shift < 70; shift += 7) {
+				int b = readByte();
+				zigZag |= (long) (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return (zigZag >>> 1) ^ -(zigZag & 1);
+				}
+			}
+
+			throw new IOException("Corrupt review store, malformed varint");
+		}
+
+		private String readString() throws IOException {
+			return readString(readVarint());
+		}
+
+		private String readOptString() throws IOException {
+			int length = readVarint();
+			return length == 0 ? null : readString(length - 1);
+		}
+
+		private String readString(int length) throws IOException {
+			if (length < 0 || length > limit - position) {
+				throw new IOException("Corrupt review store, string cut short");
+			}
+
+			String result = new String(buffer, position, length, UTF_8);
+			position += length;
+
+			return result;
+		}
+
+		private String readOptDictionaryString() throws IOException {
+			int number = readVarint();
+			return number == 0 ? null : store.getString(number - 1);
+		}
+
+	}
+
+}
@@ -0,0 +1,535 @@
+package com.xiao.devconsole.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.xiao.devconsole.model.AppHistory;
+import com.xiao.devconsole.model.AppInfo;
+import com.xiao.devconsole.model.AppStats;
+import com.xiao.devconsole.util.FileUtils;
+
+/**
+ * An append-only archive of daily app statistics, memory-mapped so that
+ * reading years of history neither copies the file into the heap nor
+ * creates an object per day.
+ *
+ * The archive consists of two files: the records file, a header followed
+ * by one fixed-width record per app and day, and next to it
+ * <code>&lt;records file&gt;.packages</code>, the package names the records
+ * refer to by number. The package index, i.e. the record numbers of each
+ * package, is built in memory when the archive is opened.
+ *
+ * Dates are truncated to the start of their day (UTC). A day can be
+ * appended again, e.g. once its statistics are final; reads return the
+ * values appended last. The records file can hold up to 2 GB.
+ *
+ * Instances are thread safe. Only one instance may have a given archive
+ * open at a time.
+ */
+public class StatsArchive implements Closeable {
+
+	private static final int MAGIC = 0x44435341; // "DCSA"
+	private static final int VERSION = 1;
+
+	// header: magic, version, record count
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_COUNT_OFFSET = 8;
+
+	// record: package number, date, then the values
+	private static final int PACKAGE_OFFSET = 0;
+	private static final int DATE_OFFSET = 4;
+	private static final int TOTAL_DOWNLOADS_OFFSET = 12;
+	private static final int ACTIVE_INSTALLS_OFFSET = 16;
+	private static final int NUMBER_OF_COMMENTS_OFFSET = 20;
+	// ratings 1 - 5
+	private static final int RATINGS_OFFSET = 24;
+	private static final int VERSION_CODE_OFFSET = 44;
+	private static final int NUMBER_OF_ERRORS_OFFSET = 48;
+	static final int RECORD_SIZE = 52;
+
+	// capacity of a new records file, grows by doubling
+	private static final int INITIAL_RECORD_CAPACITY = 1024;
+
+	private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+	// a records file of up to 2 GB has fewer than 2^26 records, leaving 38
+	// bits for the day number when sorting (day, record) pairs as longs
+	private static final int RECORD_NUMBER_BITS = 26;
+	private static final long RECORD_NUMBER_MASK = (1L << RECORD_NUMBER_BITS) - 1;
+
+	private final File recordsFile;
+	private final RandomAccessFile records;
+	private final DataOutputStream packagesOut;
+
+	private MappedByteBuffer buffer;
+	private int recordCount;
+
+	// package name by number and vice versa
+	private final List<String> packageNames = new ArrayList<String>();
+	private final Map<String, Integer> packageNumbers = new HashMap<String, Integer>();
+	// record numbers by package number, in the order appended
+	private final List<RecordList> recordsByPackage = new ArrayList<RecordList>();
+
+	private boolean closed;
+
+	/**
+	 * Opens an archive, creating it if it doesn't exist
+	 *
+	 * @param recordsFile
+	 * @throws IOException
+	 *             if the archive can't be read or is corrupt
+	 */
+	public StatsArchive(File recordsFile) throws IOException {
+		this.recordsFile = recordsFile;
+		File packagesFile = getPackagesFile(recordsFile);
+		readPackageNames(packagesFile);
+
+		RandomAccessFile records = new RandomAccessFile(recordsFile, "rw");
+		DataOutputStream packagesOut = null;
+		try {
+			openRecords(records);
+			packagesOut = new DataOutputStream(new FileOutputStream(packagesFile, true));
+		} catch (IOException e) {
+			FileUtils.closeSilently(records);
+			throw e;
+		} catch (RuntimeException e) {
+			FileUtils.closeSilently(records);
+			throw e;
+		}
+		this.records = records;
+		this.packagesOut = packagesOut;
+	}
+
+	private static File getPackagesFile(File recordsFile) {
+		return new File(recordsFile.getPath() + ".packages");
+	}
+
+	/**
+	 * Reads the package names, truncating a name cut short by a crash. No
+	 * records refer to such a name, it is written before them.
+	 */
+	private void readPackageNames(File packagesFile) throws IOException {
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(packagesFile)));
+		} catch (FileNotFoundException e) {
+			// new archive
+			return;
+		}
+		// end of the last complete name
+		long complete = 0;
+		try {
+			while (true) {
+				int length;
+				try {
+					length = in.readUnsignedShort();
+				} catch (EOFException e) {
+					break;
+				}
+				byte[] utf = new byte[length + 2];
+				utf[0] = (byte) (length >> 8);
+				utf[1] = (byte) length;
+				try {
+					in.readFully(utf, 2, length);
+				} catch (EOFException e) {
+					break;
+				}
+				addPackage(new DataInputStream(new ByteArrayInputStream(utf)).readUTF());
+				complete += utf.length;
+			}
+		} finally {
+			FileUtils.closeSilently(in);
+		}
+
+		if (packagesFile.length() > complete) {
+			RandomAccessFile file = new RandomAccessFile(packagesFile, "rw");
+			try {
+				file.setLength(complete);
+			} finally {
+				file.close();
+			}
+		}
+	}
+
+	private void openRecords(RandomAccessFile records) throws IOException {
+		long length = records.length();
+		boolean created = length == 0;
+		if (!created && length < HEADER_SIZE) {
+			throw new IOException("Not a statistics archive: " + recordsFile);
+		}
+
+		long capacity = Math.max(length, HEADER_SIZE + (long) INITIAL_RECORD_CAPACITY
+				* RECORD_SIZE);
+		map(records.getChannel(), capacity);
+		if (created) {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putLong(RECORD_COUNT_OFFSET, 0);
+			return;
+		}
+
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a statistics archive: " + recordsFile);
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported statistics archive version " + buffer.getInt(4)
+					+ ": " + recordsFile);
+		}
+		long count = buffer.getLong(RECORD_COUNT_OFFSET);
+		if (count < 0 || HEADER_SIZE + count * RECORD_SIZE > length) {
+			throw new IOException("Corrupt statistics archive, " + count + " records in "
+					+ length + " bytes: " + recordsFile);
+		}
+
+		recordCount = (int) count;
+		for (int record = 0; record < recordCount; record++) {
+			int packageNumber = buffer.getInt(position(record) + PACKAGE_OFFSET);
+			if (packageNumber < 0 || packageNumber >= packageNames.size()) {
+				throw new IOException("Corrupt statistics archive, record " + record
+						+ " refers to unknown package " + packageNumber + ": " + recordsFile);
+			}
+			recordsByPackage.get(packageNumber).add(record);
+		}
+	}
+
+	/**
+	 * Maps the records file, growing it to the given capacity if it is
+	 * smaller
+	 */
+	private void map(FileChannel channel, long capacity) throws IOException {
+		if (capacity > Integer.MAX_VALUE) {
+			throw new IOException("Statistics archive full: " + recordsFile);
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+
+	/**
+	 * Appends the statistics of one day of an app
+	 *
+	 * @param packageName
+	 * @param stats
+	 *            must have a request date, the day it belongs to
+	 * @throws IOException
+	 */
+	public void append(String packageName, AppStats stats) throws IOException {
+		if (stats.getRequestDate() == null) {
+			throw new IllegalArgumentException("Stats without a date can't be archived");
+		}
+
+		append(packageName, stats, stats.getRequestDate());
+	}
+
+	/**
+	 * Appends the statistics of an app for the day of the given date,
+	 * ignoring the request date of stats
+	 *
+	 * @param packageName
+	 * @param stats
+	 * @param date
+	 * @throws IOException
+	 */
+	public synchronized void append(String packageName, AppStats stats, Date date)
+			throws IOException {
+		int position = reserveRecord(packageName);
+		buffer.putLong(position + DATE_OFFSET, toDay(date.getTime()));
+		buffer.putInt(position + TOTAL_DOWNLOADS_OFFSET, stats.getTotalDownloads());
+		buffer.putInt(position + ACTIVE_INSTALLS_OFFSET, stats.getActiveInstalls());
+		buffer.putInt(position + NUMBER_OF_COMMENTS_OFFSET, stats.getNumberOfComments());
+		buffer.putInt(position + RATINGS_OFFSET, toValue(stats.getRating1()));
+		buffer.putInt(position + RATINGS_OFFSET + 4, toValue(stats.getRating2()));
+		buffer.putInt(position + RATINGS_OFFSET + 8, toValue(stats.getRating3()));
+		buffer.putInt(position + RATINGS_OFFSET + 12, toValue(stats.getRating4()));
+		buffer.putInt(position + RATINGS_OFFSET + 16, toValue(stats.getRating5()));
+		buffer.putInt(position + VERSION_CODE_OFFSET, toValue(stats.getVersionCode()));
+		buffer.putInt(position + NUMBER_OF_ERRORS_OFFSET, toValue(stats.getNumberOfErrors()));
+		commitRecord(packageName);
+	}
+
+	/**
+	 * Appends the latest statistics of an app, if it has any. They belong to
+	 * the day they were requested, or if that isn't known, the day the app
+	 * was last updated, or today.
+	 *
+	 * @param app
+	 * @throws IOException
+	 */
+	public void append(AppInfo app) throws IOException {
+		AppStats latestStats = app.getLatestStats();
+		if (latestStats == null) {
+			return;
+		}
+
+		Date date = latestStats.getRequestDate();
+		if (date == null) {
+			date = app.getLastUpdate() == null ? new Date() : app.getLastUpdate();
+		}
+		append(app.getPackageName(), latestStats, date);
+	}
+
+	/**
+	 * Appends every day of the given history that has a date
+	 *
+	 * @param packageName
+	 * @param history
+	 * @throws IOException
+	 */
+	public synchronized void append(String packageName, AppHistory history) throws IOException {
+		for (int day = 0; day < history.size(); day++) {
+			long date = history.getDate(day);
+			if (date == AppHistory.NO_DATE) {
+				continue;
+			}
+
+			int position = reserveRecord(packageName);
+			buffer.putLong(position + DATE_OFFSET, toDay(date));
+			buffer.putInt(position + TOTAL_DOWNLOADS_OFFSET, history.getTotalDownloads(day));
+			buffer.putInt(position + ACTIVE_INSTALLS_OFFSET, history.getActiveInstalls(day));
+			buffer.putInt(position + NUMBER_OF_COMMENTS_OFFSET, history.getNumberOfComments(day));
+			for (int stars = 1; stars <= 5; stars++) {
+				buffer.putInt(position + RATINGS_OFFSET + (stars - 1) * 4,
+						history.getRating(day, stars));
+			}
+			buffer.putInt(position + VERSION_CODE_OFFSET, history.getVersionCode(day));
+			buffer.putInt(position + NUMBER_OF_ERRORS_OFFSET, history.getNumberOfErrors(day));
+			commitRecord(packageName);
+		}
+	}
+
+	/**
+	 * @return the position of the next record, after making sure the package
+	 *         is known and there is room for it
+	 */
+	private int reserveRecord(String packageName) throws IOException {
+		checkOpen();
+		if (!packageNumbers.containsKey(packageName)) {
+			// written before any record refers to it
+			packagesOut.writeUTF(packageName);
+			packagesOut.flush();
+			addPackage(packageName);
+		}
+
+		long end = HEADER_SIZE + (long) (recordCount + 1) * RECORD_SIZE;
+		if (end > Integer.MAX_VALUE) {
+			throw new IOException("Statistics archive full: " + recordsFile);
+		}
+		if (end > buffer.capacity()) {
+			map(records.getChannel(), Math.min(Math.max(end, 2L * buffer.capacity()),
+					Integer.MAX_VALUE));
+		}
+
+		int position = position(recordCount);
+		buffer.putInt(position + PACKAGE_OFFSET, packageNumbers.get(packageName));
+
+		return position;
+	}
+
+	/**
+	 * Makes the record written last part of the archive
+	 */
+	private void commitRecord(String packageName) {
+		recordsByPackage.get(packageNumbers.get(packageName)).add(recordCount);
+		recordCount++;
+		buffer.putLong(RECORD_COUNT_OFFSET, recordCount);
+	}
+
+	private void addPackage(String packageName) {
+		packageNumbers.put(packageName, packageNames.size());
+		packageNames.add(packageName);
+		recordsByPackage.add(new RecordList());
+	}
+
+	/**
+	 * @return the package names of all apps in the archive, in the order
+	 *         first appended
+	 */
+	public synchronized Set<String> getPackageNames() {
+		return Collections.unmodifiableSet(new LinkedHashSet<String>(packageNames));
+	}
+
+	/**
+	 * @return the number of records in the archive
+	 */
+	public synchronized int size() {
+		return recordCount;
+	}
+
+	/**
+	 * @return the history of the given app, one day per date, sorted by date.
+	 *         Empty if the app isn't in the archive.
+	 */
+	public synchronized AppHistory getHistory(String packageName) {
+		return getHistory(packageName, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param packageName
+	 * @param from
+	 *            inclusive
+	 * @param to
+	 *            exclusive
+	 * @return the history of the given app in the given period, one day per
+	 *         date, sorted by date
+	 */
+	public synchronized AppHistory getHistory(String packageName, Date from, Date to) {
+		return getHistory(packageName, from.getTime(), to.getTime());
+	}
+
+	private AppHistory getHistory(String packageName, long from, long to) {
+		checkOpen();
+		Integer packageNumber = packageNumbers.get(packageName);
+		if (packageNumber == null) {
+			return new AppHistory();
+		}
+
+		RecordList packageRecords = recordsByPackage.get(packageNumber);
+		int[] selected = new int[packageRecords.size];
+		int count = 0;
+		boolean ascending = true;
+		long previousDate = Long.MIN_VALUE;
+		for (int i = 0; i < packageRecords.size; i++) {
+			int record = packageRecords.records[i];
+			long date = getDay(record);
+			if (date >= from && date < to) {
+				selected[count++] = record;
+				ascending &= date >= previousDate;
+				previousDate = date;
+			}
+		}
+		if (!ascending) {
+			// sort by date, then record number, so records of the same date
+			// stay in the order appended
+			long[] keys = new long[count];
+			for (int i = 0; i < count; i++) {
+				keys[i] = getDay(selected[i]) / DAY_MILLIS << RECORD_NUMBER_BITS | selected[i];
+			}
+			Arrays.sort(keys);
+			for (int i = 0; i < count; i++) {
+				selected[i] = (int) (keys[i] & RECORD_NUMBER_MASK);
+			}
+		}
+
+		AppHistory history = new AppHistory(Math.max(count, 1));
+		int day = -1;
+		for (int i = 0; i < count; i++) {
+			int position = position(selected[i]);
+			long date = getDay(selected[i]);
+			// the record appended last for a date wins
+			if (day == -1 || history.getDate(day) != date) {
+				day = history.addDay(date);
+			}
+			history.setTotalDownloads(day, buffer.getInt(position + TOTAL_DOWNLOADS_OFFSET));
+			history.setActiveInstalls(day, buffer.getInt(position + ACTIVE_INSTALLS_OFFSET));
+			history.setNumberOfComments(day, buffer.getInt(position + NUMBER_OF_COMMENTS_OFFSET));
+			for (int stars = 1; stars <= 5; stars++) {
+				history.setRating(day, stars,
+						buffer.getInt(position + RATINGS_OFFSET + (stars - 1) * 4));
+			}
+			history.setVersionCode(day, buffer.getInt(position + VERSION_CODE_OFFSET));
+			history.setNumberOfErrors(day, buffer.getInt(position + NUMBER_OF_ERRORS_OFFSET));
+		}
+
+		return history;
+	}
+
+	/**
+	 * Writes appended records through to the disk
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		checkOpen();
+		buffer.force();
+		packagesOut.flush();
+	}
+
+	/**
+	 * Flushes and closes the archive. The mapping itself is released once it
+	 * is garbage collected.
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		try {
+			buffer.force();
+		} finally {
+			closed = true;
+			FileUtils.closeSilently(packagesOut);
+			records.close();
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Statistics archive closed: " + recordsFile);
+		}
+	}
+
+	private static int position(int record) {
+		return HEADER_SIZE + record * RECORD_SIZE;
+	}
+
+	/**
+	 * @return the day of the given record. Truncated again, records may have
+	 *         been written before dates were.
+	 */
+	private long getDay(int record) {
+		return toDay(buffer.getLong(position(record) + DATE_OFFSET));
+	}
+
+	/**
+	 * @return the start of the UTC day of the given time
+	 */
+	static long toDay(long time) {
+		long millis = time % DAY_MILLIS;
+		if (millis < 0) {
+			millis += DAY_MILLIS;
+		}
+
+		return time - millis;
+	}
+
+	private static int toValue(Integer value) {
+		return value == null ? AppHistory.NO_VALUE : value;
+	}
+
+	/**
+	 * A growable list of record numbers
+	 */
+	private static class RecordList {
+
+		int[] records = new int[16];
+		int size;
+
+		void add(int record) {
+			if (size == records.length) {
+				records = Arrays.copyOf(records, size * 2);
+			}
+			records[size++] = record;
+		}
+
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.xiao.devconsole.storage;
+
+import com.xiao.devconsole.model.Comment;
+
+/**
+ * A comment read from a {@link ReviewStore}, together with the app it
+ * belongs to
+ */
+public class StoredComment {
+
+	private final String packageName;
+	private final Comment comment;
+
+	StoredComment(String packageName, Comment comment) {
+		this.packageName = packageName;
+		this.comment = comment;
+	}
+
+	public String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * @return the comment, with its reply if it has one
+	 */
+	public Comment getComment() {
+		return comment;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StoredComment[%s/%s]", packageName, comment.getUniqueId());
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.xiao.devconsole.storage;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.xiao.devconsole.util.FileUtils;
+
+/**
+ * Reads the comments of a {@link ReviewStore} sequentially, see
+ * {@link ReviewStore#iterator()}.
+ *
+ * The iterator sees the store as it was when created: comments appended
+ * afterwards are not returned, and a comment appended again afterwards is
+ * returned in the version that was the latest then.
+ * Errors reading the store are thrown from {@link #hasNext()} or
+ * {@link #next()}, wrapped in a RuntimeException. The underlying file is
+ * closed at the end, call {@link #close()} when stopping before that.
+ *
+ * Instances are not thread safe.
+ */
+public class StoredCommentIterator implements Iterator<StoredComment>, Closeable {
+
+	private final ReviewStore store;
+	private final DataInputStream in;
+	private final long end;
+	private long position;
+	private byte[] payload = new byte[256];
+	private StoredComment next;
+	private boolean closed;
+	// packed index entries of comments appended again after this iterator
+	// was created, as they were before. Guarded by the store.
+	private final Map<String, Long> superseded = new HashMap<String, Long>();
+
+	StoredCommentIterator(ReviewStore store, InputStream in, long position, long end) {
+		this.store = store;
+		this.in = new DataInputStream(in);
+		this.position = position;
+		this.end = end;
+	}
+
+	public boolean hasNext() {
+		if (next != null) {
+			return true;
+		}
+		if (closed) {
+			return false;
+		}
+
+		try {
+			next = readNext();
+		} catch (IOException e) {
+			close();
+			throw new RuntimeException(e);
+		}
+		if (next == null) {
+			close();
+		}
+
+		return next != null;
+	}
+
+	public StoredComment next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		StoredComment result = next;
+		next = null;
+
+		return result;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("Review stores are append-only");
+	}
+
+	public void close() {
+		if (!closed) {
+			closed = true;
+			FileUtils.closeSilently(in);
+			store.closed(this);
+		}
+	}
+
+	/**
+	 * Called by the store when a comment is appended again, with its
+	 * previous index entry
+	 */
+	void superseded(String uniqueId, long packed) {
+		if (!superseded.containsKey(uniqueId)) {
+			superseded.put(uniqueId, packed);
+		}
+	}
+
+	Long getSuperseded(String uniqueId) {
+		return superseded.get(uniqueId);
+	}
+
+	/**
+	 * @return the next comment that isn't superseded, or <code>null</code>
+	 *         at the end
+	 */
+	private StoredComment readNext() throws IOException {
+		while (position < end) {
+			int type = in.readUnsignedByte();
+			int length = ReviewStore.readVarint(in);
+			long payloadPosition = position + 1 + ReviewStore.varintSize(length);
+			position = payloadPosition + length;
+			if (type != ReviewStore.ENTRY_COMMENT) {
+				// dictionary strings are already known to the store
+				skipFully(length);
+				continue;
+			}
+
+			if (payload.length < length) {
+				payload = new byte[Math.max(length, payload.length * 2)];
+			}
+			in.readFully(payload, 0, length);
+			ReviewStore.Decoder decoder = new ReviewStore.Decoder(store, payload, 0, length);
+			String uniqueId = decoder.readCommentId();
+			if (store.isLatest(this, uniqueId, payloadPosition)) {
+				return new ReviewStore.Decoder(store, payload, 0, length).readComment();
+			}
+		}
+
+		return null;
+	}
+
+	private void skipFully(int count) throws IOException {
+		while (count > 0) {
+			int skipped = in.skipBytes(count);
+			if (skipped <= 0) {
+				in.readUnsignedByte();
+				skipped = 1;
+			}
+			count -= skipped;
+		}
+	}
+
+}
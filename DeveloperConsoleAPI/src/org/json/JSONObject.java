@@ -149,7 +149,7 @@ public class JSONObject {
      * Construct an empty JSONObject.
      */
     public JSONObject() {
-        this.map = new HashMap();
+        this.map = new SmallKeyMap();
     }
 
     /**
@@ -240,7 +240,9 @@ public class JSONObject {
      * @throws JSONException
      */
     public JSONObject(Map map) {
-        this.map = new HashMap();
+        this.map = map != null && map.size() > SmallKeyMap.MAX_ARRAY_SIZE
+                ? new HashMap(map.size() * 4 / 3 + 1)
+                : new SmallKeyMap();
         if (map != null) {
             Iterator i = map.entrySet().iterator();
             while (i.hasNext()) {
@@ -1311,6 +1313,10 @@ public class JSONObject {
 
         char b = string.charAt(0);
         if ((b >= '0' && b <= '9') || b == '-') {
+            Object number = integerToValue(string);
+            if (number != null) {
+                return number;
+            }
             try {
                 if (string.indexOf('.') > -1 || string.indexOf('e') > -1
                         || string.indexOf('E') > -1) {
@@ -1334,6 +1340,38 @@ public class JSONObject {
         return string;
     }
 
+    /**
+     * Converts a string of up to 18 digits, with an optional minus sign, to
+     * an Integer or a Long without going through Long.valueOf. Leading zeros
+     * and "-0" are not accepted, as they would not survive a round trip.
+     *
+     * @return The number, or null if the string is not such an integer.
+     */
+    private static Number integerToValue(String string) {
+        int length = string.length();
+        int start = string.charAt(0) == '-' ? 1 : 0;
+        int digits = length - start;
+        if (digits == 0 || digits > 18
+                || (string.charAt(start) == '0' && (digits > 1 || start > 0))) {
+            return null;
+        }
+        long value = 0;
+        for (int i = start; i < length; i += 1) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            value = value * 10 + (c - '0');
+        }
+        if (start > 0) {
+            value = -value;
+        }
+        if (value == (int) value) {
+            return Integer.valueOf((int) value);
+        }
+        return Long.valueOf(value);
+    }
+
     /**
      * Throw an exception if the object is a NaN or infinite number.
      *
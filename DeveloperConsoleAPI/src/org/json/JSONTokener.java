@@ -5,7 +5,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 
 /*
 Copyright (c) 2002 JSON.org
@@ -35,6 +37,11 @@ SOFTWARE.
  * A JSONTokener takes a source string and extracts characters and tokens from
  * it. It is used by the JSONObject and JSONArray constructors to parse
  * JSON source strings.
+ * <p>
+ * A JSONTokener constructed from a string or a character or byte array reads
+ * directly from a buffer: runs of string characters and unquoted values are
+ * scanned in bulk, and the character and line reported in syntax errors are
+ * only computed when an error is made.
  * @author JSON.org
  * @version 2012-02-16
  */
@@ -48,6 +55,15 @@ public class JSONTokener {
     private Reader  reader;
     private boolean usePrevious;
 
+    /** Source characters in buffer mode, null when reading from a Reader. */
+    private char[]  buffer;
+    private int     offset;
+    private int     position;
+    private int     limit;
+    /** Positions of line breaks that were backed up over, in order. */
+    private int[]   backedLineBreaks;
+    private int     backedLineBreakCount;
+
 
     /**
      * Construct a JSONTokener from a Reader.
@@ -81,7 +97,49 @@ public class JSONTokener {
      * @param s     A source string.
      */
     public JSONTokener(String s) {
-        this(new StringReader(s));
+        this(s.toCharArray(), 0, s.length());
+    }
+
+
+    /**
+     * Construct a JSONTokener reading directly from a range of a character
+     * array. The array is not copied and must not be modified while the
+     * tokener is in use.
+     *
+     * @param chars     The source characters.
+     * @param offset    Index of the first character to read.
+     * @param length    Number of characters to read.
+     */
+    public JSONTokener(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > chars.length - length) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.buffer = chars;
+        this.offset = offset;
+        this.position = offset;
+        this.limit = offset + length;
+        this.eof = false;
+        this.usePrevious = false;
+        this.previous = 0;
+    }
+
+
+    /**
+     * Construct a JSONTokener from a range of a byte array, decoding it
+     * with the given charset in one pass.
+     *
+     * @param bytes     The source bytes.
+     * @param offset    Index of the first byte to read.
+     * @param length    Number of bytes to read.
+     * @param charset   The encoding of the bytes.
+     */
+    public JSONTokener(byte[] bytes, int offset, int length, Charset charset) {
+        this(charset.decode(ByteBuffer.wrap(bytes, offset, length)));
+    }
+
+
+    private JSONTokener(CharBuffer chars) {
+        this(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
     }
 
 
@@ -91,6 +149,13 @@ public class JSONTokener {
      * the next number or identifier.
      */
     public void back() throws JSONException {
+        if (this.buffer != null) {
+            if (this.usePrevious || this.position <= this.offset) {
+                throw new JSONException("Stepping back two steps is not supported");
+            }
+            this.backInBuffer(this.position - 1);
+            return;
+        }
         if (this.usePrevious || this.index <= 0) {
             throw new JSONException("Stepping back two steps is not supported");
         }
@@ -147,6 +212,16 @@ public class JSONTokener {
      */
     public char next() throws JSONException {
         int c;
+        if (this.buffer != null) {
+            // reads past the end count, so that they can be backed up
+            c = this.position < this.limit ? this.buffer[this.position] : 0;
+            this.position += 1;
+            if (c == 0 && !this.usePrevious) {
+                this.eof = true;
+            }
+            this.usePrevious = false;
+            return (char) c;
+        }
         if (this.usePrevious) {
             this.usePrevious = false;
             c = this.previous;
@@ -250,8 +325,40 @@ public class JSONTokener {
      */
     public String nextString(char quote) throws JSONException {
         char c;
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = null;
         for (;;) {
+            if (this.buffer != null) {
+                // Take the run of plain characters in one step, most strings
+                // don't need an intermediate buffer at all
+                int start = this.position;
+                int end = start;
+                while (end < this.limit) {
+                    c = this.buffer[end];
+                    if (c == quote || c == '\\' || c == '\n' || c == '\r' || c == 0) {
+                        break;
+                    }
+                    end += 1;
+                }
+                if (end < this.limit && this.buffer[end] == quote) {
+                    this.position = end + 1;
+                    this.usePrevious = false;
+                    if (sb == null) {
+                        return new String(this.buffer, start, end - start);
+                    }
+                    return sb.append(this.buffer, start, end - start).toString();
+                }
+                if (end > start) {
+                    this.position = end;
+                    this.usePrevious = false;
+                    if (sb == null) {
+                        sb = new StringBuilder(end - start + 16);
+                    }
+                    sb.append(this.buffer, start, end - start);
+                }
+            }
+            if (sb == null) {
+                sb = new StringBuilder();
+            }
             c = this.next();
             switch (c) {
             case 0:
@@ -343,6 +450,64 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Get the next value as a long, without creating a String or a boxed
+     * number for it. The value must be an integer, and may be quoted.
+     *
+     * @return The value.
+     * @throws JSONException If the next value is not an integer or does
+     *  not fit in a long.
+     */
+    public long nextLong() throws JSONException {
+        char c = this.nextClean();
+        char quote = 0;
+        if (c == '"' || c == '\'') {
+            quote = c;
+            c = this.next();
+        }
+        boolean negative = c == '-';
+        if (negative) {
+            c = this.next();
+        }
+        if (c < '0' || c > '9') {
+            throw this.syntaxError("Expected a number and instead saw '" + c + "'");
+        }
+
+        // Accumulate negatively, so that Long.MIN_VALUE can be read too
+        long result = 0;
+        do {
+            int digit = c - '0';
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw this.syntaxError("Number out of range for a long");
+            }
+            result = result * 10 - digit;
+            c = this.next();
+        } while (c >= '0' && c <= '9');
+
+        if (quote != 0) {
+            if (c != quote) {
+                throw this.syntaxError("Expected a number and instead saw '" + c + "'");
+            }
+        } else {
+            while (c == ' ') {
+                c = this.next();
+            }
+            if (isUnquotedChar(c)) {
+                throw this.syntaxError("Expected a number and instead saw '" + c + "'");
+            }
+            this.back();
+        }
+
+        if (negative) {
+            return result;
+        }
+        if (result == Long.MIN_VALUE) {
+            throw this.syntaxError("Number out of range for a long");
+        }
+        return -result;
+    }
+
+
     /**
      * Get the next value. The value can be a Boolean, Double, Integer,
      * JSONArray, JSONObject, Long, or String, or the JSONObject.NULL object.
@@ -375,14 +540,28 @@ public class JSONTokener {
          * formatting character.
          */
 
-        StringBuffer sb = new StringBuffer();
-        while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
-            sb.append(c);
-            c = this.next();
-        }
-        this.back();
+        if (this.buffer != null) {
+            // c has already been consumed, possibly past the end
+            int start = this.position - 1;
+            int end = start;
+            while (end < this.limit && isUnquotedChar(this.buffer[end])) {
+                end += 1;
+            }
+            // leave the delimiter unread, as back() would
+            this.backInBuffer(end);
+            string = end == start
+                ? ""
+                : new String(this.buffer, start, end - start).trim();
+        } else {
+            StringBuffer sb = new StringBuffer();
+            while (isUnquotedChar(c)) {
+                sb.append(c);
+                c = this.next();
+            }
+            this.back();
 
-        string = sb.toString().trim();
+            string = sb.toString().trim();
+        }
         if ("".equals(string)) {
             throw this.syntaxError("Missing value");
         }
@@ -390,6 +569,35 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Moves back to the given position in buffer mode, as if the character
+     * there had been read and then backed up over.
+     */
+    private void backInBuffer(int newPosition) {
+        this.position = newPosition;
+        this.usePrevious = true;
+        this.eof = false;
+        if (newPosition < this.limit &&
+                (this.buffer[newPosition] == '\n' || this.buffer[newPosition] == '\r')) {
+            // reading a line break again counts another line, remember it
+            // for bufferPosition()
+            if (this.backedLineBreaks == null) {
+                this.backedLineBreaks = new int[8];
+            } else if (this.backedLineBreakCount == this.backedLineBreaks.length) {
+                int[] grown = new int[this.backedLineBreakCount * 2];
+                System.arraycopy(this.backedLineBreaks, 0, grown, 0, this.backedLineBreakCount);
+                this.backedLineBreaks = grown;
+            }
+            this.backedLineBreaks[this.backedLineBreakCount++] = newPosition;
+        }
+    }
+
+
+    private static boolean isUnquotedChar(char c) {
+        return c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0;
+    }
+
+
     /**
      * Skip characters until the next character is the requested character.
      * If the requested character is not found, no characters are skipped.
@@ -399,6 +607,15 @@ public class JSONTokener {
      */
     public char skipTo(char to) throws JSONException {
         char c;
+        if (this.buffer != null) {
+            for (int i = this.position; i < this.limit && this.buffer[i] != 0; i++) {
+                if (this.buffer[i] == to) {
+                    this.backInBuffer(i);
+                    return to;
+                }
+            }
+            return 0;
+        }
         try {
             long startIndex = this.index;
             long startCharacter = this.character;
@@ -440,7 +657,55 @@ public class JSONTokener {
      * @return " at {index} [character {character} line {line}]"
      */
     public String toString() {
+        if (this.buffer != null) {
+            return this.bufferPosition();
+        }
         return " at " + this.index + " [character " + this.character + " line " +
             this.line + "]";
     }
+
+
+    /**
+     * Computes the index, character and line in buffer mode by going over the
+     * characters read so far, the same way a Reader based JSONTokener counts
+     * them as it goes.
+     */
+    private String bufferPosition() {
+        long character = 1;
+        long line = 1;
+        char previous = 0;
+        int backed = 0;
+        for (int i = this.offset; i <= this.position; i++) {
+            char c = i < this.limit ? this.buffer[i] : 0;
+            // every time a line break was backed up over, it was read and
+            // then stepped back from once more
+            int backs = 0;
+            while (backed < this.backedLineBreakCount && this.backedLineBreaks[backed] == i) {
+                backs += 1;
+                backed += 1;
+            }
+            if (i == this.position && this.usePrevious && backs == 0) {
+                // the current character has been backed up over
+                backs = 1;
+            }
+            int reads = i < this.position ? backs + 1 : backs;
+            for (int read = 0; read < reads; read++) {
+                if (previous == '\r') {
+                    line += 1;
+                    character = c == '\n' ? 0 : 1;
+                } else if (c == '\n') {
+                    line += 1;
+                    character = 0;
+                } else {
+                    character += 1;
+                }
+                previous = c;
+                if (read < backs) {
+                    character -= 1;
+                }
+            }
+        }
+        return " at " + (this.position - this.offset) + " [character " + character +
+            " line " + line + "]";
+    }
 }
@@ -0,0 +1,276 @@
+package org.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The map used to keep the properties of a JSONObject.
+ * <p>
+ * Most JSON objects have only a handful of short keys, e.g. the
+ * <code>"1"</code>..<code>"20"</code> of protobuf style JSON. Up to
+ * {@link #MAX_ARRAY_SIZE} entries are kept in two parallel arrays and found by
+ * a linear scan, which takes a fraction of the memory of a HashMap (no table,
+ * no entry objects) and is at least as fast for so few keys. Adding more
+ * entries than that moves them to a HashMap for good.
+ * <p>
+ * Keys are never null. Entries are kept in insertion order until the map is
+ * moved to a HashMap, which also happens when a key isn't a String.
+ */
+class SmallKeyMap extends AbstractMap {
+
+    /** Entries beyond which a HashMap is used. */
+    static final int MAX_ARRAY_SIZE = 16;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] keys;
+    private Object[] values;
+    private int size;
+    private int modCount;
+
+    /** Holds all entries once there are more than MAX_ARRAY_SIZE. */
+    private HashMap large;
+
+    private Set entrySet;
+
+
+    SmallKeyMap() {
+    }
+
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < this.size; i += 1) {
+            String k = this.keys[i];
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    public Object get(Object key) {
+        if (this.large != null) {
+            return this.large.get(key);
+        }
+        int i = this.indexOf(key);
+        return i < 0 ? null : this.values[i];
+    }
+
+
+    public boolean containsKey(Object key) {
+        if (this.large != null) {
+            return this.large.containsKey(key);
+        }
+        return this.indexOf(key) >= 0;
+    }
+
+
+    public Object put(Object key, Object value) {
+        if (this.large != null) {
+            return this.large.put(key, value);
+        }
+        if (key == null) {
+            throw new NullPointerException("Null key.");
+        }
+        int i = this.indexOf(key);
+        if (i >= 0) {
+            Object previous = this.values[i];
+            this.values[i] = value;
+            return previous;
+        }
+
+        if (this.size == MAX_ARRAY_SIZE || !(key instanceof String)) {
+            this.moveToHashMap();
+            return this.large.put(key, value);
+        }
+
+        if (this.keys == null) {
+            this.keys = new String[INITIAL_CAPACITY];
+            this.values = new Object[INITIAL_CAPACITY];
+        } else if (this.size == this.keys.length) {
+            int capacity = Math.min(this.size * 2, MAX_ARRAY_SIZE);
+            String[] newKeys = new String[capacity];
+            Object[] newValues = new Object[capacity];
+            System.arraycopy(this.keys, 0, newKeys, 0, this.size);
+            System.arraycopy(this.values, 0, newValues, 0, this.size);
+            this.keys = newKeys;
+            this.values = newValues;
+        }
+        this.keys[this.size] = (String) key;
+        this.values[this.size] = value;
+        this.size += 1;
+        this.modCount += 1;
+        return null;
+    }
+
+
+    private void moveToHashMap() {
+        this.large = new HashMap(MAX_ARRAY_SIZE * 4);
+        for (int i = 0; i < this.size; i += 1) {
+            this.large.put(this.keys[i], this.values[i]);
+        }
+        this.keys = null;
+        this.values = null;
+        this.size = 0;
+        this.modCount += 1;
+    }
+
+
+    public Object remove(Object key) {
+        if (this.large != null) {
+            return this.large.remove(key);
+        }
+        int i = this.indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Object previous = this.values[i];
+        this.removeAt(i);
+        return previous;
+    }
+
+
+    private void removeAt(int i) {
+        int moved = this.size - i - 1;
+        if (moved > 0) {
+            System.arraycopy(this.keys, i + 1, this.keys, i, moved);
+            System.arraycopy(this.values, i + 1, this.values, i, moved);
+        }
+        this.size -= 1;
+        this.keys[this.size] = null;
+        this.values[this.size] = null;
+        this.modCount += 1;
+    }
+
+
+    public int size() {
+        return this.large != null ? this.large.size() : this.size;
+    }
+
+
+    public void clear() {
+        this.large = null;
+        this.keys = null;
+        this.values = null;
+        this.size = 0;
+        this.modCount += 1;
+    }
+
+
+    public Set entrySet() {
+        if (this.entrySet == null) {
+            this.entrySet = new AbstractSet() {
+                public Iterator iterator() {
+                    if (SmallKeyMap.this.large != null) {
+                        return SmallKeyMap.this.large.entrySet().iterator();
+                    }
+                    return new EntryIterator();
+                }
+
+                public int size() {
+                    return SmallKeyMap.this.size();
+                }
+            };
+        }
+        return this.entrySet;
+    }
+
+
+    private class EntryIterator implements Iterator {
+        private int next;
+        private int last = -1;
+        private int expectedModCount = SmallKeyMap.this.modCount;
+
+        public boolean hasNext() {
+            return this.next < SmallKeyMap.this.size;
+        }
+
+        public Object next() {
+            if (SmallKeyMap.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.next;
+            this.next += 1;
+            return new Entry(this.last);
+        }
+
+        public void remove() {
+            if (this.last < 0) {
+                throw new IllegalStateException();
+            }
+            if (SmallKeyMap.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            SmallKeyMap.this.removeAt(this.last);
+            this.next = this.last;
+            this.last = -1;
+            this.expectedModCount = SmallKeyMap.this.modCount;
+        }
+    }
+
+
+    /**
+     * Keeps its own key and value, so that it stays valid when other entries
+     * are removed.
+     */
+    private class Entry implements Map.Entry {
+        private final String key;
+        private Object value;
+
+        Entry(int index) {
+            this.key = SmallKeyMap.this.keys[index];
+            this.value = SmallKeyMap.this.values[index];
+        }
+
+        public Object getKey() {
+            return this.key;
+        }
+
+        public Object getValue() {
+            return this.value;
+        }
+
+        public Object setValue(Object value) {
+            Object previous = this.value;
+            this.value = value;
+            if (SmallKeyMap.this.large != null) {
+                SmallKeyMap.this.large.put(this.key, value);
+            } else {
+                int i = SmallKeyMap.this.indexOf(this.key);
+                if (i >= 0) {
+                    SmallKeyMap.this.values[i] = value;
+                }
+            }
+            return previous;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry e = (Map.Entry) o;
+            Object value = this.getValue();
+            return this.getKey().equals(e.getKey())
+                    && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        public int hashCode() {
+            Object value = this.getValue();
+            return this.getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        public String toString() {
+            return this.getKey() + "=" + this.getValue();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.xiao.devconsole.console.v2;
+
+import static com.xiao.devconsole.test.Assert.assertEquals;
+import static com.xiao.devconsole.test.Assert.assertFalse;
+import static com.xiao.devconsole.test.Assert.assertTrue;
+import static com.xiao.devconsole.test.Assert.fail;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.xiao.devconsole.test.RandomJson;
+
+/**
+ * Checks that {@link JsonIndex} finds the same values as a
+ * {@link JSONObject} tree of the same document, and rejects the documents
+ * the tree rejects
+ */
+public class JsonIndexTest {
+
+	public static void main(String[] args) {
+		testPaths();
+		testLongLimits();
+		testNameEscapes();
+		testDuplicateNames();
+		testAgainstTree();
+		testMalformed();
+		System.out.println("JsonIndexTest: OK");
+	}
+
+	static void testPaths() {
+		JsonIndex index = new JsonIndex("{\"result\":{\"1\":[{\"1\":\"a\",\"2\":5},"
+				+ "{\"1\":\"b\\n\",\"2\":\"-7\"}],\"2\":null,\"3\":true,\"4\":{}}}");
+		assertEquals("string", "a", index.getString("result/1/0/1"));
+		assertEquals("escaped string", "b\n", index.getString("result/1/1/1"));
+		assertEquals("int", 5, index.getInt("result/1/0/2"));
+		assertEquals("quoted int", -7, index.getLong("result/1/1/2"));
+		assertEquals("array length", 2, index.length("result/1"));
+		assertEquals("empty object length", 0, index.length("result/4"));
+		assertTrue("null", index.isNull("result/2"));
+		assertTrue("boolean", index.getBoolean(index.find("result"), "3"));
+		assertFalse("missing", index.has("result/1/2"));
+		assertFalse("index into object", index.has("result/0"));
+		assertFalse("name into array", index.has("result/1/x"));
+		assertEquals("missing node", -1, index.firstChild(index.find("result/4")));
+		int array = index.find("result/1");
+		int sum = 0;
+		for (int node = index.firstChild(array); node != -1; node = index.nextSibling(node)) {
+			sum += index.getInt(node, "2");
+		}
+		assertEquals("sum over siblings", -2, sum);
+	}
+
+	static void testLongLimits() {
+		JsonIndex index = new JsonIndex("[9223372036854775807,-9223372036854775808,"
+				+ "\"9223372036854775808\",-9223372036854775809,99999999999999999999,-,\"\",1.5]");
+		assertEquals("max", Long.MAX_VALUE, index.getLong("0"));
+		assertEquals("min", Long.MIN_VALUE, index.getLong("1"));
+		for (int i = 2; i < index.length(""); i++) {
+			try {
+				index.getLong(Integer.toString(i));
+				fail("parsed " + index.optString(index.find(Integer.toString(i))));
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+
+	static void testNameEscapes() {
+		JsonIndex index = new JsonIndex("{\"a\\u0062\":1,\"c\\\"\":2,\"d\\\\\":3,\"e\\\\u0066\":4}");
+		assertEquals("unicode escape", 1, index.getInt("ab"));
+		assertEquals("quote", 2, index.getInt("c\""));
+		assertEquals("backslash", 3, index.getInt("d\\"));
+		assertEquals("escaped backslash", 4, index.getInt("e\\u0066"));
+		assertFalse("undecoded", index.has("a\\u0062"));
+		assertFalse("decoded too far", index.has("ef"));
+	}
+
+	static void testDuplicateNames() {
+		String[] documents = { "{\"1\":1,\"1\":2}", "{\"1\":1,\"2\":{\"3\":1,\"\\u0033\":2}}",
+				createLargeObject(40, true) };
+		for (String document : documents) {
+			assertRejected(document, "Duplicate key");
+		}
+		new JsonIndex(createLargeObject(40, false));
+		// duplicates across objects are fine
+		new JsonIndex("{\"1\":{\"1\":1},\"2\":{\"1\":2}}");
+	}
+
+	private static String createLargeObject(int size, boolean duplicate) {
+		StringBuilder json = new StringBuilder("{");
+		for (int i = 0; i < size; i++) {
+			json.append('"').append(i).append("\":").append(i).append(',');
+		}
+		json.append('"').append(duplicate ? size / 2 : size).append("\":0}");
+
+		return json.toString();
+	}
+
+	static void testAgainstTree() {
+		RandomJson generator = new RandomJson(new Random(3));
+		for (int i = 0; i < 3000; i++) {
+			String json = generator.object(4);
+			JSONObject tree;
+			try {
+				tree = new JSONObject(json);
+			} catch (JSONException e) {
+				// duplicate names after decoding
+				assertRejected(json, "Duplicate key");
+				continue;
+			}
+			JsonIndex index = new JsonIndex(json);
+			compare(index, 0, tree, json);
+		}
+	}
+
+	private static void compare(JsonIndex index, int node, Object value, String json) {
+		String where = "node " + node + " of " + json;
+		if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			assertEquals("members of " + where, object.length(), index.length(node));
+			Iterator<?> names = object.keys();
+			while (names.hasNext()) {
+				String name = (String) names.next();
+				if (name.indexOf('/') != -1) {
+					continue;
+				}
+				int child = index.find(node, name);
+				assertTrue("member " + name + " of " + where, child != -1);
+				compare(index, child, object.get(name), json);
+			}
+		} else if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			assertEquals("elements of " + where, array.length(), index.length(node));
+			int child = index.firstChild(node);
+			for (int i = 0; i < array.length(); i++) {
+				assertEquals("element " + i + " of " + where, child, index.find(node,
+						Integer.toString(i)));
+				compare(index, child, array.get(i), json);
+				child = index.nextSibling(child);
+			}
+			assertEquals("end of " + where, -1, child);
+		} else if (value == JSONObject.NULL) {
+			assertTrue("null at " + where, index.isNull(node));
+		} else if (value instanceof Boolean) {
+			assertEquals("boolean at " + where, value, index.getBoolean(node, ""));
+		} else if (value instanceof Integer || value instanceof Long) {
+			assertEquals("number at " + where, ((Number) value).longValue(), index.getLong(node,
+					""));
+			assertEquals("number as string at " + where, value.toString(), index.optString(node));
+		} else if (value instanceof String) {
+			assertEquals("string at " + where, value, index.optString(node));
+			Long number = parseLong((String) value);
+			if (number != null) {
+				assertEquals("quoted number at " + where, number.longValue(), index.getLong(node,
+						""));
+			}
+		}
+	}
+
+	static void testMalformed() {
+		RandomJson generator = new RandomJson(new Random(4));
+		for (int i = 0; i < 2000; i++) {
+			String json = generator.object(3);
+			// every proper prefix leaves an object open
+			String prefix = json.substring(0, new Random(i).nextInt(json.length()));
+			try {
+				new JSONObject(prefix);
+				fail("tree accepted " + prefix);
+			} catch (JSONException e) {
+				assertRejected(prefix, null);
+			}
+		}
+		String[] documents = { "", "[", "{\"1\"}", "{\"1\":}", "{\"1\":1 \"2\":2}",
+				"{\"1\":[1,2}", "{1:1}" };
+		for (String document : documents) {
+			assertRejected(document, null);
+		}
+	}
+
+	private static void assertRejected(String json, String message) {
+		try {
+			new JsonIndex(json);
+		} catch (JSONException e) {
+			if (message != null) {
+				assertTrue(e.getMessage() + " for " + json, e.getMessage().startsWith(message));
+			}
+			return;
+		}
+
+		fail("accepted " + json);
+	}
+
+	private static Long parseLong(String value) {
+		try {
+			return Long.valueOf(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+}
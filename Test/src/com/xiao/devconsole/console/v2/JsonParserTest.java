@@ -0,0 +1,172 @@
+package com.xiao.devconsole.console.v2;
+
+import static com.xiao.devconsole.test.Assert.assertEquals;
+import static com.xiao.devconsole.test.Assert.assertTrue;
+import static com.xiao.devconsole.test.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+
+import com.xiao.devconsole.model.AppHistory;
+import com.xiao.devconsole.model.AppStats;
+import com.xiao.devconsole.model.StatisticsBreakdown;
+
+/**
+ * Parses console responses laid out as documented in {@link JsonParser}:
+ * the values array at result/1, its historical data at result/1/1/1 and
+ * the dimensioned data at result/1/5
+ */
+public class JsonParserTest {
+
+	private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+	// 2013-01-01T00:00:00Z
+	private static final long DAY_1 = 1356998400000L;
+	private static final long DAY_2 = DAY_1 + DAY_MILLIS;
+	private static final long DAY_3 = DAY_2 + DAY_MILLIS;
+
+	// a day without a value, and a dimension of values without data
+	private static final String STATISTICS = "{\"result\":[null,[null,"
+			+ "[null,[" + point(DAY_1, 100) + "," + point(DAY_2, 110) + ",[null," + DAY_3 + "]]],"
+			+ "null,null,null,"
+			+ "[[null," + DevConsoleV2Protocol.STATS_BY_COUNTRY + ",["
+			+ "[null,\"US\",[" + point(DAY_1, 60) + "," + point(DAY_2, 70) + "]],"
+			+ "[null,\"DE\",[" + point(DAY_1, 40) + "," + point(DAY_2, 30) + "]],"
+			+ "[null,\"FR\",[" + point(DAY_2, 10) + "]]]],"
+			+ "[null," + DevConsoleV2Protocol.STATS_BY_ANDROID_VERSION + ",["
+			+ "[null,\"4.2\",[" + point(DAY_1, 100) + "]]]]],"
+			+ "null,null,\"App\"]]}";
+
+	public static void main(String[] args) {
+		testStatistics();
+		testStatisticsHistory();
+		testStatisticsBreakdown();
+		testRatings();
+		System.out.println("JsonParserTest: OK");
+	}
+
+	private static String point(long date, int value) {
+		return "[null," + date + ",[null," + value + "]]";
+	}
+
+	static void testStatistics() {
+		AppStats stats = new AppStats();
+		try {
+			// the latest point has no value
+			JsonParser.parseStatistics(STATISTICS, stats,
+					DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS);
+			fail("parsed a point without a value");
+		} catch (JSONException e) {
+			// expected
+		}
+
+		String json = STATISTICS.replace(",[null," + DAY_3 + "]", "");
+		JsonParser.parseStatistics(json, stats,
+				DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS);
+		assertEquals("latest active installs", 110, stats.getActiveInstalls());
+	}
+
+	static void testStatisticsHistory() {
+		AppHistory history = new AppHistory();
+		JsonParser.parseStatisticsHistory(STATISTICS, history,
+				DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS);
+		assertEquals("days with a value", 2, history.size());
+		assertEquals("first day", DAY_1, history.getDate(0));
+		assertEquals("active installs", 100, history.getActiveInstalls(0));
+		assertEquals("second day", DAY_2, history.getDate(1));
+		assertEquals("active installs", 110, history.getActiveInstalls(1));
+
+		// a second stats type updates the same days
+		JsonParser.parseStatisticsHistory(STATISTICS.replace("110", "111"), history,
+				DevConsoleV2Protocol.STATS_TYPE_TOTAL_USER_INSTALLS);
+		assertEquals("days after merging", 2, history.size());
+		assertEquals("total downloads", 111, history.getTotalDownloads(1));
+		assertEquals("active installs kept", 110, history.getActiveInstalls(1));
+
+		// days before those already in the history, e.g. a longer series
+		history = new AppHistory();
+		history.addDay(DAY_3);
+		history.setActiveInstalls(0, 120);
+		JsonParser.parseStatisticsHistory(STATISTICS, history,
+				DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS);
+		assertTrue("sorted after merging", history.isSorted());
+		assertEquals("days after merging", 3, history.size());
+		assertEquals("first day", DAY_1, history.getDate(0));
+		assertEquals("later day kept", 120, history.getActiveInstalls(2));
+
+		try {
+			JsonParser.parseStatisticsHistory("{\"result\":[null,[null,null]]}", history,
+					DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS);
+			fail("parsed a response without history");
+		} catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("result/1/1/1"));
+		}
+	}
+
+	static void testStatisticsBreakdown() {
+		int[] dimensions = { DevConsoleV2Protocol.STATS_BY_ANDROID_VERSION,
+				DevConsoleV2Protocol.STATS_BY_DEVICE, DevConsoleV2Protocol.STATS_BY_COUNTRY };
+		List<StatisticsBreakdown> breakdowns = JsonParser.parseStatisticsBreakdown(STATISTICS,
+				DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS, dimensions);
+		// no data for devices
+		assertEquals("breakdowns", 2, breakdowns.size());
+
+		StatisticsBreakdown versions = breakdowns.get(0);
+		assertEquals("dimension", DevConsoleV2Protocol.STATS_BY_ANDROID_VERSION, versions
+				.getDimension());
+		assertEquals("days", 1, versions.getDayCount());
+		assertEquals("count", 100, versions.getCount(versions.indexOf("4.2"), 0));
+
+		StatisticsBreakdown countries = breakdowns.get(1);
+		assertEquals("dimension", DevConsoleV2Protocol.STATS_BY_COUNTRY, countries
+				.getDimension());
+		assertEquals("days", 2, countries.getDayCount());
+		assertEquals("first day", DAY_1, countries.getDate(0).getTime());
+		int us = countries.indexOf("US");
+		int fr = countries.indexOf("FR");
+		assertEquals("US", "[60, 70]", Arrays.toString(countries.getCounts(us)));
+		assertEquals("FR, no data on the first day", "[0, 10]", Arrays.toString(countries
+				.getCounts(fr)));
+
+		// the breakdown covers the same installs as the history
+		AppHistory history = new AppHistory();
+		JsonParser.parseStatisticsHistory(STATISTICS, history,
+				DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS);
+		for (int day = 0; day < countries.getDayCount(); day++) {
+			int historyDay = history.indexOf(countries.getDate(day).getTime());
+			assertEquals("total of day " + day, history.getActiveInstalls(historyDay), countries
+					.getTotal(day));
+		}
+
+		try {
+			JsonParser.parseStatisticsBreakdown("{\"result\":[null,[null,null]]}",
+					DevConsoleV2Protocol.STATS_TYPE_ACTIVE_DEVICE_INSTALLS, dimensions);
+			fail("parsed a response without dimensioned data");
+		} catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("result/1/5"));
+		}
+	}
+
+	static void testRatings() {
+		AppStats stats = new AppStats();
+		JsonParser.parseRatings("{\"result\":[null,[[null,\"a\",1,2,3,4,5]]]}", stats);
+		assertEquals("1 star", Integer.valueOf(1), stats.getRating1());
+		assertEquals("5 stars", Integer.valueOf(5), stats.getRating5());
+
+		// matched by package name, or by position without one
+		Map<String, AppStats> statsByPackage = new HashMap<String, AppStats>();
+		statsByPackage.put("a", new AppStats());
+		statsByPackage.put("b", new AppStats());
+		statsByPackage.put("c", new AppStats());
+		JsonParser.parseRatings("{\"result\":[null,[[null,\"b\",2,0,0,0,0],"
+				+ "[null,null,3,0,0,0,0],[null,\"a\",1,0,0,0,0]]]}", Arrays.asList("a", "c", "b"),
+				statsByPackage);
+		assertEquals("a", Integer.valueOf(1), statsByPackage.get("a").getRating1());
+		assertEquals("b", Integer.valueOf(2), statsByPackage.get("b").getRating1());
+		assertEquals("c", Integer.valueOf(3), statsByPackage.get("c").getRating1());
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.xiao.devconsole.console.v2;
+
+import static com.xiao.devconsole.test.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.json.JSONObject;
+
+/**
+ * Checks that payloads are the UTF-8 encoding of valid JSON holding the
+ * arguments, whether or not they fit the buffer sized from the template
+ */
+public class JsonPayloadTest {
+
+	private static final PayloadTemplate TEMPLATE = PayloadTemplate
+			.compile("{\"method\":\"x\",\"params\":{\"1\":\"%1$s\",\"2\":%2$d,\"3\":[%3$s]},"
+					+ "\"xsrf\":\"%4$s\"}");
+	private static final char[] CHARACTERS = { 'a', 'Z', '0', ' ', '"', '\\', '/', '\n', '\r',
+			'\t', '\b', '\f', 0, 1, 0x1f, 0x7f, 'é', '中', '￿' };
+
+	public static void main(String[] args) {
+		testFormat();
+		testRandom();
+		System.out.println("JsonPayloadTest: OK");
+	}
+
+	static void testFormat() {
+		JsonPayload payload = JsonPayload.start(TEMPLATE).string("com.example").number(-12)
+				.strings(Arrays.asList("a", "b\""), true).string("token").finish();
+		String expected = String.format("{\"method\":\"x\",\"params\":{\"1\":\"%s\",\"2\":%d,"
+				+ "\"3\":[%s]},\"xsrf\":\"%s\"}", "com.example", -12, "\"a\",\"b\\\"\"", "token");
+		assertEquals("payload", expected, payload.toString());
+	}
+
+	static void testRandom() {
+		Random random = new Random(9);
+		for (int i = 0; i < 5000; i++) {
+			// mostly short arguments that fit, some longer than the estimate
+			String value = string(random, random.nextInt(4) == 0 ? random.nextInt(500) : random
+					.nextInt(40));
+			long number = random.nextLong();
+			JsonPayload payload = JsonPayload.start(TEMPLATE).string(value).number(number)
+					.strings(Arrays.asList(value, value), true).string(value).finish();
+
+			String json = payload.toString();
+			JSONObject parsed = new JSONObject(json);
+			JSONObject params = parsed.getJSONObject("params");
+			assertEquals("string", value.replace('\ud800', '?'), params.getString("1"));
+			assertEquals("number", number, params.getLong("2"));
+			assertEquals("list", value.replace('\ud800', '?'), params.getJSONArray("3")
+					.getString(1));
+			assertEquals("bytes", json.getBytes(JsonPayload.UTF_8).length, payload.toEntity()
+					.getContentLength());
+		}
+	}
+
+	private static String string(Random random, int length) {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			switch (random.nextInt(12)) {
+				case 0:
+					result.append("😀");
+					break;
+				case 1:
+					// unpaired, sent as '?'
+					result.append('\ud800');
+					break;
+				default:
+					result.append(CHARACTERS[random.nextInt(CHARACTERS.length)]);
+					break;
+			}
+		}
+
+		return result.toString();
+	}
+
+}
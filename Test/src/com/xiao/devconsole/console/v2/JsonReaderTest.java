@@ -0,0 +1,265 @@
+package com.xiao.devconsole.console.v2;
+
+import static com.xiao.devconsole.test.Assert.assertEquals;
+import static com.xiao.devconsole.test.Assert.assertFalse;
+import static com.xiao.devconsole.test.Assert.assertTrue;
+import static com.xiao.devconsole.test.Assert.fail;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.xiao.devconsole.test.RandomJson;
+
+/**
+ * Checks that {@link JsonReader} reads the same values as a
+ * {@link JSONObject} tree of the same document, and rejects the documents
+ * the tree rejects
+ */
+public class JsonReaderTest {
+
+	private static final Random random = new Random(5);
+
+	public static void main(String[] args) {
+		testUsage();
+		testNextLong();
+		testAgainstTree();
+		testMalformed();
+		System.out.println("JsonReaderTest: OK");
+	}
+
+	static void testUsage() {
+		JsonReader reader = new JsonReader("{\"1\":[1,\"2\",null,{\"3\":[]}],\"2\":{\"4\":true},"
+				+ "\"3\":\"x\",}");
+		reader.beginObject();
+		assertEquals("name", "1", reader.nextName());
+		reader.skipValue();
+		assertEquals("name after skip", "2", reader.nextName());
+		JSONObject object = reader.nextObject();
+		assertTrue("nested object", object.getBoolean("4"));
+		assertEquals("name after object", "3", reader.nextName());
+		assertEquals("string", "x", reader.nextString());
+		assertFalse("trailing comma", reader.hasNext());
+		reader.endObject();
+
+		reader = new JsonReader("[null, 1 ,true]");
+		reader.beginArray();
+		assertTrue("null", reader.nextNull());
+		assertFalse("not null", reader.nextNull());
+		assertEquals("int", 1, reader.nextInt());
+		assertEquals("boolean", "true", reader.nextString());
+		reader.endArray();
+
+		try {
+			new JsonReader("[1]").nextName();
+			fail("name outside a container");
+		} catch (JSONException e) {
+			// expected
+		}
+		try {
+			reader = new JsonReader("[1]");
+			reader.beginArray();
+			reader.nextName();
+			fail("name in an array");
+		} catch (JSONException e) {
+			// expected
+		}
+	}
+
+	static void testNextLong() {
+		String[] valid = { "0", "-0", "7", "\"-12\"", "'34'", "9223372036854775807",
+				"-9223372036854775808", "\"-9223372036854775808\"", "5 " };
+		for (String value : valid) {
+			JsonReader reader = new JsonReader("[" + value + "]");
+			reader.beginArray();
+			String digits = value.replace("\"", "").replace("'", "").trim();
+			assertEquals(value, Long.parseLong(digits), reader.nextLong());
+			reader.endArray();
+		}
+
+		String[] invalid = { "9223372036854775808", "-9223372036854775809",
+				"\"99999999999999999999\"", "1.5", "1e3", "-", "\"\"", "\"1", "\"1 \"", "x",
+				"true", "null", "[]", "12a", "1 2" };
+		for (String value : invalid) {
+			JsonReader reader = new JsonReader("[" + value + "]");
+			reader.beginArray();
+			try {
+				reader.nextLong();
+				fail("parsed " + value);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+
+		RandomJson generator = new RandomJson(random);
+		for (int i = 0; i < 10000; i++) {
+			String value = generator.integer();
+			JsonReader reader = new JsonReader(random.nextBoolean() ? "[" + value + "]" : "[\""
+					+ value + "\"]");
+			reader.beginArray();
+			assertEquals(value, Long.parseLong(value), reader.nextLong());
+			reader.endArray();
+		}
+	}
+
+	static void testAgainstTree() {
+		RandomJson generator = new RandomJson(new Random(6));
+		for (int i = 0; i < 3000; i++) {
+			String json = generator.object(4);
+			JSONObject tree;
+			try {
+				tree = new JSONObject(json);
+			} catch (JSONException e) {
+				// duplicate names after decoding, which the reader doesn't check
+				continue;
+			}
+			JsonReader reader = new JsonReader(json);
+			compare(reader, tree, json);
+			assertEquals("end of " + json, 0, reader.peek());
+		}
+	}
+
+	/**
+	 * Reads the next value, which must equal the given value of the tree,
+	 * skipping some parts or reading them as JSONObjects
+	 */
+	private static void compare(JsonReader reader, Object value, String json) {
+		if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			if (random.nextInt(8) == 0) {
+				assertSame(object, reader.nextObject(), json);
+				return;
+			}
+			assertEquals("peek in " + json, '{', reader.peek());
+			reader.beginObject();
+			int members = 0;
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				assertTrue("member " + name + " of " + json, object.has(name));
+				if (random.nextInt(5) == 0) {
+					reader.skipValue();
+				} else {
+					compare(reader, object.get(name), json);
+				}
+				members++;
+			}
+			reader.endObject();
+			assertEquals("members in " + json, object.length(), members);
+		} else if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			assertEquals("peek in " + json, '[', reader.peek());
+			reader.beginArray();
+			int i = 0;
+			for (; reader.hasNext(); i++) {
+				if (random.nextInt(5) == 0) {
+					reader.skipValue();
+				} else {
+					compare(reader, array.get(i), json);
+				}
+			}
+			reader.endArray();
+			assertEquals("elements in " + json, array.length(), i);
+		} else if (value == JSONObject.NULL) {
+			assertTrue("null in " + json, reader.nextNull());
+		} else if (value instanceof Integer || value instanceof Long) {
+			if (random.nextBoolean()) {
+				assertEquals("number in " + json, ((Number) value).longValue(), reader.nextLong());
+			} else {
+				assertEquals("number as string in " + json, value.toString(), reader.nextString());
+			}
+		} else if (value instanceof String && parseLong((String) value) != null
+				&& random.nextBoolean()) {
+			assertEquals("quoted number in " + json, parseLong((String) value).longValue(), reader
+					.nextLong());
+		} else {
+			assertFalse("null in " + json, reader.nextNull());
+			assertEquals("value in " + json, value.toString(), reader.nextString());
+		}
+	}
+
+	private static void assertSame(Object expected, Object actual, String json) {
+		if (expected instanceof JSONObject) {
+			JSONObject object = (JSONObject) expected;
+			assertTrue("object in " + json, actual instanceof JSONObject);
+			assertEquals("members in " + json, object.length(), ((JSONObject) actual).length());
+			Iterator<?> names = object.keys();
+			while (names.hasNext()) {
+				String name = (String) names.next();
+				assertSame(object.get(name), ((JSONObject) actual).opt(name), json);
+			}
+		} else if (expected instanceof JSONArray) {
+			JSONArray array = (JSONArray) expected;
+			assertTrue("array in " + json, actual instanceof JSONArray);
+			assertEquals("elements in " + json, array.length(), ((JSONArray) actual).length());
+			for (int i = 0; i < array.length(); i++) {
+				assertSame(array.get(i), ((JSONArray) actual).get(i), json);
+			}
+		} else {
+			assertEquals("value in " + json, expected, actual);
+		}
+	}
+
+	static void testMalformed() {
+		RandomJson generator = new RandomJson(new Random(7));
+		for (int i = 0; i < 2000; i++) {
+			String json = generator.object(3);
+			// every proper prefix leaves an object open
+			String prefix = json.substring(0, random.nextInt(json.length()));
+			assertRejected(prefix);
+		}
+		String[] documents = { "", "[", "{\"1\"}", "{\"1\":}", "{\"1\":1 \"2\":2}", "{\"1\":[1,2}",
+				"{1:1}", "[1,}", "{\"1\":1]" };
+		for (String document : documents) {
+			assertRejected(document);
+		}
+	}
+
+	private static void assertRejected(String json) {
+		try {
+			JsonReader reader = new JsonReader(json);
+			read(reader);
+		} catch (JSONException e) {
+			return;
+		}
+
+		fail("accepted " + json);
+	}
+
+	/**
+	 * Reads the next value without looking at it
+	 */
+	private static void read(JsonReader reader) {
+		switch (reader.peek()) {
+			case '{':
+				reader.beginObject();
+				while (reader.hasNext()) {
+					reader.nextName();
+					read(reader);
+				}
+				reader.endObject();
+				break;
+			case '[':
+				reader.beginArray();
+				while (reader.hasNext()) {
+					read(reader);
+				}
+				reader.endArray();
+				break;
+			default:
+				reader.nextString();
+				break;
+		}
+	}
+
+	private static Long parseLong(String value) {
+		try {
+			return Long.valueOf(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+}
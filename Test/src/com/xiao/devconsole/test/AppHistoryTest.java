@@ -0,0 +1,136 @@
+package com.xiao.devconsole.test;
+
+import static com.xiao.devconsole.test.Assert.assertEquals;
+import static com.xiao.devconsole.test.Assert.assertFalse;
+import static com.xiao.devconsole.test.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import com.xiao.devconsole.model.AppHistory;
+import com.xiao.devconsole.model.AppInfo;
+import com.xiao.devconsole.model.AppStats;
+
+/**
+ * Checks lookups by date in sorted and unsorted histories against a linear
+ * scan, and that sorting is stable and moves all columns
+ */
+public class AppHistoryTest {
+
+	private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+	public static void main(String[] args) {
+		testIndexOf();
+		testSort();
+		testListView();
+		System.out.println("AppHistoryTest: OK");
+	}
+
+	static void testIndexOf() {
+		Random random = new Random(10);
+		for (int i = 0; i < 200; i++) {
+			AppHistory history = new AppHistory();
+			// the history as a plain list of dates
+			List<Long> dates = new ArrayList<Long>();
+			for (int j = 0; j < 200; j++) {
+				long date = random.nextInt(100) * DAY_MILLIS;
+				switch (random.nextInt(8)) {
+					case 0:
+						if (!dates.isEmpty()) {
+							int day = random.nextInt(dates.size());
+							history.remove(day);
+							dates.remove(day);
+						}
+						break;
+					case 1:
+						if (!dates.isEmpty()) {
+							int day = random.nextInt(dates.size());
+							history.setDate(day, date);
+							dates.set(day, date);
+						}
+						break;
+					case 2:
+						if (random.nextInt(10) == 0) {
+							history.sort();
+							dates = sorted(dates);
+						}
+						break;
+					default:
+						// mostly in order, as merged from the console
+						if (random.nextBoolean() && !dates.isEmpty()) {
+							date = dates.get(dates.size() - 1) + DAY_MILLIS;
+						}
+						history.addDay(date);
+						dates.add(date);
+						break;
+				}
+
+				long lookup = random.nextInt(101) * DAY_MILLIS;
+				int expected = dates.indexOf(lookup);
+				int day = history.indexOf(lookup);
+				if (history.isSorted()) {
+					// any day of the date
+					assertEquals("found", expected != -1, day != -1);
+					if (day != -1) {
+						assertEquals("date", lookup, history.getDate(day));
+					}
+				} else {
+					assertEquals("first day of " + lookup, expected, day);
+				}
+			}
+		}
+	}
+
+	private static List<Long> sorted(List<Long> dates) {
+		List<Long> result = new ArrayList<Long>(dates);
+		Collections.sort(result);
+
+		return result;
+	}
+
+	static void testSort() {
+		Random random = new Random(11);
+		for (int i = 0; i < 100; i++) {
+			int size = random.nextInt(300);
+			AppHistory history = new AppHistory();
+			for (int day = 0; day < size; day++) {
+				history.addDay(random.nextInt(20) * DAY_MILLIS);
+				// the original position, to check stability
+				history.setTotalDownloads(day, day);
+				history.setActiveInstalls(day, (int) (history.getDate(day) / DAY_MILLIS));
+			}
+			history.sort();
+			assertTrue("sorted", history.isSorted());
+			for (int day = 0; day < size; day++) {
+				assertEquals("column moved with its date", history.getDate(day) / DAY_MILLIS,
+						history.getActiveInstalls(day));
+				if (day > 0) {
+					long previous = history.getDate(day - 1);
+					assertTrue("ascending", previous <= history.getDate(day));
+					if (previous == history.getDate(day)) {
+						assertTrue("stable", history.getTotalDownloads(day - 1) < history
+								.getTotalDownloads(day));
+					}
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	static void testListView() {
+		AppInfo app = new AppInfo();
+		AppStats stats = new AppStats();
+		stats.setRequestDate(new Date(DAY_MILLIS));
+		stats.setTotalDownloads(5);
+		app.getHistory().add(stats);
+		assertEquals("added through the deprecated list", 1, app.getAppHistory().size());
+		assertEquals("value", 5, app.getAppHistory().getTotalDownloads(0));
+		app.getHistory().remove(0);
+		assertTrue("removed", app.getAppHistory().isEmpty());
+		assertFalse("empty list", app.getHistory().iterator().hasNext());
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.xiao.devconsole.test;
+
+/**
+ * Minimal assertions for the self-checking tests in this project, which
+ * run as plain main methods. A failed check throws an AssertionError, so a
+ * test exits with an error on the first failure.
+ */
+public class Assert {
+
+	private Assert() {
+
+	}
+
+	public static void assertTrue(String message, boolean condition) {
+		if (!condition) {
+			fail(message);
+		}
+	}
+
+	public static void assertFalse(String message, boolean condition) {
+		assertTrue(message, !condition);
+	}
+
+	public static void assertEquals(String message, Object expected, Object actual) {
+		if (expected == null ? actual != null : !expected.equals(actual)) {
+			fail(message + ": expected <" + expected + "> but was <" + actual + ">");
+		}
+	}
+
+	public static void assertEquals(String message, long expected, long actual) {
+		if (expected != actual) {
+			fail(message + ": expected <" + expected + "> but was <" + actual + ">");
+		}
+	}
+
+	public static void fail(String message) {
+		throw new AssertionError(message);
+	}
+
+}
@@ -0,0 +1,166 @@
+package com.xiao.devconsole.test;
+
+import static com.xiao.devconsole.test.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Checks that a {@link JSONTokener} reading from a String, a char array or
+ * a byte array behaves exactly like one reading from a Reader: same values,
+ * same errors and same positions in error messages
+ */
+public class JSONTokenerTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String[] CHARACTERS = { "{", "}", "[", "]", ":", ",", "\"", "'",
+			"\\", "\\u00", " ", "\r", "\n", "\r\n", "\t", "a", "b", "n", "u", "true", "null",
+			"0", "1", "9", "-", ".", "/", "x", "é", "中", "😀" };
+	private static final char[] TARGETS = { '"', '\'', ':', ',', '}', '\n', '\r', 'x' };
+	private static final Random random = new Random(8);
+
+	public static void main(String[] args) {
+		testDocuments();
+		testOperations();
+		System.out.println("JSONTokenerTest: OK");
+	}
+
+	static void testDocuments() {
+		RandomJson generator = new RandomJson(random);
+		for (int i = 0; i < 3000; i++) {
+			String json = generator.object(3);
+			if (random.nextBoolean()) {
+				json = json.replace("\n", random.nextBoolean() ? "\r\n" : "\r");
+			}
+			if (random.nextInt(3) == 0) {
+				json = json.substring(0, random.nextInt(json.length()));
+			}
+
+			String expected = parse(new JSONTokener(new StringReader(json)));
+			assertEquals("String " + json, expected, parse(new JSONTokener(json)));
+			assertEquals("char[] " + json, expected, parse(charTokener(json)));
+			assertEquals("byte[] " + json, expected, parse(byteTokener(json)));
+		}
+	}
+
+	private static String parse(JSONTokener tokener) {
+		try {
+			return new JSONObject(tokener).toString();
+		} catch (JSONException e) {
+			return "error " + e.getMessage();
+		}
+	}
+
+	/**
+	 * Runs random sequences of operations on arbitrary text, comparing every
+	 * result and the position after it
+	 */
+	static void testOperations() {
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(30);
+			for (int j = 0; j < length; j++) {
+				text.append(CHARACTERS[random.nextInt(CHARACTERS.length)]);
+			}
+			String source = text.toString();
+			long seed = random.nextLong();
+
+			String expected = run(new JSONTokener(new StringReader(source)), seed);
+			assertEquals("String " + source, expected, run(new JSONTokener(source), seed));
+			assertEquals("char[] " + source, expected, run(charTokener(source), seed));
+			assertEquals("byte[] " + source, expected, run(byteTokener(source), seed));
+		}
+	}
+
+	/**
+	 * @return a log of the results of a sequence of operations, ending at
+	 *         the first exception
+	 */
+	private static String run(JSONTokener tokener, long seed) {
+		Random operations = new Random(seed);
+		StringBuilder log = new StringBuilder();
+		try {
+			for (int i = 0; i < 12; i++) {
+				char target = TARGETS[operations.nextInt(TARGETS.length)];
+				switch (operations.nextInt(13)) {
+					case 0:
+						log.append("next ").append(tokener.next());
+						break;
+					case 1:
+						log.append("nextClean ").append(tokener.nextClean());
+						break;
+					case 2:
+						tokener.back();
+						log.append("back");
+						break;
+					case 3:
+						log.append("next(n) ").append(tokener.next(operations.nextInt(4)));
+						break;
+					case 4:
+						log.append("next(c) ").append(tokener.next(target));
+						break;
+					case 5:
+						log.append("nextString ").append(
+								tokener.nextString(operations.nextBoolean() ? '"' : '\''));
+						break;
+					case 6:
+						log.append("nextTo(c) ").append(tokener.nextTo(target));
+						break;
+					case 7:
+						log.append("nextTo(s) ").append(tokener.nextTo(":,}"));
+						break;
+					case 8:
+						log.append("more ").append(tokener.more());
+						break;
+					case 9:
+						char found = tokener.skipTo(target);
+						log.append("skipTo ").append(found).append(tokener);
+						if (found == 0) {
+							// a Reader based tokener loses track of a
+							// character backed up over and of the end
+							return log.toString();
+						}
+						break;
+					case 10:
+						log.append("nextValue ").append(tokener.nextValue());
+						break;
+					case 11:
+						log.append("nextLong ").append(tokener.nextLong());
+						break;
+					default:
+						log.append("end ").append(tokener.end());
+						break;
+				}
+				log.append(tokener).append('\n');
+			}
+		} catch (RuntimeException e) {
+			// invalid unicode escapes throw a NumberFormatException
+			log.append("error ").append(e);
+		}
+
+		return log.toString();
+	}
+
+	/**
+	 * @return a tokener over the text in the middle of a larger array
+	 */
+	private static JSONTokener charTokener(String text) {
+		char[] chars = ("ab" + text + "cd").toCharArray();
+		return new JSONTokener(chars, 2, text.length());
+	}
+
+	/**
+	 * @return a tokener over the UTF-8 encoded text in the middle of a
+	 *         larger array
+	 */
+	private static JSONTokener byteTokener(String text) {
+		byte[] bytes = ("é" + text + "cd").getBytes(UTF_8);
+		return new JSONTokener(bytes, 2, text.getBytes(UTF_8).length, UTF_8);
+	}
+
+}
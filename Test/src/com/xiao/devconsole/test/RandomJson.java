@@ -0,0 +1,154 @@
+package com.xiao.devconsole.test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates random JSON documents shaped like console responses: objects
+ * keyed by numbers, nested arrays, strings with escape sequences and
+ * non-ASCII characters, quoted and unquoted integers, booleans and nulls
+ */
+public class RandomJson {
+
+	private static final String[] WHITESPACE = { "", "", "", " ", "\n  ", "\t" };
+	private static final String[] ESCAPES = { "\\\"", "\\\\", "\\/", "\\n", "\\t", "\\r",
+			"\\b", "\\f", "\\u0041", "\\u00e9", "\\u4e2d", "\\ud83d\\ude00" };
+	private static final String[] LITERALS = { "a", "Z", "0", " ", "é", "中", "😀",
+			"-", ":", ",", "[", "}", "'" };
+
+	private final Random random;
+
+	public RandomJson(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * @return an object with up to the given nesting depth
+	 */
+	public String object(int depth) {
+		StringBuilder json = new StringBuilder();
+		appendObject(json, depth);
+
+		return json.toString();
+	}
+
+	private void appendObject(StringBuilder json, int depth) {
+		json.append('{').append(whitespace());
+		int count = random.nextInt(depth > 0 ? 8 : 4);
+		Set<String> names = new HashSet<String>();
+		for (int i = 0; i < count; i++) {
+			String name = name();
+			if (!names.add(name)) {
+				continue;
+			}
+			if (names.size() > 1) {
+				json.append(',').append(whitespace());
+			}
+			json.append('"').append(name).append('"').append(whitespace()).append(':')
+					.append(whitespace());
+			appendValue(json, depth - 1);
+			json.append(whitespace());
+		}
+		json.append('}');
+	}
+
+	private void appendArray(StringBuilder json, int depth) {
+		json.append('[').append(whitespace());
+		int count = random.nextInt(depth > 0 ? 6 : 3);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(',').append(whitespace());
+			}
+			appendValue(json, depth - 1);
+			json.append(whitespace());
+		}
+		json.append(']');
+	}
+
+	private void appendValue(StringBuilder json, int depth) {
+		int type = random.nextInt(depth > 0 ? 9 : 7);
+		switch (type) {
+			case 0:
+			case 1:
+				json.append('"').append(string()).append('"');
+				break;
+			case 2:
+				json.append(integer());
+				break;
+			case 3:
+				json.append('"').append(integer()).append('"');
+				break;
+			case 4:
+				json.append(random.nextBoolean() ? "true" : "false");
+				break;
+			case 5:
+				json.append("null");
+				break;
+			case 6:
+				json.append(random.nextInt(1000));
+				break;
+			case 7:
+				appendObject(json, depth);
+				break;
+			default:
+				appendArray(json, depth);
+				break;
+		}
+	}
+
+	/**
+	 * @return a member name as written in the document: usually a small
+	 *         number, sometimes with escape sequences
+	 */
+	private String name() {
+		if (random.nextInt(10) == 0) {
+			return random.nextBoolean() ? "\\u0078" + random.nextInt(3) : "n\\\"" + random
+					.nextInt(3);
+		}
+		if (random.nextInt(10) == 0) {
+			return "name" + random.nextInt(5);
+		}
+
+		return Integer.toString(1 + random.nextInt(12));
+	}
+
+	/**
+	 * @return the contents of a string as written in the document
+	 */
+	public String string() {
+		StringBuilder result = new StringBuilder();
+		int length = random.nextInt(12);
+		for (int i = 0; i < length; i++) {
+			if (random.nextInt(4) == 0) {
+				result.append(ESCAPES[random.nextInt(ESCAPES.length)]);
+			} else {
+				result.append(LITERALS[random.nextInt(LITERALS.length)]);
+			}
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * @return an integer literal, from small values to the limits of long
+	 */
+	public String integer() {
+		switch (random.nextInt(6)) {
+			case 0:
+				return Long.toString(random.nextLong());
+			case 1:
+				return random.nextBoolean() ? Long.toString(Long.MAX_VALUE) : Long
+						.toString(Long.MIN_VALUE);
+			case 2:
+				return Integer.toString(random.nextInt());
+			default:
+				return Integer.toString(random.nextInt(100000) - 1000);
+		}
+	}
+
+	private String whitespace() {
+		return WHITESPACE[random.nextInt(WHITESPACE.length)];
+	}
+
+}
@@ -0,0 +1,252 @@
+package com.xiao.devconsole.test;
+
+import static com.xiao.devconsole.test.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.xiao.devconsole.model.Comment;
+import com.xiao.devconsole.storage.ReviewIndex;
+import com.xiao.devconsole.storage.ReviewQuery;
+import com.xiao.devconsole.storage.ReviewStore;
+
+/**
+ * Checks word, phrase and filter queries on a {@link ReviewIndex}, and
+ * compares random queries with a scan over all comments
+ */
+public class ReviewIndexTest {
+
+	private static final String[] WORDS = { "app", "crash", "crashes", "login", "can't",
+			"great", "update", "slow", "battery", "love", "it", "when", "the", "after" };
+	private static final String[] PACKAGES = { "com.example.one", "com.example.two" };
+	private static final String[] LANGUAGES = { "en", "de", "fr" };
+
+	public static void main(String[] args) throws IOException {
+		testWordsAndPhrases();
+		testFilters();
+		testReplaced();
+		testAddAll();
+		testAgainstScan();
+		System.out.println("ReviewIndexTest: OK");
+	}
+
+	static void testWordsAndPhrases() {
+		ReviewIndex index = new ReviewIndex();
+		index.add("com.example", createComment("1", "The app crashes on login", 1, "en", 1));
+		index.add("com.example", createComment("2", "Can't login after the update", 2, "en", 2));
+		index.add("com.example", createComment("3", "Login crashes, the app is slow", 1, "en",
+				3));
+		Comment translated = createComment("4", "It crashes", 2, "de", 4);
+		translated.setOriginalText("Die App stürzt ab");
+		index.add("com.example", translated);
+
+		assertEquals("word", Arrays.asList("4", "3", "1"), search(index,
+				new ReviewQuery().words("crashes")));
+		assertEquals("words anywhere, case insensitive", Arrays.asList("3", "1"), search(index,
+				new ReviewQuery().words("LOGIN Crashes")));
+		assertEquals("phrase", Arrays.asList("1"), search(index,
+				new ReviewQuery().phrase("app crashes")));
+		assertEquals("phrase split at punctuation", Arrays.asList("2"), search(index,
+				new ReviewQuery().phrase("can't login")));
+		assertEquals("phrase and word", Arrays.asList("3"), search(index,
+				new ReviewQuery().phrase("login crashes").words("slow")));
+		assertEquals("original text", Arrays.asList("4"), search(index,
+				new ReviewQuery().phrase("stürzt ab")));
+		// no phrase across the text and the original text
+		assertEquals("across fields", Collections.emptyList(), search(index,
+				new ReviewQuery().phrase("crashes die")));
+		assertEquals("unknown word", Collections.emptyList(), search(index,
+				new ReviewQuery().words("crashes unknown")));
+		assertEquals("no words", Arrays.asList("4", "3", "2", "1"), search(index,
+				new ReviewQuery()));
+		assertEquals("limit", Arrays.asList("4", "3"), index.search(new ReviewQuery(), 2));
+		assertEquals("count", 3, index.count(new ReviewQuery().words("crashes")));
+	}
+
+	static void testFilters() {
+		ReviewIndex index = new ReviewIndex();
+		index.add("com.example.one", createComment("1", "slow app", 1, "en", 1));
+		index.add("com.example.one", createComment("2", "slow app", 3, "de", 2));
+		index.add("com.example.two", createComment("3", "slow app", 5, "en", 3));
+		index.add("com.example.two", createComment("4", "slow app", 2, "en", 4));
+
+		assertEquals("package", Arrays.asList("2", "1"), search(index,
+				new ReviewQuery().words("slow").packageName("com.example.one")));
+		assertEquals("language", Arrays.asList("4", "3", "1"), search(index,
+				new ReviewQuery().language("en")));
+		assertEquals("max rating", Arrays.asList("4", "1"), search(index,
+				new ReviewQuery().words("app").maxRating(2)));
+		assertEquals("rating range", Arrays.asList("4", "2"), search(index,
+				new ReviewQuery().minRating(2).maxRating(3)));
+		assertEquals("dates, to exclusive", Arrays.asList("3", "2"), search(index,
+				new ReviewQuery().dates(date(2), date(4))));
+		assertEquals("open date range", Arrays.asList("4", "3"), search(index,
+				new ReviewQuery().dates(date(3), null)));
+		assertEquals("all filters", Arrays.asList("4"), search(index,
+				new ReviewQuery().phrase("slow app").packageName("com.example.two")
+						.language("en").maxRating(4).dates(date(1), null)));
+		assertEquals("unknown package", Collections.emptyList(), search(index,
+				new ReviewQuery().packageName("unknown")));
+	}
+
+	static void testReplaced() {
+		ReviewIndex index = new ReviewIndex();
+		index.add("com.example", createComment("1", "crashes all the time", 1, "en", 1));
+		index.add("com.example", createComment("2", "great", 5, "en", 2));
+		// edited by the user
+		index.add("com.example", createComment("1", "works now, great", 4, "en", 3));
+
+		assertEquals("size", 2, index.size());
+		assertEquals("old text", Collections.emptyList(), search(index,
+				new ReviewQuery().words("crashes")));
+		assertEquals("new text", Arrays.asList("1", "2"), search(index,
+				new ReviewQuery().words("great")));
+		assertEquals("old rating", Collections.emptyList(), search(index,
+				new ReviewQuery().maxRating(1)));
+	}
+
+	static void testAddAll() throws IOException {
+		File file = ReviewStoreTest.createTempFile();
+		ReviewStore store = new ReviewStore(file);
+		try {
+			store.append("com.example", Arrays.asList(createComment("1", "battery drain", 2,
+					"en", 1), createComment("2", "love it", 5, "en", 2)));
+			store.append("com.example", createComment("1", "battery fine now", 4, "en", 3));
+
+			ReviewIndex index = new ReviewIndex();
+			index.addAll(store);
+			assertEquals("size", 2, index.size());
+			assertEquals("latest version", Arrays.asList("1"), search(index,
+					new ReviewQuery().phrase("battery fine")));
+			assertEquals("superseded version", Collections.emptyList(), search(index,
+					new ReviewQuery().words("drain")));
+		} finally {
+			store.close();
+			ReviewStoreTest.delete(file);
+		}
+	}
+
+	static void testAgainstScan() {
+		Random random = new Random(7);
+		List<String> packageNames = new ArrayList<String>();
+		List<Comment> comments = new ArrayList<Comment>();
+		ReviewIndex index = new ReviewIndex();
+		for (int i = 0; i < 5000; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = 1 + random.nextInt(12);
+			for (int word = 0; word < length; word++) {
+				text.append(WORDS[random.nextInt(WORDS.length)]).append(
+						random.nextInt(4) == 0 ? ", " : " ");
+			}
+			// a few dates are shared, ties are ordered by insertion
+			Comment comment = createComment("id" + i, text.toString(), 1 + random.nextInt(5),
+					LANGUAGES[random.nextInt(LANGUAGES.length)], random.nextInt(4000));
+			String packageName = PACKAGES[random.nextInt(PACKAGES.length)];
+			comments.add(comment);
+			packageNames.add(packageName);
+			index.add(packageName, comment);
+		}
+
+		for (int i = 0; i < 300; i++) {
+			ReviewQuery query = new ReviewQuery();
+			String phrase = randomPhrase(random);
+			if (phrase != null) {
+				query.phrase(phrase);
+			}
+			String word = random.nextBoolean() ? WORDS[random.nextInt(WORDS.length)] : null;
+			if (word != null) {
+				query.words(word);
+			}
+			String packageName = random.nextInt(3) == 0 ? PACKAGES[random
+					.nextInt(PACKAGES.length)] : null;
+			query.packageName(packageName);
+			int minRating = random.nextInt(3) == 0 ? 1 + random.nextInt(5) : Integer.MIN_VALUE;
+			query.minRating(minRating);
+			long from = random.nextInt(3) == 0 ? random.nextInt(4000) : Long.MIN_VALUE;
+			query.dates(from == Long.MIN_VALUE ? null : date(from), null);
+
+			List<String> expected = new ArrayList<String>();
+			for (int c = comments.size() - 1; c >= 0; c--) {
+				Comment comment = comments.get(c);
+				List<String> terms = tokenize(comment.getText());
+				if ((phrase == null || Collections.indexOfSubList(terms, tokenize(phrase)) != -1)
+						&& (word == null || terms.containsAll(tokenize(word)))
+						&& (packageName == null || packageName.equals(packageNames.get(c)))
+						&& comment.getRating() >= minRating
+						&& (from == Long.MIN_VALUE || !comment.getDate().before(date(from)))) {
+					expected.add(comment.getUniqueId());
+				}
+			}
+			// newest first, later added first among equal dates
+			final List<Comment> all = comments;
+			Collections.sort(expected, new Comparator<String>() {
+				public int compare(String lhs, String rhs) {
+					Comment l = all.get(Integer.parseInt(lhs.substring(2)));
+					Comment r = all.get(Integer.parseInt(rhs.substring(2)));
+					return r.getDate().compareTo(l.getDate());
+				}
+			});
+
+			String description = "query " + i + ": phrase=" + phrase + ", word=" + word
+					+ ", package=" + packageName + ", minRating=" + minRating + ", from=" + from;
+			assertEquals(description + ", count", expected.size(), index.count(query));
+			assertEquals(description, expected.subList(0, Math.min(20, expected.size())),
+					index.search(query, 20));
+		}
+	}
+
+	private static String randomPhrase(Random random) {
+		int length = random.nextInt(4);
+		if (length == 0) {
+			return null;
+		}
+
+		StringBuilder phrase = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			phrase.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+		}
+		return phrase.toString();
+	}
+
+	/**
+	 * Splits like the index does, for the expected results
+	 */
+	private static List<String> tokenize(String text) {
+		List<String> terms = new ArrayList<String>();
+		for (String term : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+			if (term.length() > 0) {
+				terms.add(term);
+			}
+		}
+		return terms;
+	}
+
+	private static List<String> search(ReviewIndex index, ReviewQuery query) {
+		return index.search(query, 100);
+	}
+
+	private static Comment createComment(String uniqueId, String text, int rating,
+			String language, long date) {
+		Comment comment = new Comment();
+		comment.setUniqueId(uniqueId);
+		comment.setText(text);
+		comment.setRating(rating);
+		comment.setLanguage(language);
+		comment.setDate(date(date));
+
+		return comment;
+	}
+
+	private static Date date(long day) {
+		return new Date(1350000000000L + day * 1000L);
+	}
+
+}
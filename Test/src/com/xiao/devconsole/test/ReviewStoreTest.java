@@ -0,0 +1,228 @@
+package com.xiao.devconsole.test;
+
+import static com.xiao.devconsole.test.Assert.assertEquals;
+import static com.xiao.devconsole.test.Assert.assertFalse;
+import static com.xiao.devconsole.test.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.xiao.devconsole.model.Comment;
+import com.xiao.devconsole.storage.ReviewStore;
+import com.xiao.devconsole.storage.StoredComment;
+import com.xiao.devconsole.storage.StoredCommentIterator;
+
+/**
+ * Checks that comments survive a round trip through a {@link ReviewStore},
+ * that a store cut short by a crash can be reopened, and which version of
+ * an appended again comment is read
+ */
+public class ReviewStoreTest {
+
+	public static void main(String[] args) throws IOException {
+		testRoundTrip();
+		testTruncatedFile();
+		testSupersede();
+		testIteratorSnapshot();
+		System.out.println("ReviewStoreTest: OK");
+	}
+
+	static void testRoundTrip() throws IOException {
+		File file = createTempFile();
+		List<Comment> comments = new ArrayList<Comment>();
+		for (int i = 0; i < 500; i++) {
+			comments.add(createComment("id" + i, "Comment number " + i + " é中", i));
+		}
+		Comment minimal = new Comment();
+		minimal.setUniqueId("minimal");
+		comments.add(minimal);
+
+		ReviewStore store = new ReviewStore(file);
+		store.append("com.example.one", comments.subList(0, 250));
+		store.append("com.example.two", comments.subList(250, comments.size()));
+		store.close();
+
+		store = new ReviewStore(file);
+		try {
+			assertEquals("size", comments.size(), store.size());
+			for (int i = 0; i < comments.size(); i++) {
+				Comment expected = comments.get(i);
+				StoredComment stored = store.get(expected.getUniqueId());
+				assertEquals("package of " + expected.getUniqueId(),
+						i < 250 ? "com.example.one" : "com.example.two",
+						stored.getPackageName());
+				assertSameComment(expected, stored.getComment());
+			}
+			assertTrue("unknown ID", store.get("unknown") == null);
+
+			StoredCommentIterator iterator = store.iterator();
+			int count = 0;
+			while (iterator.hasNext()) {
+				assertSameComment(comments.get(count), iterator.next().getComment());
+				count++;
+			}
+			assertEquals("iterated", comments.size(), count);
+		} finally {
+			store.close();
+			delete(file);
+		}
+	}
+
+	static void testTruncatedFile() throws IOException {
+		File file = createTempFile();
+		ReviewStore store = new ReviewStore(file);
+		store.append("com.example", Arrays.asList(createComment("a", "first", 1),
+				createComment("b", "second", 2)));
+		long complete = file.length();
+		// same dictionary strings as "a", the comment is the only new entry
+		store.append("com.example", createComment("c", "third, torn by a crash", 1));
+		store.close();
+
+		// cut the last entry short
+		RandomAccessFile data = new RandomAccessFile(file, "rw");
+		data.setLength(complete + 5);
+		data.close();
+
+		store = new ReviewStore(file);
+		assertEquals("size after reopening", 2, store.size());
+		assertFalse("torn comment", store.contains("c"));
+		assertEquals("torn entry cut off", complete, file.length());
+		assertSameComment(createComment("b", "second", 2), store.get("b").getComment());
+
+		// appending goes on where the last complete entry ended
+		store.append("com.example", createComment("d", "fourth", 4));
+		store.close();
+		store = new ReviewStore(file);
+		try {
+			assertEquals("size after appending", 3, store.size());
+			assertSameComment(createComment("d", "fourth", 4), store.get("d").getComment());
+		} finally {
+			store.close();
+			delete(file);
+		}
+	}
+
+	static void testSupersede() throws IOException {
+		File file = createTempFile();
+		ReviewStore store = new ReviewStore(file);
+		Comment comment = createComment("a", "text", 1);
+		store.append("com.example", Arrays.asList(comment, createComment("b", "other", 2)));
+		comment.setReply(createReply("Thanks!", 10));
+		store.append("com.example", comment);
+		store.close();
+
+		store = new ReviewStore(file);
+		try {
+			assertEquals("size", 2, store.size());
+			assertSameComment(comment, store.get("a").getComment());
+			assertEquals("iterated", Arrays.asList("b", "a"), iterateIds(store));
+		} finally {
+			store.close();
+			delete(file);
+		}
+	}
+
+	static void testIteratorSnapshot() throws IOException {
+		File file = createTempFile();
+		ReviewStore store = new ReviewStore(file);
+		try {
+			store.append("com.example", Arrays.asList(createComment("x", "A", 1),
+					createComment("y", "1", 2)));
+			store.append("com.example", createComment("x", "B", 1));
+
+			StoredCommentIterator iterator = store.iterator();
+			store.append("com.example", Arrays.asList(createComment("x", "C", 1),
+					createComment("y", "2", 2), createComment("z", "new", 3)));
+			List<String> texts = new ArrayList<String>();
+			while (iterator.hasNext()) {
+				texts.add(iterator.next().getComment().getText());
+			}
+			assertEquals("versions seen by an earlier iterator", Arrays.asList("1", "B"), texts);
+
+			assertEquals("iterated later", Arrays.asList("x", "y", "z"), iterateIds(store));
+			assertEquals("latest version", "C", store.get("x").getComment().getText());
+		} finally {
+			store.close();
+			delete(file);
+		}
+	}
+
+	private static List<String> iterateIds(ReviewStore store) throws IOException {
+		List<String> result = new ArrayList<String>();
+		StoredCommentIterator iterator = store.iterator();
+		while (iterator.hasNext()) {
+			result.add(iterator.next().getComment().getUniqueId());
+		}
+
+		return result;
+	}
+
+	private static Comment createComment(String uniqueId, String text, int i) {
+		Comment comment = new Comment();
+		comment.setUniqueId(uniqueId);
+		comment.setText(text);
+		comment.setOriginalText(i % 3 == 0 ? "Original " + text : text);
+		comment.setLanguage(i % 2 == 0 ? "en" : "de");
+		comment.setDate(new Date(1350000000000L + i * 60000L));
+		comment.setOriginalCommentDate(i % 5 == 0 ? new Date(1340000000000L + i) : null);
+		comment.setRating(1 + i % 5);
+		comment.setUser("User " + i);
+		comment.setAppVersion("1." + i % 4);
+		comment.setDevice(i % 7 == 0 ? null : "Device " + i % 3);
+		if (i % 4 == 0) {
+			comment.setReply(createReply("Reply to " + uniqueId, i));
+		}
+
+		return comment;
+	}
+
+	private static Comment createReply(String text, int i) {
+		Comment reply = new Comment(true);
+		reply.setText(text);
+		reply.setDate(new Date(1360000000000L + i * 1000L));
+
+		return reply;
+	}
+
+	private static void assertSameComment(Comment expected, Comment actual) {
+		String id = expected.getUniqueId();
+		assertEquals("uniqueId", id, actual.getUniqueId());
+		assertEquals("text of " + id, expected.getText(), actual.getText());
+		assertEquals("original text of " + id, expected.getOriginalText(),
+				actual.getOriginalText());
+		assertEquals("language of " + id, expected.getLanguage(), actual.getLanguage());
+		assertEquals("date of " + id, expected.getDate(), actual.getDate());
+		assertEquals("original date of " + id, expected.getOriginalCommentDate(),
+				actual.getOriginalCommentDate());
+		assertEquals("rating of " + id, expected.getRating(), actual.getRating());
+		assertEquals("user of " + id, expected.getUser(), actual.getUser());
+		assertEquals("app version of " + id, expected.getAppVersion(), actual.getAppVersion());
+		assertEquals("device of " + id, expected.getDevice(), actual.getDevice());
+		Comment expectedReply = expected.getReply();
+		Comment actualReply = actual.getReply();
+		assertEquals("has reply " + id, expectedReply != null, actualReply != null);
+		if (expectedReply != null) {
+			assertTrue("reply flag of " + id, actualReply.isReply());
+			assertEquals("reply text of " + id, expectedReply.getText(), actualReply.getText());
+			assertEquals("reply date of " + id, expectedReply.getDate(), actualReply.getDate());
+		}
+	}
+
+	static File createTempFile() throws IOException {
+		File file = File.createTempFile("devconsole-test", ".dat");
+		// the stores create their files themselves
+		file.delete();
+
+		return file;
+	}
+
+	static void delete(File file) {
+		file.delete();
+	}
+
+}
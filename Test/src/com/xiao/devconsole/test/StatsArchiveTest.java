@@ -0,0 +1,217 @@
+package com.xiao.devconsole.test;
+
+import static com.xiao.devconsole.test.Assert.assertEquals;
+import static com.xiao.devconsole.test.Assert.assertTrue;
+import static com.xiao.devconsole.test.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+
+import com.xiao.devconsole.model.AppHistory;
+import com.xiao.devconsole.model.AppInfo;
+import com.xiao.devconsole.model.AppStats;
+import com.xiao.devconsole.storage.StatsArchive;
+
+/**
+ * Checks that statistics survive a round trip through a
+ * {@link StatsArchive}, that days are kept once per UTC day and that
+ * archives with torn or missing data are handled on opening
+ */
+public class StatsArchiveTest {
+
+	private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+	// 2013-01-01T00:00:00Z
+	private static final long FIRST_DAY = 1356998400000L;
+
+	public static void main(String[] args) throws IOException {
+		testRoundTrip();
+		testSameDay();
+		testDatesAroundEpoch();
+		testTruncatedPackagesFile();
+		testTruncatedRecordsFile();
+		System.out.println("StatsArchiveTest: OK");
+	}
+
+	static void testRoundTrip() throws IOException {
+		String[] packageNames = { "com.example.one", "com.example.two", "com.example.three" };
+		int days = 500;
+		AppHistory[] expected = new AppHistory[packageNames.length];
+		for (int app = 0; app < packageNames.length; app++) {
+			expected[app] = new AppHistory();
+			for (int day = 0; day < days; day++) {
+				expected[app].append(createStats(FIRST_DAY + day * DAY_MILLIS, app * 1000 + day));
+			}
+		}
+
+		File file = ReviewStoreTest.createTempFile();
+		StatsArchive archive = new StatsArchive(file);
+		Random random = new Random(1);
+		for (int day = 0; day < days; day++) {
+			for (int app = 0; app < packageNames.length; app++) {
+				// an earlier, preliminary version of the day, replaced below
+				if (random.nextInt(10) == 0) {
+					archive.append(packageNames[app], createStats(FIRST_DAY + day * DAY_MILLIS,
+							-1));
+				}
+			}
+		}
+		for (int app = 0; app < packageNames.length; app++) {
+			// latest days first, reads sort them
+			AppHistory history = expected[app];
+			archive.append(packageNames[app], history.copy(days / 2, days));
+			archive.append(packageNames[app], history.copy(0, days / 2));
+		}
+		archive.close();
+
+		archive = new StatsArchive(file);
+		try {
+			assertEquals("package names", new HashSet<String>(Arrays.asList(packageNames)),
+					archive.getPackageNames());
+			for (int app = 0; app < packageNames.length; app++) {
+				assertEquals("history of " + packageNames[app], expected[app],
+						archive.getHistory(packageNames[app]));
+			}
+			AppHistory range = archive.getHistory(packageNames[1], new Date(FIRST_DAY + 10
+					* DAY_MILLIS), new Date(FIRST_DAY + 20 * DAY_MILLIS));
+			assertEquals("range", expected[1].copy(10, 20), range);
+			assertEquals("unknown app", 0, archive.getHistory("unknown").size());
+		} finally {
+			archive.close();
+			delete(file);
+		}
+	}
+
+	static void testSameDay() throws IOException {
+		File file = ReviewStoreTest.createTempFile();
+		StatsArchive archive = new StatsArchive(file);
+		try {
+			AppInfo app = new AppInfo();
+			app.setPackageName("com.example");
+			app.setLatestStats(createStats(FIRST_DAY + 9 * 60 * 60 * 1000L, 1));
+			archive.append(app);
+			app.setLatestStats(createStats(FIRST_DAY + 18 * 60 * 60 * 1000L, 2));
+			archive.append(app);
+
+			AppHistory history = archive.getHistory("com.example");
+			assertEquals("days", 1, history.size());
+			assertEquals("date truncated to the day", FIRST_DAY, history.getDate(0));
+			assertEquals("appended last", 2, history.getTotalDownloads(0));
+
+			// stats without a request date belong to today
+			app.setLatestStats(new AppStats());
+			archive.append(app);
+			history = archive.getHistory("com.example");
+			assertEquals("days with today", 2, history.size());
+			long today = System.currentTimeMillis() / DAY_MILLIS * DAY_MILLIS;
+			assertEquals("today", today, history.getDate(1));
+		} finally {
+			archive.close();
+			delete(file);
+		}
+	}
+
+	static void testDatesAroundEpoch() throws IOException {
+		File file = ReviewStoreTest.createTempFile();
+		StatsArchive archive = new StatsArchive(file);
+		try {
+			// negative day numbers, out of order, one day appended twice
+			int[] days = { 2, -3, 0, -1, 1, -2, -3 };
+			for (int i = 0; i < days.length; i++) {
+				archive.append("com.example", createStats(days[i] * DAY_MILLIS + 1000, i));
+			}
+
+			AppHistory history = archive.getHistory("com.example");
+			assertEquals("days", 6, history.size());
+			for (int day = 0; day < history.size(); day++) {
+				assertEquals("date", (day - 3) * DAY_MILLIS, history.getDate(day));
+			}
+			assertEquals("appended last", 6, history.getTotalDownloads(0));
+			assertEquals("day 0", 2, history.getTotalDownloads(3));
+		} finally {
+			archive.close();
+			delete(file);
+		}
+	}
+
+	static void testTruncatedPackagesFile() throws IOException {
+		File file = ReviewStoreTest.createTempFile();
+		File packagesFile = new File(file.getPath() + ".packages");
+		StatsArchive archive = new StatsArchive(file);
+		archive.append("com.example.one", createStats(FIRST_DAY, 1));
+		archive.close();
+		long complete = packagesFile.length();
+
+		// a name cut short by a crash: its length, but only part of it
+		RandomAccessFile packages = new RandomAccessFile(packagesFile, "rw");
+		packages.seek(complete);
+		packages.write(new byte[] { 0, 15, 'c', 'o', 'm' });
+		packages.close();
+
+		archive = new StatsArchive(file);
+		assertEquals("package names", Arrays.asList("com.example.one"),
+				Arrays.asList(archive.getPackageNames().toArray()));
+		assertEquals("torn name cut off", complete, packagesFile.length());
+		archive.append("com.example.two", createStats(FIRST_DAY, 2));
+		archive.close();
+
+		archive = new StatsArchive(file);
+		try {
+			assertEquals("package names after appending",
+					Arrays.asList("com.example.one", "com.example.two"),
+					Arrays.asList(archive.getPackageNames().toArray()));
+			assertEquals("record of the new package", 2, archive.getHistory("com.example.two")
+					.getTotalDownloads(0));
+		} finally {
+			archive.close();
+			delete(file);
+		}
+	}
+
+	static void testTruncatedRecordsFile() throws IOException {
+		File file = ReviewStoreTest.createTempFile();
+		StatsArchive archive = new StatsArchive(file);
+		for (int day = 0; day < 10; day++) {
+			archive.append("com.example", createStats(FIRST_DAY + day * DAY_MILLIS, day));
+		}
+		archive.close();
+
+		// fewer bytes than the header's record count needs
+		RandomAccessFile records = new RandomAccessFile(file, "rw");
+		records.setLength(100);
+		records.close();
+
+		try {
+			new StatsArchive(file).close();
+			fail("truncated records file opened");
+		} catch (IOException e) {
+			assertTrue("message: " + e.getMessage(), e.getMessage().startsWith(
+					"Corrupt statistics archive"));
+		} finally {
+			delete(file);
+		}
+	}
+
+	private static AppStats createStats(long date, int i) {
+		AppStats stats = new AppStats();
+		stats.setRequestDate(new Date(date));
+		stats.setTotalDownloads(i);
+		stats.setActiveInstalls(i / 2);
+		stats.setNumberOfComments(i % 100);
+		stats.setRating(i, i + 1, i + 2, i + 3, i + 4);
+		stats.setVersionCode(i % 3 == 0 ? null : Integer.valueOf(i % 20));
+		stats.setNumberOfErrors(i % 4 == 0 ? null : Integer.valueOf(i % 7));
+
+		return stats;
+	}
+
+	private static void delete(File file) {
+		file.delete();
+		new File(file.getPath() + ".packages").delete();
+	}
+
+}